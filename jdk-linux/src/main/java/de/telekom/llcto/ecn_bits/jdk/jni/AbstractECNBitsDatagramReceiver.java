@@ -29,7 +29,10 @@ package de.telekom.llcto.ecn_bits.jdk.jni;
  * the traffic class octet, if any, from the last packet received or peekData’d
  * or null if it could not be determined or no packet was processed yet, and
  * {@link #startMeasurement()} and {@link #getMeasurement(boolean)} to analyse
- * the percentage of packets that were congested over a period.
+ * the percentage of packets that were congested over a period (also in
+ * independent sessions, see {@link #openMeasurementSession()}), or
+ * {@link #startCongestionEstimate(double)} and {@link #getCongestionEstimate()}
+ * for a continuously smoothed estimate thereof.
  *
  * @author mirabilos (t.glaser@tarent.de)
  */
@@ -41,6 +44,16 @@ public interface AbstractECNBitsDatagramReceiver {
      */
     Byte retrieveLastTrafficClass();
 
+    /**
+     * Retrieves when the kernel received the last packet that was peekData’d
+     * or received, if receive timestamps are enabled, cf.
+     * {@link ECNBitsSocketOptions#SO_TIMESTAMPNS}; this excludes the time
+     * it spent queued in the socket buffer and any delay in the JVM.
+     *
+     * @return nanoseconds since the epoch; 0 if not enabled or there was no packet
+     */
+    long retrieveLastReceiveTimestamp();
+
     /**
      * Starts (or restarts, resetting) measurement of the percentage of received
      * packets that had the ECN CE mark set, i.e. that were congested.
@@ -61,7 +74,46 @@ public interface AbstractECNBitsDatagramReceiver {
      *
      * @param doContinue whether to continue measuring
      * @return {@link ECNStatistics}, or null if not measuring before
-     * @throws ArithmeticException if too many packets were received in the last period
      */
     ECNStatistics getMeasurement(final boolean doContinue);
+
+    /**
+     * Opens an independent measurement session with its own period,
+     * for consumers that need to poll at their own pace without resetting
+     * each other’s (or the {@link #getMeasurement(boolean)}) period.
+     *
+     * @return session handle; close it when done
+     */
+    ECNMeasurementSession openMeasurementSession();
+
+    /**
+     * Starts (or restarts, resetting it to 0) the incremental congestion
+     * estimator, which keeps an L4S/DCTCP-style α: an exponentially
+     * weighted moving average of the fraction of received packets that
+     * had the ECN CE mark set, updated on every received packet (that is,
+     * α ← α + gain·(1 − α) for a CE-marked packet, α ← α − gain·α for
+     * any other one), independently of {@link #startMeasurement()}.
+     *
+     * Note the gain applies per packet, not per round trip as in DCTCP;
+     * 1/16 reacts within a few dozen packets.
+     *
+     * @param gain weight of each new packet, 0 &lt; gain ≤ 1
+     * @throws IllegalArgumentException if gain is out of range
+     * @see #getCongestionEstimate()
+     */
+    void startCongestionEstimate(final double gain);
+
+    /**
+     * Stops the incremental congestion estimator, to save CPU.
+     */
+    void stopCongestionEstimate();
+
+    /**
+     * Retrieves the current value of the incremental congestion estimator,
+     * without affecting it or any measurement period.
+     *
+     * @return 0 ≤ α ≤ 1, or {@link Double#NaN} if the estimator is not running
+     * @see #startCongestionEstimate(double)
+     */
+    double getCongestionEstimate();
 }
@@ -71,10 +71,61 @@ public abstract class AbstractECNBitsDatagramSocket extends DatagramSocket imple
 
     abstract public Byte retrieveLastTrafficClass();
 
+    abstract public long retrieveLastReceiveTimestamp();
+
+    /**
+     * Enables or disables kernel receive timestamps, cf.
+     * {@link ECNBitsSocketOptions#SO_TIMESTAMPNS} and
+     * {@link #retrieveLastReceiveTimestamp()}.
+     *
+     * @param on whether to enable receive timestamps
+     * @throws SocketException if setting the option fails
+     */
+    abstract public void setReceiveTimestamps(final boolean on) throws SocketException;
+
     abstract public void startMeasurement();
 
     abstract public ECNStatistics getMeasurement(final boolean doContinue);
 
+    abstract public ECNMeasurementSession openMeasurementSession();
+
+    abstract public void startCongestionEstimate(final double gain);
+
+    abstract public void stopCongestionEstimate();
+
+    abstract public double getCongestionEstimate();
+
+    /**
+     * Sends a datagram packet from this socket with the given traffic class.
+     *
+     * This behaves like {@link #send(DatagramPacket)} except the IP traffic
+     * class octet is passed to the kernel as ancillary data with this one
+     * packet instead of using the one set via {@link #setTrafficClass(int)},
+     * which is left alone; this avoids changing the socket option around
+     * each send.
+     *
+     * @param p  the {@link DatagramPacket} to be sent
+     * @param tc traffic class octet to send the packet with
+     * @throws IOException on error, cf. {@link #send(DatagramPacket)}
+     */
+    abstract public void send(final DatagramPacket p, final byte tc) throws IOException;
+
+    /**
+     * Receives a datagram packet from this socket, also returning its metadata.
+     *
+     * This behaves like {@link #receive(DatagramPacket)} (including the need
+     * to reset the packet’s length before each call) but additionally stores
+     * the length, sender, traffic class and so on of the datagram into the
+     * caller-owned {@code info} holder, straight from the system call that
+     * received it, so it cannot be mixed up with another thread’s datagram
+     * as {@link #retrieveLastTrafficClass()} can, and without boxing.
+     *
+     * @param p    the {@link DatagramPacket} into which to place the incoming data
+     * @param info holder for the metadata of the datagram, reusable
+     * @throws IOException on error, cf. {@link #receive(DatagramPacket)}
+     */
+    abstract public void receive(final DatagramPacket p, final ECNBitsDatagramInfo info) throws IOException;
+
     /**
      * {@inheritDoc}
      *
@@ -807,19 +807,15 @@ public final class ChannelMain {
     }
 
     void measureClk(final boolean start) {
-        try {
-            final ECNStatistics stats = chan.getMeasurement(true);
-            if (start && (stats == null || stats.getReceivedPackets() == 0)) {
-                return;
-            }
-            log(stats == null ? "!! no congestion measurement" :
-              String.format("‡ %d of %d packets (%.2f%%) received over %d ms were congested",
-                stats.getCongestedPackets(), stats.getReceivedPackets(),
-                stats.getCongestionFactor() * 100.0,
-                stats.getLengthOfMeasuringPeriod() / 1000000L));
-        } catch (ArithmeticException e) {
-            log("!! " + e);
+        final ECNStatistics stats = chan.getMeasurement(true);
+        if (start && (stats == null || stats.getReceivedPacketCount() == 0)) {
+            return;
         }
+        log(stats == null ? "!! no congestion measurement" :
+          String.format("‡ %d of %d packets (%.2f%%) received over %d ms were congested",
+            stats.getCongestedPacketCount(), stats.getReceivedPacketCount(),
+            stats.getCongestionFactor() * 100.0,
+            stats.getLengthOfMeasuringPeriod() / 1000000L));
     }
 
     private class Receiver extends SwingWorker<Void, String> {
@@ -248,16 +248,12 @@ public final class ClientMain {
         } catch (SocketException e) {
             LOG.log(Level.WARNING, "setsockopt", e);
         } finally {
-            try {
-                final ECNStatistics stats = sock.getMeasurement(false);
-                System.out.println(stats == null ?
-                  "!! no congestion measurement" :
-                  String.format("ℹ %.2f%% of %d packets received over %d ms were congested",
-                    stats.getCongestionFactor() * 100.0, stats.getReceivedPackets(),
-                    stats.getLengthOfMeasuringPeriod() / 1000000L));
-            } catch (ArithmeticException e) {
-                LOG.log(Level.WARNING, "ECNStatistics", e);
-            }
+            final ECNStatistics stats = sock.getMeasurement(false);
+            System.out.println(stats == null ?
+              "!! no congestion measurement" :
+              String.format("ℹ %.2f%% of %d packets received over %d ms were congested",
+                stats.getCongestionFactor() * 100.0, stats.getReceivedPacketCount(),
+                stats.getLengthOfMeasuringPeriod() / 1000000L));
             if (!sock.isClosed()) {
                 sock.close();
             }
@@ -0,0 +1,142 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.extern.java.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+
+/**
+ * Incremental CE onset/offset detector over a sliding window of the last
+ * (up to 64) received packets, kept as bitmask: onset is signalled once at
+ * least {@code onset} of them were CE-marked, offset once at most
+ * {@code offset} were, so the gap between the two debounces the events.
+ *
+ * Updated from the receive path, which is serialised by the channel’s
+ * read lock except in concurrent-reader mode, hence the (then only
+ * uncontended) monitor; notifications are handed off to an executor.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+@Log
+final class CongestionDetector {
+    /**
+     * Largest supported window
+     */
+    static final int WINDOW_MAX = 64;
+
+    private static final class DefaultExecutor {
+        private static final Executor INSTANCE = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "ECNCongestionListener");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private final ECNBitsDatagramChannel channel;
+    private final ECNCongestionListener listener;
+    private final Executor executor;
+    private final int window;
+    private final int onset;
+    private final int offset;
+    private final long mask;
+
+    // -- The following fields are protected by this
+
+    // CE mark of the last window packets, newest in bit 0
+    private long marks = 0;
+    private int count = 0;
+    private boolean congested = false;
+
+    // -- End of fields protected by this
+
+    /**
+     * Creates a new detector.
+     *
+     * @param channel  to report
+     * @param listener to notify
+     * @param window   number of packets to consider, 1 ≤ window ≤ {@link #WINDOW_MAX}
+     * @param onset    CE marks in the window signalling onset, 1 ≤ onset ≤ window
+     * @param offset   CE marks in the window signalling offset, 0 ≤ offset &lt; onset
+     * @param executor to notify the listener on, or null for a shared thread
+     * @throws IllegalArgumentException if the thresholds are out of range
+     */
+    CongestionDetector(final ECNBitsDatagramChannel channel, final ECNCongestionListener listener,
+      final int window, final int onset, final int offset, final Executor executor) {
+        if (window < 1 || window > WINDOW_MAX) {
+            throw new IllegalArgumentException("window out of range: " + window);
+        }
+        if (onset < 1 || onset > window || offset < 0 || offset >= onset) {
+            throw new IllegalArgumentException("thresholds out of range: " + onset + "/" + offset);
+        }
+        this.channel = channel;
+        this.listener = listener;
+        this.executor = executor == null ? DefaultExecutor.INSTANCE : executor;
+        this.window = window;
+        this.onset = onset;
+        this.offset = offset;
+        mask = window == WINDOW_MAX ? -1L : (1L << window) - 1;
+    }
+
+    /**
+     * Records received packets, all with the same mark (several
+     * for a UDP GRO super-datagram), and signals state changes.
+     *
+     * @param ce       whether the packets were CE-marked
+     * @param segments number of packets
+     */
+    synchronized void received(final boolean ce, final int segments) {
+        if (segments >= window) {
+            marks = ce ? mask : 0;
+            count = ce ? window : 0;
+        } else {
+            final int gone = Long.bitCount(marks >>> (window - segments));
+            final long in = (1L << segments) - 1;
+            marks = ((marks << segments) | (ce ? in : 0)) & mask;
+            count += (ce ? segments : 0) - gone;
+        }
+        if (!congested && count >= onset) {
+            congested = true;
+            signal(true);
+        } else if (congested && count <= offset) {
+            congested = false;
+            signal(false);
+        }
+    }
+
+    private void signal(final boolean state) {
+        try {
+            executor.execute(() -> {
+                try {
+                    listener.congestionChanged(channel, state);
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "congestion listener failed", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.log(Level.WARNING, "congestion listener hand-off rejected", e);
+        }
+    }
+}
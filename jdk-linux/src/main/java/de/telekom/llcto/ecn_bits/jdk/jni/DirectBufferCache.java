@@ -0,0 +1,140 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-thread cache of temporary direct buffers used to bounce heap
+ * buffers through the native I/O calls, modelled after the temporary
+ * buffer cache in OpenJDK’s sun.nio.ch.Util.
+ *
+ * Buffers are cached in power-of-two size classes from 512 bytes up to
+ * 64 KiB (one maximum-sized datagram); all classes together hold at most
+ * 256 KiB worth of buffers (and each at most {@link JNI#BATCH_MAX} of
+ * them) per thread, further buffers released are left to the garbage
+ * collector. Larger requests are not cached. Like jdk.nio.maxCachedBufferSize,
+ * the system property {@value #MAX_SIZE_PROPERTY} lowers the largest size
+ * cached (in bytes; rounded down to a size class, below 512 nothing is).
+ *
+ * Usage: obtain with {@link #get(int)}, release with {@link #release(ByteBuffer)}
+ * once no longer used (in a finally block), exactly once, on the same thread.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+final class DirectBufferCache {
+    static final String MAX_SIZE_PROPERTY = "de.telekom.llcto.ecn_bits.jdk.jni.maxCachedBufferSize";
+    static final int TOTAL_BYTES = 256 * 1024;
+    private static final int MIN_SHIFT = 9;
+    private static final int MAX_SHIFT = 16;
+    // largest size class cached, MIN_SHIFT - 1 if none
+    private static final int CACHE_SHIFT = cacheShift(maxCachedSize());
+
+    private static final ThreadLocal<DirectBufferCache> CACHE =
+      ThreadLocal.withInitial(DirectBufferCache::new);
+
+    // per size class, a stack of free buffers
+    private final ByteBuffer[][] stacks = new ByteBuffer[MAX_SHIFT - MIN_SHIFT + 1][];
+    private final int[] depth = new int[MAX_SHIFT - MIN_SHIFT + 1];
+    // capacity of all buffers on the stacks
+    private int cached;
+
+    private DirectBufferCache() {
+        for (int i = 0; i < stacks.length; ++i) {
+            stacks[i] = new ByteBuffer[MIN_SHIFT + i > CACHE_SHIFT ? 0 :
+              Math.min(JNI.BATCH_MAX, TOTAL_BYTES >> (MIN_SHIFT + i))];
+        }
+    }
+
+    /**
+     * Returns a direct buffer with position 0 and limit {@code size},
+     * whose content is undefined.
+     *
+     * @param size number of bytes needed
+     * @return temporary direct buffer
+     */
+    static ByteBuffer get(final int size) {
+        if (size > 1 << MAX_SHIFT) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        return CACHE.get().take(sizeClass(size), size);
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #get(int)} to the cache.
+     *
+     * @param bb temporary direct buffer, no longer used by the caller
+     */
+    static void release(final ByteBuffer bb) {
+        final int cap = bb.capacity();
+        // not from a size class (uncached large buffer)
+        if (cap < 1 << MIN_SHIFT || cap > 1 << MAX_SHIFT || Integer.bitCount(cap) != 1) {
+            return;
+        }
+        CACHE.get().offer(sizeClass(cap), bb);
+    }
+
+    private static int maxCachedSize() {
+        try {
+            return Integer.getInteger(MAX_SIZE_PROPERTY, 1 << MAX_SHIFT);
+        } catch (SecurityException e) {
+            // not allowed to read properties, keep the default
+            return 1 << MAX_SHIFT;
+        }
+    }
+
+    // shift of the largest size class not above maxSize, clamped
+    static int cacheShift(final int maxSize) {
+        if (maxSize < 1 << MIN_SHIFT) {
+            return MIN_SHIFT - 1;
+        }
+        return Math.min(31 - Integer.numberOfLeadingZeros(maxSize), MAX_SHIFT);
+    }
+
+    // index of the smallest size class holding size bytes
+    private static int sizeClass(final int size) {
+        final int shift = size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+
+    private ByteBuffer take(final int cls, final int size) {
+        final ByteBuffer bb;
+        if (depth[cls] > 0) {
+            bb = stacks[cls][--depth[cls]];
+            stacks[cls][depth[cls]] = null;
+            cached -= bb.capacity();
+            bb.clear();
+        } else {
+            bb = ByteBuffer.allocateDirect(1 << (MIN_SHIFT + cls));
+        }
+        bb.limit(size);
+        return bb;
+    }
+
+    private void offer(final int cls, final ByteBuffer bb) {
+        final int cap = bb.capacity();
+        if (depth[cls] < stacks[cls].length && cached + cap <= TOTAL_BYTES) {
+            stacks[cls][depth[cls]++] = bb;
+            cached += cap;
+        }
+    }
+}
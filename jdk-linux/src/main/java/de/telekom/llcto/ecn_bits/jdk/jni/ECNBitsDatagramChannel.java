@@ -33,8 +33,14 @@ package de.telekom.llcto.ecn_bits.jdk.jni;
  */
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link DatagramChannel} equivalent capable of returning and
@@ -45,6 +51,10 @@ import java.nio.channels.spi.SelectorProvider;
  * to determine the IP traffic class and thus the ECN bits. Any associated
  * datagram socket will also offer them (acting on the channel’s backend).
  *
+ * Channels can be multiplexed in nōn-blocking mode using a selector from
+ * their {@link #provider()}, cf. {@link ECNBitsSelectorProvider}; they
+ * cannot be registered with the platform default selectors.
+ *
  * @author mirabilos (t.glaser@tarent.de)
  */
 public abstract class ECNBitsDatagramChannel extends DatagramChannel implements AbstractECNBitsDatagramReceiver {
@@ -59,7 +69,32 @@ public abstract class ECNBitsDatagramChannel extends DatagramChannel implements
      * @throws IOException If an I/O error occurs
      */
     public static ECNBitsDatagramChannel open() throws IOException {
-        return new ECNBitsDatagramChannelImpl(null);
+        return new ECNBitsDatagramChannelImpl(ECNBitsSelectorProvider.provider());
+    }
+
+    /**
+     * Opens a datagram channel whose receive and batch send operations
+     * are carried out via io_uring(7) where available.
+     *
+     * Receiving keeps a multishot recvmsg posted in the kernel that fills
+     * a ring of buffers provided by the channel, each large enough for a
+     * maximum-sized (or GRO-coalesced) datagram; the datagrams are copied
+     * out of these together with their traffic class; the socket adapter
+     * waits for this ring, not the socket, to honour SO_TIMEOUT.
+     * {@link #sendBatch} submits all datagrams of a batch as one linked
+     * chain. If the kernel (Linux
+     * 6.0 or newer is needed) does not support this, the channel silently
+     * uses the same system calls as one obtained from {@link #open()}
+     * instead; {@link #usesIoUring()} tells which is the case.
+     *
+     * Such a channel cannot be registered with a selector while its
+     * receive ring is in use, as that consumes the readiness events.
+     *
+     * @return A new datagram channel
+     * @throws IOException If an I/O error occurs
+     */
+    public static ECNBitsDatagramChannel openUring() throws IOException {
+        return new ECNBitsDatagramChannelImpl(ECNBitsSelectorProvider.provider(), true);
     }
 
     /**
@@ -78,4 +113,346 @@ public abstract class ECNBitsDatagramChannel extends DatagramChannel implements
      */
     @Override
     public abstract AbstractECNBitsDatagramSocket socket();
+
+    /**
+     * Tells whether this channel currently uses io_uring(7) for receiving
+     * or sending, which is only ever the case if it was opened with
+     * {@link #openUring()} and the kernel supports it.
+     *
+     * @return true if an io_uring is in use
+     */
+    public abstract boolean usesIoUring();
+
+    /**
+     * Sends a datagram via this channel with the given traffic class.
+     *
+     * This behaves like {@link #send(ByteBuffer, SocketAddress)} except the
+     * IP traffic class octet is passed to the kernel as ancillary data with
+     * this one datagram, instead of the one set on the channel via
+     * {@link java.net.StandardSocketOptions#IP_TOS}, which is left alone;
+     * this avoids changing the socket option around each send.
+     *
+     * @param src    buffer containing the datagram to be sent
+     * @param target address to which the datagram is to be sent
+     * @param tc     traffic class octet to send the datagram with
+     * @return number of bytes sent, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract int send(final ByteBuffer src, final SocketAddress target,
+      final byte tc) throws IOException;
+
+    /**
+     * Writes a datagram to this channel with the given traffic class.
+     *
+     * This behaves like {@link #write(ByteBuffer)} except the traffic class
+     * octet is passed as ancillary data, as with
+     * {@link #send(ByteBuffer, SocketAddress, byte)}.
+     *
+     * @param src buffer containing the datagram to be sent
+     * @param tc  traffic class octet to send the datagram with
+     * @return number of bytes sent, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract int write(final ByteBuffer src, final byte tc) throws IOException;
+
+    /**
+     * Receives a datagram via this channel, also returning its metadata.
+     *
+     * This behaves like {@link #receive(ByteBuffer)} but additionally
+     * stores the length, sender, traffic class (and, if enabled, kernel
+     * receive timestamp and UDP GRO segment size) of the datagram into
+     * the caller-owned {@code info} holder, straight from the system call
+     * that received it. Unlike {@link #retrieveLastTrafficClass()}, this
+     * cannot report another thread’s datagram, and it neither boxes nor
+     * locks anything per datagram; holders are meant to be reused. The
+     * holder is only filled in if a datagram was received.
+     *
+     * @param dst  buffer into which the datagram is to be transferred
+     * @param info holder for the metadata of the datagram
+     * @return the datagram’s source address, or null if none was available
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract SocketAddress receive(final ByteBuffer dst,
+      final ECNBitsDatagramInfo info) throws IOException;
+
+    /**
+     * Reads a datagram from this channel, also returning its metadata.
+     *
+     * This behaves like {@link #read(ByteBuffer)} but additionally fills
+     * in {@code info} as with {@link #receive(ByteBuffer, ECNBitsDatagramInfo)}.
+     *
+     * @param dst  buffer into which the datagram is to be transferred
+     * @param info holder for the metadata of the datagram
+     * @return number of bytes read, possibly zero, or -1 at end-of-stream
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract int read(final ByteBuffer dst, final ECNBitsDatagramInfo info) throws IOException;
+
+    /**
+     * Receives multiple datagrams via this channel with a single system call.
+     *
+     * Each datagram is transferred into the next buffer of {@code dsts},
+     * starting at its current position, as if {@link #receive(ByteBuffer)}
+     * had been called on it; the length, sender and traffic class of each
+     * datagram are stored into the {@code infos} element with the same index.
+     * To receive into slices of one big buffer, pass {@link ByteBuffer#slice()}s.
+     *
+     * If this channel is in blocking mode, this method blocks until at least
+     * one datagram is available, then returns all datagrams that are already
+     * queued, up to the number of buffers passed (and an implementation limit).
+     * In nōn-blocking mode, it returns zero if no datagram is available.
+     *
+     * Measurement is updated once per batch, not per datagram.
+     *
+     * @param dsts  buffers into which the datagrams are to be transferred
+     * @param infos holders for the metadata, at least as many as buffers
+     * @return number of datagrams received, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract int receiveBatch(final ByteBuffer[] dsts,
+      final ECNBitsDatagramInfo[] infos) throws IOException;
+
+    /**
+     * Sends multiple datagrams via this channel with a single system call.
+     *
+     * Each remaining buffer of {@code srcs} is sent as one datagram, as if
+     * {@link #send(ByteBuffer, SocketAddress)} had been called on it, to the
+     * {@code targets} element with the same index or, if the array or the
+     * element are null, to the address this channel is connected to. If
+     * {@code tcs} is not null, the traffic class octet with the same index
+     * is used for the datagram instead of the one set on the channel.
+     *
+     * The number of datagrams actually sent is returned; the kernel may send
+     * fewer than requested (e.g. if the send buffer fills up in nōn-blocking
+     * mode) and only the positions of the buffers whose datagrams were sent
+     * are advanced, each by the number of bytes actually sent from it.
+     *
+     * @param srcs    buffers containing the datagrams to be sent
+     * @param targets addresses to send to, or null for the connected peer
+     * @param tcs     traffic class octets to send with, or null
+     * @return number of datagrams sent, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract int sendBatch(final ByteBuffer[] srcs, final SocketAddress[] targets,
+      final byte[] tcs) throws IOException;
+
+    /**
+     * Sends the remaining content of a buffer as a burst of equal-sized
+     * datagrams via this channel, using UDP segmentation offload if possible.
+     *
+     * The data is split into datagrams of {@code segmentSize} bytes each,
+     * except the last one, which may be shorter; they are sent to
+     * {@code target} or, if null, to the address this channel is connected
+     * to, all with the traffic class set on the channel. Where the kernel
+     * supports it (Linux 4.18 and up, UDP_SEGMENT), up to 64 datagrams are
+     * passed down with one system call as one large buffer and split by
+     * the kernel or NIC; otherwise (or once the kernel refused this for the
+     * channel) the datagrams are sent individually in batches. Passing a
+     * direct buffer avoids copying the data.
+     *
+     * In blocking mode, all data is sent. In nōn-blocking mode, sending
+     * stops when the socket send buffer is full; the buffer position is
+     * advanced by the number of bytes actually sent in either case.
+     *
+     * @param src         buffer containing the data to be sent
+     * @param target      address to send the datagrams to, or null
+     * @param segmentSize size of each datagram, at most 65507
+     * @return number of bytes sent, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract int sendSegmented(final ByteBuffer src, final SocketAddress target,
+      final int segmentSize) throws IOException;
+
+    /**
+     * Sets a listener to be notified as soon as CE marking of the received
+     * traffic starts or stops, without waiting for a measurement period.
+     *
+     * The last {@code window} packets received (each UDP GRO segment
+     * counting as one) are considered; once at least {@code onset} of
+     * them had the ECN CE mark, the listener is called with true; once
+     * at most {@code offset} of them had it, with false. This state is
+     * updated incrementally with every received packet; the listener is
+     * called asynchronously on the given executor (which should run the
+     * calls in order) or on a shared daemon thread, so receiving is never
+     * blocked by it. The state starts as not congested.
+     *
+     * @param listener to notify, or null to remove the current one
+     * @param window   number of packets to consider, 1 ≤ window ≤ 64
+     * @param onset    CE marks signalling onset, 1 ≤ onset ≤ window
+     * @param offset   CE marks signalling offset, 0 ≤ offset &lt; onset
+     * @param executor to call the listener on, or null for the shared thread
+     * @throws IllegalArgumentException if the thresholds are out of range
+     */
+    public abstract void setCongestionListener(final ECNCongestionListener listener,
+      final int window, final int onset, final int offset, final Executor executor);
+
+    /**
+     * Enables (or, with {@code maxPeers} 0, disables) accounting of the
+     * received traffic per sender address and port, for unconnected
+     * channels serving many peers; any previous per-peer data is dropped.
+     *
+     * At most {@code maxPeers} peers are tracked (using up to about 240
+     * bytes each); peers from which nothing was received for the idle
+     * timeout are evicted when room is needed. Datagrams from further
+     * peers are only accounted for in the channel-wide measurements.
+     * Peers are distinguished by address and port, not IPv6 scope.
+     *
+     * @param maxPeers    maximum number of peers tracked, 0 ≤ maxPeers ≤ 1048576
+     * @param idleTimeout after which a silent peer may be evicted, positive
+     * @param unit        of idleTimeout
+     * @throws IllegalArgumentException if out of range
+     * @see #getPeerMeasurement(InetSocketAddress, boolean)
+     * @see #getPeerMeasurements(boolean)
+     */
+    public abstract void setPeerStatistics(final int maxPeers, final long idleTimeout,
+      final TimeUnit unit);
+
+    /**
+     * Retrieves the measurement data for one peer, for the period since
+     * it was first seen or its last reset; the size histogram and drop
+     * count are empty.
+     *
+     * @param peer  sender address and port
+     * @param reset whether to start a new period for this peer
+     * @return {@link ECNStatistics}, or null if the peer is not tracked
+     */
+    public abstract ECNStatistics getPeerMeasurement(final InetSocketAddress peer, final boolean reset);
+
+    /**
+     * Retrieves the measurement data for all tracked peers, each for the
+     * period since it was first seen or its last reset, after evicting
+     * idle ones; the size histograms and drop counts are empty.
+     *
+     * @param reset whether to start a new period for all peers
+     * @return map from sender address to statistics, empty if not enabled
+     */
+    public abstract Map<InetSocketAddress, ECNStatistics> getPeerMeasurements(final boolean reset);
+
+    /**
+     * Enables (or, with {@code topK} 0, disables) approximate analytics of
+     * the senders of the received traffic, for unconnected channels with
+     * too many peers for {@link #setPeerStatistics(int, long, TimeUnit)}:
+     * count-min sketches (4 rows of {@code width} counters each, per
+     * metric) feeding top-K lists of the heaviest senders by packets,
+     * bytes and CE marks, and a HyperLogLog distinct sender count, using
+     * fixed memory (about 100 × width bytes) and updated without
+     * allocation from the receive path; any previous data is dropped.
+     *
+     * Estimates are within a fraction of about 2.7/width of the total
+     * traffic in the period above the actual figures.
+     *
+     * @param topK  number of senders to list per metric, 0 ≤ topK ≤ 4096
+     * @param width counters per sketch row, 16 ≤ width ≤ 4194304, rounded up to a power of two
+     * @throws IllegalArgumentException if out of range
+     * @see #getSenderReport(boolean)
+     */
+    public abstract void setSenderSketch(final int topK, final int width);
+
+    /**
+     * Retrieves the sender analytics for the period since they were
+     * enabled or last reset.
+     *
+     * @param reset whether to start a new period
+     * @return {@link ECNSenderReport}, or null if not enabled
+     */
+    public abstract ECNSenderReport getSenderReport(final boolean reset);
+
+    /**
+     * Enables (or, with {@code capacity} 0, disables) the per-datagram
+     * trace: a fixed-size off-heap ring recording, for each received
+     * datagram, when it was received, its traffic class octet, length
+     * and a compact sender ID, written from the receive path without
+     * locking or allocation, which overwrites its oldest records when
+     * full; any previous records are dropped.
+     *
+     * Records take 24 bytes each; readers may see up to capacity − 2.
+     *
+     * @param capacity number of records, 0 or 16 ≤ capacity ≤ 16777216, rounded up to a power of two
+     * @throws IllegalArgumentException if out of range
+     * @see #snapshotTrace(ECNTraceEntry[])
+     * @see #drainTrace(ECNTraceEntry[])
+     */
+    public abstract void setTrace(final int capacity);
+
+    /**
+     * Copies the most recent trace records, without consuming them;
+     * may be called concurrently with receiving and other readers.
+     *
+     * @param into holders to fill, oldest record first
+     * @return number of holders filled, 0 if the trace is not enabled
+     */
+    public abstract int snapshotTrace(final ECNTraceEntry[] into);
+
+    /**
+     * Consumes the oldest trace records not yet drained; records
+     * overwritten before they could be drained are lost, leaving a gap
+     * in {@link ECNTraceEntry#getSequence()}. May be called concurrently
+     * with receiving and other readers; each record is drained once.
+     *
+     * @param into holders to fill, oldest record first
+     * @return number of holders filled, 0 if the trace is not enabled or empty
+     */
+    public abstract int drainTrace(final ECNTraceEntry[] into);
+
+    /**
+     * Sets the spin budget for the low-latency receive mode: in blocking
+     * mode, receive calls that find no datagram waiting poll the socket
+     * for up to this long, without yielding the CPU, before blocking in
+     * the kernel, avoiding the wake-up latency for datagrams arriving
+     * within the budget; 0, the default, disables spinning. Best used
+     * with {@link ECNBitsSocketOptions#SO_BUSY_POLL} on a dedicated core.
+     * Not used on io_uring channels.
+     *
+     * @param budget maximum time to spin per receive call, ≥ 0
+     * @param unit   time unit of {@code budget}
+     * @throws IllegalArgumentException if budget is negative
+     * @see #getSpinHitCount()
+     * @see #getSpinMissCount()
+     */
+    public abstract void setReceiveSpin(final long budget, final TimeUnit unit);
+
+    /**
+     * Returns how many times a datagram arrived while spinning, so the
+     * receive call did not need to block, cf. {@link #setReceiveSpin(long, TimeUnit)}
+     *
+     * @return number of successful spin phases since the channel was opened
+     */
+    public abstract long getSpinHitCount();
+
+    /**
+     * Returns how many times the spin budget was exhausted without
+     * a datagram arriving, so the receive call then blocked,
+     * cf. {@link #setReceiveSpin(long, TimeUnit)}
+     *
+     * @return number of unsuccessful spin phases since the channel was opened
+     */
+    public abstract long getSpinMissCount();
+
+    /**
+     * Enables or disables the concurrent-reader mode. Normally, as with
+     * any {@link DatagramChannel}, one thread at a time reads from the
+     * channel while the others wait for it; in this mode, the receive,
+     * receiveBatch and read calls of several threads enter the kernel
+     * concurrently, without any channel lock, so that N threads can
+     * drain one busy socket. Each datagram goes to one of them.
+     *
+     * {@link #retrieveLastTrafficClass()} and {@link #retrieveLastReceiveTimestamp()}
+     * then report the last datagram received by the calling thread;
+     * per-datagram metadata is best taken from {@link #receiveBatch(ByteBuffer[],
+     * ECNBitsDatagramInfo[])} though. Receive calls racing with connect
+     * or disconnect may still use the previous connection state. Channels
+     * using io_uring keep serialising their receives. Change the mode only
+     * while no receive call is in progress.
+     *
+     * @param on whether to enable the concurrent-reader mode
+     */
+    public abstract void setConcurrentReaders(final boolean on);
+
+    /**
+     * Returns whether the concurrent-reader mode is enabled,
+     * cf. {@link #setConcurrentReaders(boolean)}
+     *
+     * @return true if readers do not serialise
+     */
+    public abstract boolean isConcurrentReaders();
 }
@@ -45,6 +45,7 @@ import java.net.SocketException;
 import java.net.SocketOption;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.AlreadyBoundException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.MembershipKey;
@@ -56,6 +57,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import static de.telekom.llcto.ecn_bits.jdk.jni.JNI.*;
 
@@ -69,10 +74,16 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
     @SuppressWarnings("UnusedAssignment")
     private int fdVal = -1;
 
-    // IDs of native threads doing reads and writes, for signalling
-    private volatile long readerThread = 0;
+    // ID of the native thread doing writes, for signalling
     private volatile long writerThread = 0;
 
+    // per-thread receive state, cf. Reader; dropped on close
+    private final ConcurrentLinkedQueue<Reader> readers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Reader> reader = new ThreadLocal<>();
+
+    // readers need not hold readLock (unless using the receive ring)
+    private volatile boolean concurrentReaders = false;
+
     // Lock held by current reading or connecting thread
     private final Object readLock = new Object();
 
@@ -84,6 +95,7 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
     private final Object stateLock = new Object();
 
     // -- The following fields are protected by stateLock
+    // (written under it; volatile ones may be read without it)
 
     // State (does not necessarily increase monotonically)
     private static final int ST_UNINITIALIZED = -1;
@@ -91,11 +103,11 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
     private static final int ST_CONNECTED = 1;
     private static final int ST_KILLED = 2;
     @SuppressWarnings("UnusedAssignment")
-    private int state = ST_UNINITIALIZED;
+    private volatile int state = ST_UNINITIALIZED;
 
-    // Binding
-    private InetSocketAddress localAddress;
-    private InetSocketAddress remoteAddress;
+    // Binding; remoteAddress is non-null exactly while connected
+    private volatile InetSocketAddress localAddress;
+    private volatile InetSocketAddress remoteAddress;
 
     // Our socket adapter, if any
     private AbstractECNBitsDatagramSocket socket;
@@ -104,10 +116,39 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
 
     private final ECNMeasurer tcm = new ECNMeasurer();
 
+    // per-peer accounting and sender analytics, if enabled
+    private volatile PeerTable peers = null;
+    private volatile SenderSketch sketch = null;
+    private volatile TraceRing trace = null;
+
+    // spin-then-block receiving: budget in ns (0 = off), outcomes
+    private volatile long spinBudget = 0;
+    private final LongAdder spinHits = new LongAdder();
+    private final LongAdder spinMisses = new LongAdder();
+
+    // metadata records for batch sending, protected by writeLock
+    private ByteBuffer wmd;
+
+    // UDP GSO: 0 = not yet probed, 1 = usable, -1 = unavailable; protected by writeLock
+    private int gsoState;
+
+    // io_uring handles (0 if not used), protected by readLock and writeLock, respectively
+    private volatile long urx;
+    private volatile long utx;
+
     public ECNBitsDatagramChannelImpl(final SelectorProvider sp) throws IOException {
+        this(sp, false);
+    }
+
+    ECNBitsDatagramChannelImpl(final SelectorProvider sp, final boolean uring) throws IOException {
         super(sp);
         this.fdVal = n_socket();
         this.state = ST_UNCONNECTED;
+        if (uring) {
+            // either falls back to the system calls independently
+            urx = n_uropen(true);
+            utx = n_uropen(false);
+        }
     }
 
     @Override
@@ -120,6 +161,16 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
         }
     }
 
+    @Override
+    public boolean usesIoUring() {
+        return urx != 0 || utx != 0;
+    }
+
+    // the multishot recvmsg would consume the readiness events
+    boolean usesRxRing() {
+        return urx != 0;
+    }
+
     @Override
     public SocketAddress getLocalAddress() throws IOException {
         synchronized (stateLock) {
@@ -174,13 +225,21 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
         }
     }
 
+    // used by ECNShardedListener once all shards are bound
+    void steerReusePort(final int mode, final int nshards) throws IOException {
+        synchronized (stateLock) {
+            ensureOpen();
+            n_reuseport(fdVal, mode, nshards);
+        }
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public <T> T getOption(final SocketOption<T> name) throws IOException {
         final int opt = DefaultOptionsHolder.optenum(name);
         synchronized (stateLock) {
             ensureOpen();
-            return (T) (Integer) n_getsockopt(fdVal, opt);
+            return (T) DefaultOptionsHolder.from(opt, n_getsockopt(fdVal, opt));
         }
     }
 
@@ -189,12 +248,18 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
         static final Set<SocketOption<?>> defaultOptions;
 
         static {
-            final HashMap<SocketOption<?>, Integer> map = new HashMap<>(5);
+            final HashMap<SocketOption<?>, Integer> map = new HashMap<>(6);
             map.put(StandardSocketOptions.SO_SNDBUF, JNI.SO_SNDBUF); // Integer
             map.put(StandardSocketOptions.SO_RCVBUF, JNI.SO_RCVBUF); // Integer
             map.put(StandardSocketOptions.SO_REUSEADDR, JNI.SO_REUSEADDR); // Boolean
             map.put(StandardSocketOptions.SO_BROADCAST, JNI.SO_BROADCAST); // Boolean
             map.put(StandardSocketOptions.IP_TOS, JNI.IP_TOS); // Integer
+            map.put(ECNBitsSocketOptions.UDP_GRO, JNI.UDP_GRO); // Boolean
+            map.put(ECNBitsSocketOptions.SO_TIMESTAMPNS, JNI.SO_TIMESTAMPNS); // Boolean
+            map.put(ECNBitsSocketOptions.SO_BUSY_POLL, JNI.SO_BUSY_POLL); // Integer
+            map.put(ECNBitsSocketOptions.SO_PREFER_BUSY_POLL, JNI.SO_PREFER_BUSY_POLL); // Boolean
+            map.put(ECNBitsSocketOptions.SO_REUSEPORT, JNI.SO_REUSEPORT); // Boolean
+            map.put(ECNBitsSocketOptions.SO_INCOMING_CPU, JNI.SO_INCOMING_CPU); // Integer
             defaultMap = Collections.unmodifiableMap(map);
             defaultOptions = Collections.unmodifiableSet(map.keySet());
         }
@@ -206,6 +271,10 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             switch (opt) {
             case JNI.SO_REUSEADDR:
             case JNI.SO_BROADCAST:
+            case JNI.UDP_GRO:
+            case JNI.SO_TIMESTAMPNS:
+            case JNI.SO_PREFER_BUSY_POLL:
+            case JNI.SO_REUSEPORT:
                 if (!(value instanceof Boolean)) {
                     throw new SocketException("Bad argument for " + option +
                       ": expected Boolean, got " + value.getClass().getSimpleName());
@@ -214,6 +283,8 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             case JNI.SO_SNDBUF:
             case JNI.SO_RCVBUF:
             case JNI.IP_TOS:
+            case JNI.SO_BUSY_POLL:
+            case JNI.SO_INCOMING_CPU:
                 if (!(value instanceof Integer)) {
                     throw new SocketException("Bad argument for " + option +
                       ": expected Integer, got " + value.getClass().getSimpleName());
@@ -225,6 +296,20 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             }
         }
 
+        static Object from(int opt, int value) {
+            switch (opt) {
+            case JNI.SO_REUSEADDR:
+            case JNI.SO_BROADCAST:
+            case JNI.UDP_GRO:
+            case JNI.SO_TIMESTAMPNS:
+            case JNI.SO_PREFER_BUSY_POLL:
+            case JNI.SO_REUSEPORT:
+                return value != 0;
+            default:
+                return value;
+            }
+        }
+
         static int optenum(SocketOption<?> option) {
             if (option == null) {
                 throw new NullPointerException();
@@ -250,49 +335,86 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
 
     @Override
     public SocketAddress receive(final ByteBuffer dst) throws IOException {
+        return receive_info(dst, null);
+    }
+
+    @Override
+    public SocketAddress receive(final ByteBuffer dst, final ECNBitsDatagramInfo info) throws IOException {
+        if (info == null) {
+            throw new NullPointerException();
+        }
+        return receive_info(dst, info);
+    }
+
+    private SocketAddress receive_info(final ByteBuffer dst, final ECNBitsDatagramInfo info) throws IOException {
         if (dst == null) {
             throw new NullPointerException();
         }
         if (dst.isReadOnly()) {
             throw new IllegalArgumentException("Read-only buffer");
         }
+        if (lockFreeRead()) {
+            return receive_locked(dst, info);
+        }
         synchronized (readLock) {
-            ensureOpen();
-            // Socket was not bound before attempting receive
-            // Android-changed: Do not implicitly to bind to 0 (or 0.0.0.0), return null instead.
-            synchronized (stateLock) {
-                if (localAddress == null) {
+            return receive_locked(dst, info);
+        }
+    }
+
+    // under readLock unless lockFreeRead(); info may be null
+    private SocketAddress receive_locked(final ByteBuffer dst, final ECNBitsDatagramInfo info)
+      throws IOException {
+        ensureOpen();
+        // Socket was not bound before attempting receive
+        // Android-changed: Do not implicitly to bind to 0 (or 0.0.0.0), return null instead.
+        if (localAddress == null) {
+            return null;
+        }
+        final Reader r = reader();
+        final ECNBitsDatagramInfo ri = info != null ? info : r.rinfo;
+        int n = 0;
+        try {
+            begin();
+            if (!isOpen()) {
+                return null;
+            }
+            final SecurityManager security;
+            r.tid = JNI.n_gettid();
+            // connect holds readLock, but concurrent readers use a snapshot
+            final InetSocketAddress peer = remoteAddress;
+            InetSocketAddress sender;
+            if (peer != null) {
+                do {
+                    n = i_recv(r, dst, true, ri);
+                } while ((n == JNI.EINTR) && isOpen());
+                if (n == JNI.EAVAIL) {
                     return null;
                 }
-            }
-            int n = 0;
-            try {
-                begin();
-                if (!isOpen()) {
+                // not reported by the kernel
+                sender = n < 0 ? null : peer;
+                if (sender != null) {
+                    ri.setSender(peer);
+                }
+            } else if ((security = System.getSecurityManager()) == null) {
+                do {
+                    n = i_recv(r, dst, false, ri);
+                } while ((n == JNI.EINTR) && isOpen());
+                if (n == JNI.EAVAIL) {
                     return null;
                 }
-                final SecurityManager security;
-                readerThread = JNI.n_gettid();
-                final JNI.AddrPort ap = new JNI.AddrPort();
-                InetSocketAddress sender;
-                if (isConnected() || ((security = System.getSecurityManager()) == null)) {
-                    do {
-                        n = i_recv(dst, ap);
-                    } while ((n == JNI.EINTR) && isOpen());
-                    if (n == JNI.EAVAIL) {
-                        return null;
-                    }
-                    sender = ap.get();
-                } else {
-                    final ByteBuffer bb = ByteBuffer.allocateDirect(dst.remaining());
+                sender = n < 0 ? null : ri.getSender();
+            } else {
+                final int rem = dst.remaining();
+                final ByteBuffer bb = DirectBufferCache.get(rem);
+                try {
                     while (true) {
                         do {
-                            n = i_recv(bb, ap);
+                            n = i_recv(r, bb, false, ri);
                         } while ((n == JNI.EINTR) && isOpen());
                         if (n == JNI.EAVAIL) {
                             return null;
                         }
-                        sender = ap.get();
+                        sender = n < 0 ? null : ri.getSender();
                         if (sender == null) {
                             break;
                         }
@@ -301,6 +423,7 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                         } catch (SecurityException se) {
                             // Ignore packet
                             bb.clear();
+                            bb.limit(rem);
                             n = 0;
                             continue;
                         }
@@ -308,17 +431,80 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                         dst.put(bb);
                         break;
                     }
+                } finally {
+                    DirectBufferCache.release(bb);
                 }
-                return sender;
-            } finally {
-                readerThread = 0;
-                end((n > 0) || (n == JNI.EAVAIL));
             }
+            return sender;
+        } finally {
+            leave(r);
+            end((n > 0) || (n == JNI.EAVAIL));
+        }
+    }
+
+    @Override
+    public int receiveBatch(final ByteBuffer[] dsts, final ECNBitsDatagramInfo[] infos) throws IOException {
+        if (dsts == null || infos == null) {
+            throw new NullPointerException();
+        }
+        if (infos.length < dsts.length) {
+            throw new IllegalArgumentException("fewer infos than buffers");
+        }
+        for (final ByteBuffer dst : dsts) {
+            if (dst.isReadOnly()) {
+                throw new IllegalArgumentException("Read-only buffer");
+            }
+        }
+        if (lockFreeRead()) {
+            return receiveBatch_locked(dsts, infos);
+        }
+        synchronized (readLock) {
+            return receiveBatch_locked(dsts, infos);
+        }
+    }
+
+    // under readLock unless lockFreeRead()
+    private int receiveBatch_locked(final ByteBuffer[] dsts, final ECNBitsDatagramInfo[] infos)
+      throws IOException {
+        ensureOpen();
+        // Socket was not bound before attempting receive
+        if (localAddress == null) {
+            return 0;
+        }
+        if (dsts.length == 0) {
+            return 0;
+        }
+        final Reader r = reader();
+        int n = 0;
+        try {
+            begin();
+            if (!isOpen()) {
+                return 0;
+            }
+            r.tid = JNI.n_gettid();
+            final boolean connected = isConnected();
+            final SecurityManager security = connected ? null : System.getSecurityManager();
+            do {
+                n = i_recvmmsg(r, dsts, infos, security, connected);
+            } while ((n == JNI.EINTR || n == 0) && isOpen());
+            return (int) ioresult(n);
+        } finally {
+            leave(r);
+            end((n > 0) || (n == JNI.EAVAIL));
         }
     }
 
     @Override
     public int send(final ByteBuffer src, final SocketAddress target) throws IOException {
+        return send_tc(src, target, -1);
+    }
+
+    @Override
+    public int send(final ByteBuffer src, final SocketAddress target, final byte tc) throws IOException {
+        return send_tc(src, target, tc & 0xFF);
+    }
+
+    private int send_tc(final ByteBuffer src, final SocketAddress target, final int tc) throws IOException {
         if (src == null) {
             throw new NullPointerException();
         }
@@ -330,7 +516,7 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                     if (!target.equals(remoteAddress)) {
                         throw new IllegalArgumentException("Connected address not equal to target address");
                     }
-                    return write_locked(src);
+                    return write_locked(src, tc);
                 }
                 smConnect(isa);
             }
@@ -343,7 +529,7 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                 }
                 writerThread = JNI.n_gettid();
                 do {
-                    n = i_send(src, isa);
+                    n = i_send(src, isa, tc);
                 } while ((n == JNI.EINTR) && isOpen());
 
                 synchronized (stateLock) {
@@ -360,67 +546,249 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
     }
 
     @Override
-    public int read(final ByteBuffer buf) throws IOException {
-        if (buf == null) {
+    public int sendBatch(final ByteBuffer[] srcs, final SocketAddress[] targets,
+      final byte[] tcs) throws IOException {
+        if (srcs == null) {
             throw new NullPointerException();
         }
-        synchronized (readLock) {
+        if ((targets != null && targets.length < srcs.length) ||
+          (tcs != null && tcs.length < srcs.length)) {
+            throw new IllegalArgumentException("fewer targets or tcs than buffers");
+        }
+        synchronized (writeLock) {
+            ensureOpen();
+            final int nmsgs = Math.min(srcs.length, JNI.BATCH_MAX);
+            final InetSocketAddress[] isas = new InetSocketAddress[nmsgs];
             synchronized (stateLock) {
-                ensureOpen();
-                if (!isConnected()) {
-                    throw new NotYetConnectedException();
+                final boolean connected = isConnected();
+                for (int i = 0; i < nmsgs; ++i) {
+                    final SocketAddress target = targets == null ? null : targets[i];
+                    if (target == null) {
+                        if (!connected) {
+                            throw new NotYetConnectedException();
+                        }
+                        isas[i] = remoteAddress;
+                        continue;
+                    }
+                    final InetSocketAddress isa = netCheckAddress(target);
+                    if (connected) {
+                        if (!target.equals(remoteAddress)) {
+                            throw new IllegalArgumentException("Connected address not equal to target address");
+                        }
+                    } else {
+                        smConnect(isa);
+                    }
+                    isas[i] = isa;
                 }
             }
-            long n = 0;
+            if (nmsgs == 0) {
+                return 0;
+            }
+
+            int n = 0;
             try {
                 begin();
                 if (!isOpen()) {
                     return 0;
                 }
-                readerThread = JNI.n_gettid();
+                writerThread = JNI.n_gettid();
                 do {
-                    n = i_recv(buf, new JNI.AddrPort());
+                    n = i_sendmmsg(srcs, isas, tcs, nmsgs);
                 } while ((n == JNI.EINTR) && isOpen());
+
+                synchronized (stateLock) {
+                    if (isOpen() && (localAddress == null)) {
+                        updateLocalAddress();
+                    }
+                }
                 return (int) ioresult(n);
             } finally {
-                readerThread = 0;
+                writerThread = 0;
                 end((n > 0) || (n == JNI.EAVAIL));
             }
         }
     }
 
     @Override
-    public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
-        if ((offset < 0) || (length < 0) || (offset > dsts.length - length)) {
-            throw new IndexOutOfBoundsException();
+    public int sendSegmented(final ByteBuffer src, final SocketAddress target,
+      final int segmentSize) throws IOException {
+        if (src == null) {
+            throw new NullPointerException();
         }
-        synchronized (readLock) {
+        if (segmentSize < 1 || segmentSize > JNI.GSO_MAX_BYTES) {
+            throw new IllegalArgumentException("segment size out of range");
+        }
+        synchronized (writeLock) {
+            ensureOpen();
+            final InetSocketAddress isa;
             synchronized (stateLock) {
-                ensureOpen();
-                if (!isConnected()) {
-                    throw new NotYetConnectedException();
+                if (target == null) {
+                    if (!isConnected()) {
+                        throw new NotYetConnectedException();
+                    }
+                    isa = remoteAddress;
+                } else {
+                    isa = netCheckAddress(target);
+                    if (isConnected()) {
+                        if (!target.equals(remoteAddress)) {
+                            throw new IllegalArgumentException("Connected address not equal to target address");
+                        }
+                    } else {
+                        smConnect(isa);
+                    }
                 }
             }
-            long n = 0;
+
+            int n = 0;
+            int total = 0;
             try {
                 begin();
                 if (!isOpen()) {
                     return 0;
                 }
-                readerThread = JNI.n_gettid();
-                do {
-                    n = sg_rd(dsts, offset, length);
-                } while ((n == JNI.EINTR) && isOpen());
-                return ioresult(n);
+                writerThread = JNI.n_gettid();
+                if (gsoState == 0) {
+                    gsoState = gso_probe();
+                }
+                boolean useGso = gsoState > 0;
+                while (src.hasRemaining()) {
+                    do {
+                        n = useGso ? i_sendgso(src, isa, segmentSize) :
+                          i_sendsegs(src, isa, segmentSize);
+                    } while ((n == JNI.EINTR) && isOpen());
+                    if (n == JNI.ENOTSUP) {
+                        // refused by the kernel, do not try again
+                        gsoState = -1;
+                        useGso = false;
+                        continue;
+                    }
+                    if (n == JNI.EINVAL) {
+                        // refused for these arguments only, keep gsoState
+                        useGso = false;
+                        continue;
+                    }
+                    if (n <= 0) {
+                        break;
+                    }
+                    total += n;
+                }
+
+                synchronized (stateLock) {
+                    if (isOpen() && (localAddress == null)) {
+                        updateLocalAddress();
+                    }
+                }
+                return total > 0 ? total : (int) ioresult(n);
             } finally {
-                readerThread = 0;
-                end((n > 0) || (n == JNI.EAVAIL));
+                writerThread = 0;
+                end((total > 0) || (n > 0) || (n == JNI.EAVAIL));
             }
         }
     }
 
+    @Override
+    public int read(final ByteBuffer buf) throws IOException {
+        return read_info(buf, null);
+    }
+
+    @Override
+    public int read(final ByteBuffer buf, final ECNBitsDatagramInfo info) throws IOException {
+        if (info == null) {
+            throw new NullPointerException();
+        }
+        return read_info(buf, info);
+    }
+
+    private int read_info(final ByteBuffer buf, final ECNBitsDatagramInfo info) throws IOException {
+        if (buf == null) {
+            throw new NullPointerException();
+        }
+        if (lockFreeRead()) {
+            return read_locked(buf, info);
+        }
+        synchronized (readLock) {
+            return read_locked(buf, info);
+        }
+    }
+
+    // under readLock unless lockFreeRead(); info may be null
+    private int read_locked(final ByteBuffer buf, final ECNBitsDatagramInfo info) throws IOException {
+        ensureOpen();
+        final InetSocketAddress peer = remoteAddress;
+        if (peer == null) {
+            throw new NotYetConnectedException();
+        }
+        final Reader r = reader();
+        final ECNBitsDatagramInfo ri = info != null ? info : r.rinfo;
+        long n = 0;
+        try {
+            begin();
+            if (!isOpen()) {
+                return 0;
+            }
+            r.tid = JNI.n_gettid();
+            do {
+                n = i_recv(r, buf, true, ri);
+            } while ((n == JNI.EINTR) && isOpen());
+            if (n >= 0) {
+                // not reported by the kernel
+                ri.setSender(peer);
+            }
+            return (int) ioresult(n);
+        } finally {
+            leave(r);
+            end((n > 0) || (n == JNI.EAVAIL));
+        }
+    }
+
+    @Override
+    public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+        if ((offset < 0) || (length < 0) || (offset > dsts.length - length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (lockFreeRead()) {
+            return read_locked(dsts, offset, length);
+        }
+        synchronized (readLock) {
+            return read_locked(dsts, offset, length);
+        }
+    }
+
+    // under readLock unless lockFreeRead()
+    private long read_locked(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+        ensureOpen();
+        if (!isConnected()) {
+            throw new NotYetConnectedException();
+        }
+        final Reader r = reader();
+        long n = 0;
+        try {
+            begin();
+            if (!isOpen()) {
+                return 0;
+            }
+            r.tid = JNI.n_gettid();
+            do {
+                n = sg_rd(r, dsts, offset, length);
+            } while ((n == JNI.EINTR) && isOpen());
+            return ioresult(n);
+        } finally {
+            leave(r);
+            end((n > 0) || (n == JNI.EAVAIL));
+        }
+    }
+
     @Override
     public int write(final ByteBuffer buf) throws IOException {
+        return write_tc(buf, -1);
+    }
+
+    @Override
+    public int write(final ByteBuffer buf, final byte tc) throws IOException {
+        return write_tc(buf, tc & 0xFF);
+    }
+
+    private int write_tc(final ByteBuffer buf, final int tc) throws IOException {
         if (buf == null) {
             throw new NullPointerException();
         }
@@ -431,11 +799,11 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                     throw new NotYetConnectedException();
                 }
             }
-            return write_locked(buf);
+            return write_locked(buf, tc);
         }
     }
 
-    private int write_locked(final ByteBuffer buf) throws IOException {
+    private int write_locked(final ByteBuffer buf, final int tc) throws IOException {
         long n = 0;
         try {
             begin();
@@ -444,7 +812,7 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             }
             writerThread = JNI.n_gettid();
             do {
-                n = i_send(buf, remoteAddress);
+                n = i_send(buf, remoteAddress, tc);
             } while ((n == JNI.EINTR) && isOpen());
             return (int) ioresult(n);
         } finally {
@@ -508,9 +876,7 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
 
     @Override
     public boolean isConnected() {
-        synchronized (stateLock) {
-            return (state == ST_CONNECTED);
-        }
+        return state == ST_CONNECTED;
     }
 
     @Override
@@ -527,8 +893,8 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                     n_connect(fdVal, JNI.AddrPort.addr(isa), isa.getPort(), JNI.AddrPort.scopeId(isa));
 
                     // Connection succeeded; disallow further invocation
-                    state = ST_CONNECTED;
                     remoteAddress = isa;
+                    state = ST_CONNECTED;
                     //cachedSenderInetAddress = isa.getAddress();
                     //cachedSenderPort = isa.getPort();
 
@@ -595,27 +961,69 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
     protected void implCloseSelectableChannel() throws IOException {
         synchronized (stateLock) {
             long th;
-            if ((th = readerThread) != 0) {
-                JNI.n_sigtid(th);
+            for (final Reader r : readers) {
+                if ((th = r.tid) != 0) {
+                    JNI.n_sigtid(th);
+                }
             }
             if ((th = writerThread) != 0) {
                 JNI.n_sigtid(th);
             }
+            // threads still receiving drop theirs on leaving
+            readers.clear();
+            reader.remove();
+            if (usesIoUring() && state != ST_KILLED) {
+                // also wakes threads not yet waiting for completions
+                n_preclose(fdVal);
+            }
             if (!isRegistered()) {
-                if (state == ST_KILLED) {
-                    return;
-                }
-                if (state == ST_UNINITIALIZED) {
-                    state = ST_KILLED;
-                    return;
-                }
-                n_close(fdVal);
-                fdVal = -1;
+                kill();
+            }
+        }
+        // outside of stateLock; only ring users can hold the I/O locks
+        // for long, and n_preclose made them leave, so never wait otherwise
+        if (urx != 0) {
+            synchronized (readLock) {
+                final long h = urx;
+                urx = 0;
+                n_urclose(h);
+            }
+        }
+        if (utx != 0) {
+            synchronized (writeLock) {
+                final long h = utx;
+                utx = 0;
+                n_urclose(h);
+            }
+        }
+    }
+
+    /**
+     * Closes the file descriptor once the channel is closed and no longer
+     * registered with any selector; called by {@link #implCloseSelectableChannel()}
+     * or, if still registered then, by the selector on deregistration.
+     *
+     * @throws IOException on error
+     */
+    void kill() throws IOException {
+        synchronized (stateLock) {
+            if (state == ST_KILLED) {
+                return;
+            }
+            if (state == ST_UNINITIALIZED) {
                 state = ST_KILLED;
+                return;
             }
+            n_close(fdVal);
+            fdVal = -1;
+            state = ST_KILLED;
         }
     }
 
+    int getFDVal() {
+        return fdVal;
+    }
+
     @Override
     protected void implConfigureBlocking(final boolean block) throws IOException {
         n_setnonblock(fdVal, block);
@@ -629,6 +1037,10 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                 n_close(fdVal);
                 fdVal = -1;
             }
+            n_urclose(urx);
+            urx = 0;
+            n_urclose(utx);
+            utx = 0;
         } finally {
             super.finalize();
         }
@@ -668,7 +1080,9 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
         localAddress = ap.get();
     }
 
-    private int i_send(final ByteBuffer buf, final InetSocketAddress target) throws IOException {
+    // tc < 0 means use the traffic class set on the socket
+    private int i_send(final ByteBuffer buf, final InetSocketAddress target,
+      final int tc) throws IOException {
         final int pos = buf.position();
         final int lim = buf.limit();
         final int rem = pos <= lim ? lim - pos : 0;
@@ -680,8 +1094,8 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             bpos = pos;
             bb = buf;
         } else {
-            bpos = 0; // in newly-created bb
-            bb = ByteBuffer.allocateDirect(rem);
+            bpos = 0; // in temporary bb
+            bb = DirectBufferCache.get(rem);
             // copy data to be sent into bb
             bb.put(buf);
             // revert change to position in source buffer
@@ -690,19 +1104,27 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             bb.flip();
         }
 
-        // send from bb
-        final int n = n_send(fdVal, bb, bpos, rem,
-          JNI.AddrPort.addr(target), target.getPort(), JNI.AddrPort.scopeId(target));
-        // update source buffer accordingly
-        if (n > 0) {
-            buf.position(pos + n);
+        try {
+            // send from bb
+            final int n = n_send(fdVal, bb, bpos, rem,
+              JNI.AddrPort.addr(target), target.getPort(), JNI.AddrPort.scopeId(target), tc);
+            // update source buffer accordingly
+            if (n > 0) {
+                buf.position(pos + n);
+            }
+            return n;
+        } finally {
+            if (bb != buf) {
+                DirectBufferCache.release(bb);
+            }
         }
-
-        return n;
     }
 
-    private int i_recv(final ByteBuffer dst, final JNI.AddrPort ap) throws IOException {
+    // stores the metadata into rinfo; the sender only if not connected
+    private int i_recv(final Reader r, final ByteBuffer dst, final boolean connected,
+      final ECNBitsDatagramInfo rinfo) throws IOException {
         tcm.listen();
+        r.listen();
 
         final int pos = dst.position();
         final int lim = dst.limit();
@@ -718,22 +1140,337 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             blen = rem;
             bb = dst;
         } else {
-            bpos = 0; // in newly-created bb
+            bpos = 0; // in temporary bb
             blen = Math.max(rem, 1); // always read at least one byte
-            bb = ByteBuffer.allocateDirect(blen);
+            bb = DirectBufferCache.get(blen);
+        }
+
+        try {
+            if (urx == 0) {
+                i_spin();
+            }
+            final ByteBuffer md = r.rmd();
+            final int n = urx != 0 ? i_urecv(md, bb, bpos, blen, connected) :
+              n_recv(fdVal, bb, bpos, blen, md, connected);
+            if (n >= 0) {
+                rinfo.fill(md, 0);
+            }
+            if (n > 0) {
+                tcm.received(rinfo.isTrafficClassValid(), rinfo.getTrafficClass(),
+                  rinfo.getLength(), rinfo.getSegmentSize(), rinfo.getReceiveTimestamp(),
+                  md.getInt(JNI.MD_DROPS));
+                r.received(md, 1);
+                i_senders(md, 1);
+                bb.position(bpos + n);
+            }
+            if (!useDirect && n > 0 && rem > 0) {
+                bb.flip();
+                dst.put(bb);
+            }
+            return n;
+        } finally {
+            if (!useDirect) {
+                DirectBufferCache.release(bb);
+            }
+        }
+    }
+
+    // i_recv via the receive ring, with the results of n_recv; under readLock
+    private int i_urecv(final ByteBuffer md, final ByteBuffer bb, final int bpos, final int blen,
+      final boolean connected) throws IOException {
+        final JNI.SGIO nb = new JNI.SGIO();
+        nb.buf = bb;
+        nb.pos = bpos;
+        nb.len = blen;
+        final int n = n_urecvmmsg(urx, fdVal, new JNI.SGIO[] { nb }, 1, md,
+          connected, isBlocking());
+        if (n == JNI.ENOTSUP) {
+            uring_rxfail();
+            return n_recv(fdVal, bb, bpos, blen, md, connected);
+        }
+        return n < 1 ? n : md.getInt(JNI.MD_LEN);
+    }
+
+    // before a receive system call
+    // in blocking mode, polls for up to spinBudget before letting it block
+    private void i_spin() throws IOException {
+        final long budget = spinBudget;
+        if (budget == 0 || !isBlocking() || n_pollrx(fdVal) != 0) {
+            return;
+        }
+        final long deadline = System.nanoTime() + budget;
+        while (System.nanoTime() - deadline < 0 && isOpen()) {
+            final int rv = n_pollrx(fdVal);
+            if (rv == 1) {
+                spinHits.increment();
+                return;
+            }
+            if (rv != 0) {
+                // closing (EINTR) or an error for the receive call to report
+                return;
+            }
+        }
+        spinMisses.increment();
+    }
+
+    // per-sender accounting and tracing of the first n records in md
+    private void i_senders(final ByteBuffer md, final int n) {
+        final PeerTable pt = peers;
+        if (pt != null) {
+            pt.received(md, n);
+        }
+        final SenderSketch sk = sketch;
+        if (sk != null) {
+            sk.received(md, n);
+        }
+        final TraceRing tr = trace;
+        if (tr == null) {
+            return;
+        }
+        if (concurrentReaders) {
+            // one writer at a time; otherwise serialised by readLock
+            synchronized (tr) {
+                tr.received(md, n);
+            }
+        } else {
+            tr.received(md, n);
         }
+    }
+
+    // the kernel has io_uring but not multishot recvmsg; under readLock
+    private void uring_rxfail() {
+        final long h = urx;
+        urx = 0;
+        n_urclose(h);
+    }
 
-        final int n = n_recv(fdVal, bb, bpos, blen, ap, isConnected());
-        if (n > 0) {
-            tcm.received(ap.tcValid, ap.tc);
-            bb.position(bpos + n);
+    // returns 0 if all datagrams received were rejected by the SecurityManager
+    private int i_recvmmsg(final Reader r, final ByteBuffer[] dsts, final ECNBitsDatagramInfo[] infos,
+      final SecurityManager security, final boolean connected) throws IOException {
+        tcm.listen();
+        r.listen();
+        final int nmsgs = Math.min(dsts.length, JNI.BATCH_MAX);
+        final JNI.SGIO[] bbs = new JNI.SGIO[nmsgs];
+
+        for (int i = 0; i < nmsgs; ++i) {
+            final ByteBuffer dst = dsts[i];
+            final int pos = dst.position();
+            final int lim = dst.limit();
+            final int rem = pos <= lim ? lim - pos : 0;
+            final JNI.SGIO nb = new JNI.SGIO();
+            nb.orig = dst;
+            nb.opos = pos;
+            // the SecurityManager may reject datagrams, so bounce them all
+            nb.useDirect = dst.isDirect() && rem > 0 && security == null;
+            if (nb.useDirect) {
+                nb.pos = pos;
+                nb.len = rem;
+                nb.buf = dst;
+            } else {
+                nb.pos = 0; // in temporary bb
+                nb.len = Math.max(rem, 1); // always read at least one byte
+                nb.buf = DirectBufferCache.get(nb.len);
+            }
+            bbs[i] = nb;
+        }
+
+        try {
+            return i_recvmmsg_sg(r, dsts, infos, security, connected, bbs, nmsgs);
+        } finally {
+            sgio_release(bbs);
         }
-        if (!useDirect && n > 0 && rem > 0) {
+    }
+
+    private int i_recvmmsg_sg(final Reader r, final ByteBuffer[] dsts, final ECNBitsDatagramInfo[] infos,
+      final SecurityManager security, final boolean connected, final JNI.SGIO[] bbs,
+      final int nmsgs) throws IOException {
+        final ByteBuffer rmd = r.bmd();
+        int n = JNI.ENOTSUP;
+        if (urx != 0 && (n = n_urecvmmsg(urx, fdVal, bbs, nmsgs, rmd,
+          connected, isBlocking())) == JNI.ENOTSUP) {
+            uring_rxfail();
+        }
+        if (n == JNI.ENOTSUP) {
+            i_spin();
+            n = n_recvmmsg(fdVal, bbs, nmsgs, rmd, connected);
+        }
+        if (n < 1) {
+            return n;
+        }
+        tcm.received(rmd, n);
+        r.received(rmd, n);
+        i_senders(rmd, n);
+
+        int k = 0;
+        for (int i = 0; i < n; ++i) {
+            final ECNBitsDatagramInfo info = infos[k];
+            info.fill(rmd, i * JNI.MD_SIZE);
+            if (security != null) {
+                final InetSocketAddress sender = info.getSender();
+                if (sender == null) {
+                    continue;
+                }
+                try {
+                    security.checkAccept(sender.getAddress().getHostAddress(), sender.getPort());
+                } catch (SecurityException se) {
+                    // Ignore packet
+                    continue;
+                }
+            }
+            final JNI.SGIO nb = bbs[i];
+            final int nbytes = Math.min(info.getLength(), nb.len);
+            if (nb.useDirect) {
+                nb.orig.position(nb.opos + nbytes);
+            } else {
+                // k ≤ i, so the datagram may need to go into another buffer
+                final ByteBuffer dst = dsts[k];
+                nb.buf.limit(Math.min(nbytes, dst.remaining()));
+                dst.put(nb.buf);
+            }
+            ++k;
+        }
+        return k;
+    }
+
+    private int i_sendmmsg(final ByteBuffer[] srcs, final InetSocketAddress[] targets,
+      final byte[] tcs, final int nmsgs) throws IOException {
+        final JNI.SGIO[] bbs = new JNI.SGIO[nmsgs];
+
+        if (wmd == null) {
+            wmd = ByteBuffer.allocateDirect(JNI.BATCH_MAX * JNI.MD_SIZE).order(ByteOrder.nativeOrder());
+        }
+        for (int i = 0; i < nmsgs; ++i) {
+            final JNI.SGIO nb = new JNI.SGIO();
+            final ByteBuffer buf = srcs[i];
+            final int pos = buf.position();
+            final int lim = buf.limit();
+            final int rem = pos <= lim ? lim - pos : 0;
+            nb.orig = buf;
+            nb.opos = pos;
+            if (buf.isDirect()) {
+                nb.pos = pos;
+                nb.buf = buf;
+            } else {
+                nb.pos = 0; // in temporary bb
+                final ByteBuffer bb = DirectBufferCache.get(rem);
+                // copy data to be sent into bb
+                bb.put(buf);
+                // revert change to position in source buffer
+                buf.position(pos);
+                // switch bb into read mode
+                bb.flip();
+                nb.buf = bb;
+            }
+            nb.len = rem;
+            bbs[i] = nb;
+
+            final int off = i * JNI.MD_SIZE;
+            JNI.AddrPort.put(wmd, off, targets[i]);
+            wmd.putShort(off + JNI.MD_FLAGS, (short) JNI.MDF_SENDER);
+            wmd.putShort(off + JNI.MD_TC, tcs == null ? 0 : (short) (JNI.MD_TC_VALID | (tcs[i] & 0xFF)));
+        }
+
+        try {
+            final int n = utx != 0 ? n_usendmmsg(utx, fdVal, bbs, nmsgs, wmd) :
+              n_sendmmsg(fdVal, bbs, nmsgs, wmd);
+            for (int i = 0; i < n; ++i) {
+                bbs[i].orig.position(bbs[i].opos + wmd.getInt(i * JNI.MD_SIZE + JNI.MD_LEN));
+            }
+            return n;
+        } finally {
+            sgio_release(bbs);
+        }
+    }
+
+    // returns the temporary buffers used for bouncing heap buffers
+    private static void sgio_release(final JNI.SGIO[] bbs) {
+        for (final JNI.SGIO nb : bbs) {
+            if (nb != null && nb.buf != nb.orig) {
+                DirectBufferCache.release(nb.buf);
+            }
+        }
+    }
+
+    private int gso_probe() {
+        try {
+            n_getsockopt(fdVal, JNI.UDP_SEGMENT);
+            return 1;
+        } catch (SocketException e) {
+            // ENOPROTOOPT: kernel predates UDP GSO
+            return -1;
+        }
+    }
+
+    // sends as many segments as fit into one GSO send
+    private int i_sendgso(final ByteBuffer buf, final InetSocketAddress target,
+      final int segsize) throws IOException {
+        final int pos = buf.position();
+        final int lim = buf.limit();
+        final int rem = pos <= lim ? lim - pos : 0;
+        final int len = Math.min(rem,
+          Math.min(JNI.GSO_MAX_SEGS, JNI.GSO_MAX_BYTES / segsize) * segsize);
+
+        final ByteBuffer bb;
+        final int bpos;
+
+        if (buf.isDirect()) {
+            bpos = pos;
+            bb = buf;
+        } else {
+            bpos = 0; // in temporary bb
+            bb = DirectBufferCache.get(len);
+            // copy data to be sent into bb, leaving the source buffer alone
+            final ByteBuffer dup = buf.duplicate();
+            dup.limit(pos + len);
+            bb.put(dup);
+            // switch bb into read mode
             bb.flip();
-            dst.put(bb);
         }
 
-        return n;
+        try {
+            // send from bb
+            final int n = n_sendgso(fdVal, bb, bpos, len,
+              JNI.AddrPort.addr(target), target.getPort(), JNI.AddrPort.scopeId(target), segsize);
+            // update source buffer accordingly
+            if (n > 0) {
+                buf.position(pos + n);
+            }
+            return n;
+        } finally {
+            if (bb != buf) {
+                DirectBufferCache.release(bb);
+            }
+        }
+    }
+
+    // fallback for i_sendgso: sends segments as individual datagrams
+    private int i_sendsegs(final ByteBuffer buf, final InetSocketAddress target,
+      final int segsize) throws IOException {
+        final int pos = buf.position();
+        final int lim = buf.limit();
+        final int rem = pos <= lim ? lim - pos : 0;
+        final int nmsgs = Math.min((rem + segsize - 1) / segsize, JNI.BATCH_MAX);
+        final ByteBuffer[] segs = new ByteBuffer[nmsgs];
+        final InetSocketAddress[] targets = new InetSocketAddress[nmsgs];
+
+        final ByteBuffer dup = buf.duplicate();
+        for (int i = 0; i < nmsgs; ++i) {
+            final int spos = pos + i * segsize;
+            dup.limit(Math.min(spos + segsize, lim)).position(spos);
+            segs[i] = dup.slice();
+            targets[i] = target;
+        }
+
+        final int n = i_sendmmsg(segs, targets, null, nmsgs);
+        if (n <= 0) {
+            return n;
+        }
+        int sent = 0;
+        for (int i = 0; i < n; ++i) {
+            sent += segs[i].position();
+        }
+        buf.position(pos + sent);
+        return sent;
     }
 
     private long sg_wr(final ByteBuffer[] bufs, final int buf0, final int bufn) throws IOException {
@@ -751,8 +1488,8 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                 nb.pos = pos;
                 nb.buf = buf;
             } else {
-                nb.pos = 0; // in newly-created bb
-                final ByteBuffer bb = ByteBuffer.allocateDirect(rem);
+                nb.pos = 0; // in temporary bb
+                final ByteBuffer bb = DirectBufferCache.get(rem);
                 // copy data to be sent into bb
                 bb.put(buf);
                 // revert change to position in source buffer
@@ -765,25 +1502,29 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             bbs[i] = nb;
         }
 
-        final long n = n_wr(fdVal, bbs,
-          JNI.AddrPort.addr(remoteAddress), remoteAddress.getPort(), JNI.AddrPort.scopeId(remoteAddress));
-        if (n > 0) {
-            long rest = n;
-            for (int i = 0; i < bufn; ++i) {
-                final long nb = Math.min(rest, bbs[i].len);
-                if (nb < 1) {
-                    break;
+        try {
+            final long n = n_wr(fdVal, bbs,
+              JNI.AddrPort.addr(remoteAddress), remoteAddress.getPort(), JNI.AddrPort.scopeId(remoteAddress));
+            if (n > 0) {
+                long rest = n;
+                for (int i = 0; i < bufn; ++i) {
+                    final long nb = Math.min(rest, bbs[i].len);
+                    if (nb < 1) {
+                        break;
+                    }
+                    bbs[i].orig.position(bbs[i].opos + (int) nb);
+                    rest -= nb;
                 }
-                bbs[i].orig.position(bbs[i].opos + (int) nb);
-                rest -= nb;
             }
+            return n;
+        } finally {
+            sgio_release(bbs);
         }
-
-        return n;
     }
 
-    private long sg_rd(final ByteBuffer[] bufs, final int buf0, final int bufn) throws IOException {
+    private long sg_rd(final Reader r, final ByteBuffer[] bufs, final int buf0, final int bufn) throws IOException {
         tcm.listen();
+        r.listen();
         final JNI.SGIO[] bbs = new JNI.SGIO[bufn];
 
         int nbbs = 0;
@@ -803,8 +1544,8 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                 nb.pos = pos;
                 nb.buf = dst;
             } else {
-                nb.pos = 0; // in newly-created bb
-                nb.buf = ByteBuffer.allocateDirect(rem);
+                nb.pos = 0; // in temporary bb
+                nb.buf = DirectBufferCache.get(rem);
             }
             nb.len = rem;
             bbs[nbbs++] = nb;
@@ -813,27 +1554,43 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
             return 0L;
         }
 
-        final JNI.AddrPort tc = new JNI.AddrPort();
-        final long n = n_rd(fdVal, bbs, nbbs, tc);
-        if (n > 0) {
-            tcm.received(tc.tcValid, tc.tc);
-
-            long rest = n;
-            for (int i = 0; i < bufn; ++i) {
-                final long nb = Math.min(rest, bbs[i].len);
-                if (nb < 1) {
-                    break;
+        try {
+            final JNI.AddrPort tc = new JNI.AddrPort();
+            i_spin();
+            final long n = n_rd(fdVal, bbs, nbbs, tc);
+            if (n > 0) {
+                tcm.received(tc.tcValid, tc.tc, (int) n, tc.segSize, tc.tstamp, tc.drops);
+                r.received(tc.tcValid, tc.tc, tc.tstamp);
+                final TraceRing tr = trace;
+                if (tr != null) {
+                    if (concurrentReaders) {
+                        // cf. i_senders
+                        synchronized (tr) {
+                            tr.received(tc.tcValid, tc.tc, (int) n, tc.segSize, tc.tstamp);
+                        }
+                    } else {
+                        tr.received(tc.tcValid, tc.tc, (int) n, tc.segSize, tc.tstamp);
+                    }
                 }
-                bbs[i].buf.position(bbs[i].pos + (int) nb);
-                if (!bbs[i].useDirect) {
-                    bbs[i].buf.flip();
-                    bbs[i].orig.put(bbs[i].buf);
+
+                long rest = n;
+                for (int i = 0; i < nbbs; ++i) {
+                    final long nb = Math.min(rest, bbs[i].len);
+                    if (nb < 1) {
+                        break;
+                    }
+                    bbs[i].buf.position(bbs[i].pos + (int) nb);
+                    if (!bbs[i].useDirect) {
+                        bbs[i].buf.flip();
+                        bbs[i].orig.put(bbs[i].buf);
+                    }
+                    rest -= nb;
                 }
-                rest -= nb;
             }
+            return n;
+        } finally {
+            sgio_release(bbs);
         }
-
-        return n;
     }
 
     // for ECNBitsDatagramSocketAdapter
@@ -853,6 +1610,7 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
     // for {@link ECNBitsDatagramSocketAdapter#receive(ByteBuffer)}
     int pollin(int timeout) throws IOException {
         synchronized (readLock) {
+            final Reader r = reader();
             int n = 0;
             try {
                 begin();
@@ -860,11 +1618,17 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
                     if (!isOpen()) {
                         return 0;
                     }
-                    readerThread = JNI.n_gettid();
+                    r.tid = JNI.n_gettid();
+                }
+                // the receive ring takes the datagrams off the socket
+                if (urx != 0 && (n = n_urpollin(urx, fdVal, timeout)) == JNI.ENOTSUP) {
+                    uring_rxfail();
+                }
+                if (urx == 0) {
+                    n = n_pollin(fdVal, timeout);
                 }
-                n = n_pollin(fdVal, timeout);
             } finally {
-                readerThread = 0;
+                leave(r);
                 end(n > 0);
             }
             return n;
@@ -875,16 +1639,223 @@ class ECNBitsDatagramChannelImpl extends ECNBitsDatagramChannel {
 
     @Override
     public Byte retrieveLastTrafficClass() {
+        if (concurrentReaders) {
+            final Reader r = reader.get();
+            return r == null || r.lastTc == -1 ? null : (byte) r.lastTc;
+        }
         return tcm.last();
     }
 
+    @Override
+    public long retrieveLastReceiveTimestamp() {
+        if (concurrentReaders) {
+            final Reader r = reader.get();
+            return r == null ? 0 : r.lastStamp;
+        }
+        return tcm.lastStamp();
+    }
+
     @Override
     public void startMeasurement() {
-        tcm.doMeasuring(true, false);
+        tcm.doMeasuring(true);
     }
 
     @Override
     public ECNStatistics getMeasurement(final boolean doContinue) {
-        return tcm.doMeasuring(doContinue, true);
+        return tcm.doMeasuring(doContinue);
+    }
+
+    @Override
+    public ECNMeasurementSession openMeasurementSession() {
+        return tcm.openSession();
+    }
+
+    @Override
+    public void setPeerStatistics(final int maxPeers, final long idleTimeout, final TimeUnit unit) {
+        peers = maxPeers == 0 ? null : new PeerTable(maxPeers, unit.toNanos(idleTimeout));
+    }
+
+    @Override
+    public ECNStatistics getPeerMeasurement(final InetSocketAddress peer, final boolean reset) {
+        final PeerTable pt = peers;
+        return pt == null ? null : pt.get(peer, reset);
+    }
+
+    @Override
+    public Map<InetSocketAddress, ECNStatistics> getPeerMeasurements(final boolean reset) {
+        final PeerTable pt = peers;
+        return pt == null ? Collections.emptyMap() : pt.getAll(reset);
+    }
+
+    @Override
+    public void setSenderSketch(final int topK, final int width) {
+        sketch = topK == 0 ? null : new SenderSketch(topK, width);
+    }
+
+    @Override
+    public ECNSenderReport getSenderReport(final boolean reset) {
+        final SenderSketch sk = sketch;
+        return sk == null ? null : sk.report(reset);
+    }
+
+    @Override
+    public void setTrace(final int capacity) {
+        trace = capacity == 0 ? null : new TraceRing(capacity);
+    }
+
+    @Override
+    public int snapshotTrace(final ECNTraceEntry[] into) {
+        final TraceRing tr = trace;
+        return tr == null ? 0 : tr.snapshot(into);
+    }
+
+    @Override
+    public int drainTrace(final ECNTraceEntry[] into) {
+        final TraceRing tr = trace;
+        return tr == null ? 0 : tr.drain(into);
+    }
+
+    @Override
+    public void setReceiveSpin(final long budget, final TimeUnit unit) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("negative spin budget");
+        }
+        spinBudget = unit.toNanos(budget);
+    }
+
+    @Override
+    public long getSpinHitCount() {
+        return spinHits.sum();
+    }
+
+    @Override
+    public long getSpinMissCount() {
+        return spinMisses.sum();
+    }
+
+    @Override
+    public void setConcurrentReaders(final boolean on) {
+        concurrentReaders = on;
+    }
+
+    @Override
+    public boolean isConcurrentReaders() {
+        return concurrentReaders;
+    }
+
+    // whether a receive call may skip readLock; the receive ring is never shared
+    private boolean lockFreeRead() {
+        return concurrentReaders && urx == 0;
+    }
+
+    // the calling thread’s receive state, created on its first receive
+    private Reader reader() {
+        Reader r = reader.get();
+        if (r == null) {
+            // forget threads that have ended
+            readers.removeIf(o -> !o.thread.isAlive());
+            r = new Reader();
+            readers.add(r);
+            reader.set(r);
+        }
+        return r;
+    }
+
+    // after a receive call; once closed, the thread’s state is not needed
+    private void leave(final Reader r) {
+        r.tid = 0;
+        if (!isOpen()) {
+            reader.remove();
+        }
+    }
+
+    /**
+     * Receive state of one thread reading from the channel: the native
+     * thread ID while in a receive call, for signalling on close, and
+     * the metadata of the datagrams it received, so readers never share
+     * a metadata buffer and concurrent readers need no lock.
+     */
+    private static final class Reader {
+        final Thread thread = Thread.currentThread();
+        final ECNBitsDatagramInfo rinfo = new ECNBitsDatagramInfo();
+        volatile long tid = 0;
+
+        // -- The following fields are only used by thread
+
+        // metadata of one datagram, and of a batch for receiveBatch only
+        private ByteBuffer rmd;
+        private ByteBuffer bmd;
+        // last traffic class (-1 if none) and timestamp, for concurrent mode
+        int lastTc = -1;
+        long lastStamp = 0;
+
+        // -- End of fields only used by thread
+
+        ByteBuffer rmd() {
+            if (rmd == null) {
+                rmd = ByteBuffer.allocateDirect(JNI.MD_SIZE).order(ByteOrder.nativeOrder());
+            }
+            return rmd;
+        }
+
+        ByteBuffer bmd() {
+            if (bmd == null) {
+                bmd = ByteBuffer.allocateDirect(JNI.BATCH_MAX * JNI.MD_SIZE).order(ByteOrder.nativeOrder());
+            }
+            return bmd;
+        }
+
+        void listen() {
+            lastTc = -1;
+            lastStamp = 0;
+        }
+
+        void received(final boolean valid, final byte octet, final long tstamp) {
+            if (valid) {
+                lastTc = octet & 0xFF;
+            }
+            if (tstamp != 0) {
+                lastStamp = tstamp;
+            }
+        }
+
+        void received(final ByteBuffer md, final int n) {
+            int i = n;
+            while (--i >= 0) {
+                final short tcv = md.getShort(i * JNI.MD_SIZE + JNI.MD_TC);
+                if ((tcv & 0xFF00) == JNI.MD_TC_VALID) {
+                    lastTc = tcv & 0xFF;
+                    break;
+                }
+            }
+            if (n > 0) {
+                final long tstamp = md.getLong((n - 1) * JNI.MD_SIZE + JNI.MD_TSTAMP);
+                if (tstamp != 0) {
+                    lastStamp = tstamp;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setCongestionListener(final ECNCongestionListener listener,
+      final int window, final int onset, final int offset, final Executor executor) {
+        tcm.setDetector(listener == null ? null :
+          new CongestionDetector(this, listener, window, onset, offset, executor));
+    }
+
+    @Override
+    public void startCongestionEstimate(final double gain) {
+        tcm.startEstimating(gain);
+    }
+
+    @Override
+    public void stopCongestionEstimate() {
+        tcm.stopEstimating();
+    }
+
+    @Override
+    public double getCongestionEstimate() {
+        return tcm.estimate();
     }
 }
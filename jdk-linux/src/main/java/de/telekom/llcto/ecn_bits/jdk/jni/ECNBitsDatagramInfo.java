@@ -0,0 +1,215 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable holder for the metadata of one received datagram: its length,
+ * its sender and the IP traffic class octet it was received with.
+ *
+ * Instances are owned by the caller and filled in by the receive calls
+ * taking them, such as {@link ECNBitsDatagramChannel#receiveBatch(ByteBuffer[],
+ * ECNBitsDatagramInfo[])} or {@link ECNBitsDatagramChannel#receive(ByteBuffer,
+ * ECNBitsDatagramInfo)}; they can (and should) be reused across calls.
+ * An instance must not be filled in by more than one thread at a time.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public final class ECNBitsDatagramInfo {
+    private final byte[] addr = new byte[16];
+    private int port;
+    private int scopeId;
+    private boolean hasSender;
+    private boolean truncated;
+    private int length;
+    private byte tc;
+    private boolean tcValid;
+    private int segmentSize;
+    private long tstamp;
+
+    // sender, only constructed when asked for, cached while unchanged
+    private InetSocketAddress sender;
+
+    /**
+     * Creates a new, empty, datagram metadata holder.
+     */
+    public ECNBitsDatagramInfo() {
+    }
+
+    /**
+     * Returns the length of the datagram data that was stored
+     * in the corresponding buffer
+     *
+     * @return number of bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the UDP GRO segment size if the kernel coalesced several
+     * on-wire datagrams into this one, cf. {@link ECNBitsSocketOptions#UDP_GRO};
+     * segment {@code i} then occupies the bytes from {@code i * size} up to
+     * the lesser of {@code (i + 1) * size} and {@link #getLength()}
+     *
+     * @return segment size, or 0 if not coalesced
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Returns the number of on-wire datagrams this datagram represents
+     *
+     * @return number of segments, 1 if not coalesced
+     */
+    public int getSegmentCount() {
+        return ECNMeasurer.segments(length, segmentSize);
+    }
+
+    /**
+     * Returns when the kernel received the datagram, if receive timestamps
+     * are enabled, cf. {@link ECNBitsSocketOptions#SO_TIMESTAMPNS}
+     *
+     * @return nanoseconds since the epoch, or 0 if not available
+     */
+    public long getReceiveTimestamp() {
+        return tstamp;
+    }
+
+    /**
+     * Returns whether the datagram was larger than the buffer
+     * and thus had the excess data discarded
+     *
+     * @return true if truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns whether the traffic class octet could be determined
+     *
+     * @return true if {@link #getTrafficClass()} is valid
+     */
+    public boolean isTrafficClassValid() {
+        return tcValid;
+    }
+
+    /**
+     * Returns the traffic class octet the datagram was received with;
+     * only meaningful if {@link #isTrafficClassValid()} is true
+     *
+     * @return traffic class octet
+     */
+    public byte getTrafficClass() {
+        return tc;
+    }
+
+    /**
+     * Returns the traffic class octet in the form also returned by
+     * {@link AbstractECNBitsDatagramReceiver#retrieveLastTrafficClass()}
+     *
+     * @return byte tc; null if the tc could not be determined
+     */
+    public Byte retrieveTrafficClass() {
+        return tcValid ? tc : null;
+    }
+
+    /**
+     * Returns the ECN bits of the traffic class octet
+     *
+     * @return {@link Bits}; null if the tc could not be determined
+     */
+    public Bits getBits() {
+        return tcValid ? Bits.valueOf(tc) : null;
+    }
+
+    /**
+     * Returns the address and port of the sender of the datagram
+     *
+     * @return {@link InetSocketAddress}, or null if no sender (channel closed or so)
+     */
+    public InetSocketAddress getSender() {
+        if (!hasSender) {
+            return null;
+        }
+        if (sender == null) {
+            sender = new InetSocketAddress(JNI.AddrPort.getAddr(addr, scopeId), port);
+        }
+        return sender;
+    }
+
+    /**
+     * Sets the sender, for datagrams received on a connected socket,
+     * where the kernel does not report it.
+     *
+     * @param peer address and port connected to, or null
+     */
+    void setSender(final InetSocketAddress peer) {
+        hasSender = peer != null;
+        sender = peer;
+        // never matches, so the next fill() does not reuse peer
+        port = -1;
+    }
+
+    /**
+     * Fills this holder from a native metadata record.
+     *
+     * @param md  native-order metadata buffer, cf. {@link JNI#MD_SIZE}
+     * @param off offset of the record in md
+     */
+    void fill(final ByteBuffer md, final int off) {
+        final int flags = md.getShort(off + JNI.MD_FLAGS);
+        final short tcv = md.getShort(off + JNI.MD_TC);
+        length = md.getInt(off + JNI.MD_LEN);
+        final int segsz = md.getInt(off + JNI.MD_SEGSZ);
+        segmentSize = segsz < length ? segsz : 0;
+        tstamp = md.getLong(off + JNI.MD_TSTAMP);
+        truncated = (flags & JNI.MDF_TRUNC) != 0;
+        tc = (byte) tcv;
+        tcValid = (tcv & 0xFF00) == JNI.MD_TC_VALID;
+        if ((flags & JNI.MDF_SENDER) == 0) {
+            hasSender = false;
+            sender = null;
+            return;
+        }
+        final int nport = md.getInt(off + JNI.MD_PORT);
+        final int nscope = md.getInt(off + JNI.MD_SCOPE);
+        boolean same = hasSender && nport == port && nscope == scopeId;
+        for (int i = 0; i < 16; ++i) {
+            final byte b = md.get(off + JNI.MD_ADDR + i);
+            if (b != addr[i]) {
+                addr[i] = b;
+                same = false;
+            }
+        }
+        if (!same) {
+            port = nport;
+            scopeId = nscope;
+            sender = null;
+        }
+        hasSender = true;
+    }
+}
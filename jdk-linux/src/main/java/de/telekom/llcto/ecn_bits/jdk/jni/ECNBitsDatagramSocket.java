@@ -21,6 +21,8 @@ package de.telekom.llcto.ecn_bits.jdk.jni;
  * of said person’s immediate fault when using the work as intended.
  */
 
+import java.io.IOException;
+import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -38,6 +40,7 @@ import java.net.SocketException;
  * @author mirabilos (t.glaser@tarent.de)
  */
 public class ECNBitsDatagramSocket extends AbstractECNBitsDatagramSocket {
+    private final ECNBitsDatagramSocketImpl impl;
     private final ECNMeasurer tcm;
 
     private ECNBitsDatagramSocket(final ECNBitsDatagramSocketImpl impl,
@@ -52,6 +55,7 @@ public class ECNBitsDatagramSocket extends AbstractECNBitsDatagramSocket {
                 }
             }
         }
+        this.impl = impl;
         tcm = impl.getMeasurer();
     }
 
@@ -73,18 +77,104 @@ public class ECNBitsDatagramSocket extends AbstractECNBitsDatagramSocket {
         this(new InetSocketAddress(laddr, port));
     }
 
+    /*
+     * Mirrors the checks DatagramSocket.send(DatagramPacket) does before
+     * handing the packet to the impl, which is not reachable from here.
+     */
+    @Override
+    public void send(final DatagramPacket p, final byte tc) throws IOException {
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (p) {
+            if (isClosed()) {
+                throw new SocketException("Socket is closed");
+            }
+            final InetAddress packetAddress = p.getAddress();
+            if (isConnected()) {
+                if (packetAddress == null) {
+                    p.setAddress(getInetAddress());
+                    p.setPort(getPort());
+                } else if (!packetAddress.equals(getInetAddress()) || p.getPort() != getPort()) {
+                    throw new IllegalArgumentException("connected address and packet address differ");
+                }
+            } else {
+                if (packetAddress == null) {
+                    throw new IllegalArgumentException("Address not set");
+                }
+                final SecurityManager security = System.getSecurityManager();
+                if (security != null) {
+                    if (packetAddress.isMulticastAddress()) {
+                        security.checkMulticast(packetAddress);
+                    } else {
+                        security.checkConnect(packetAddress.getHostAddress(), p.getPort());
+                    }
+                }
+            }
+            if (!isBound()) {
+                bind(new InetSocketAddress(0));
+            }
+            impl.send(p, tc & 0xFF);
+        }
+    }
+
+    /*
+     * DatagramSocket.receive(DatagramPacket) synchronises on this, too,
+     * so no other receive call can use the holder handed to the impl.
+     */
+    @Override
+    public synchronized void receive(final DatagramPacket p, final ECNBitsDatagramInfo info) throws IOException {
+        if (info == null) {
+            throw new NullPointerException();
+        }
+        impl.setReceiveInfo(info);
+        try {
+            receive(p);
+        } finally {
+            impl.setReceiveInfo(null);
+        }
+    }
+
     @Override
     public Byte retrieveLastTrafficClass() {
         return tcm.last();
     }
 
+    @Override
+    public long retrieveLastReceiveTimestamp() {
+        return tcm.lastStamp();
+    }
+
+    @Override
+    public void setReceiveTimestamps(final boolean on) throws SocketException {
+        impl.setReceiveTimestamps(on);
+    }
+
     @Override
     public void startMeasurement() {
-        tcm.doMeasuring(true, false);
+        tcm.doMeasuring(true);
     }
 
     @Override
     public ECNStatistics getMeasurement(final boolean doContinue) {
-        return tcm.doMeasuring(doContinue, true);
+        return tcm.doMeasuring(doContinue);
+    }
+
+    @Override
+    public ECNMeasurementSession openMeasurementSession() {
+        return tcm.openSession();
+    }
+
+    @Override
+    public void startCongestionEstimate(final double gain) {
+        tcm.startEstimating(gain);
+    }
+
+    @Override
+    public void stopCongestionEstimate() {
+        tcm.stopEstimating();
+    }
+
+    @Override
+    public double getCongestionEstimate() {
+        return tcm.estimate();
     }
 }
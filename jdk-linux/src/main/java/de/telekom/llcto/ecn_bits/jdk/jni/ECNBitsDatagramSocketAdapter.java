@@ -150,6 +150,15 @@ class ECNBitsDatagramSocketAdapter extends AbstractECNBitsDatagramSocket {
 
     @Override
     public void send(final DatagramPacket p) throws IOException {
+        i_send(p, null);
+    }
+
+    @Override
+    public void send(final DatagramPacket p, final byte tc) throws IOException {
+        i_send(p, tc);
+    }
+
+    private void i_send(final DatagramPacket p, final Byte tc) throws IOException {
         synchronized (dc.blockingLock()) {
             if (!dc.isBlocking()) {
                 throw new IllegalBlockingModeException();
@@ -166,14 +175,18 @@ class ECNBitsDatagramSocketAdapter extends AbstractECNBitsDatagramSocket {
                             InetSocketAddress isa = (InetSocketAddress) dc.i_remoteAddress();
                             p.setPort(isa.getPort());
                             p.setAddress(isa.getAddress());
-                            dc.write(bb);
+                            if (tc == null) {
+                                dc.write(bb);
+                            } else {
+                                dc.write(bb, tc);
+                            }
                         } else {
                             // Target address may not match connected address
-                            dc.send(bb, p.getSocketAddress());
+                            i_send(bb, p.getSocketAddress(), tc);
                         }
                     } else {
                         // Not connected so address must be valid or throw
-                        dc.send(bb, p.getSocketAddress());
+                        i_send(bb, p.getSocketAddress(), tc);
                     }
                 }
             } catch (IOException x) {
@@ -182,17 +195,25 @@ class ECNBitsDatagramSocketAdapter extends AbstractECNBitsDatagramSocket {
         }
     }
 
-    // Must hold dc.blockingLock()
+    private void i_send(final ByteBuffer bb, final SocketAddress target, final Byte tc) throws IOException {
+        if (tc == null) {
+            dc.send(bb, target);
+        } else {
+            dc.send(bb, target, tc);
+        }
+    }
+
+    // Must hold dc.blockingLock(); info may be null
     //
-    private SocketAddress receive(final ByteBuffer bb) throws IOException {
+    private SocketAddress receive(final ByteBuffer bb, final ECNBitsDatagramInfo info) throws IOException {
         if (timeout == 0) {
-            return dc.receive(bb);
+            return dc_receive(bb, info);
         }
 
         dc.configureBlocking(false);
         try {
             SocketAddress sender;
-            if ((sender = dc.receive(bb)) != null) {
+            if ((sender = dc_receive(bb, info)) != null) {
                 return sender;
             }
             int to = timeout;
@@ -202,7 +223,7 @@ class ECNBitsDatagramSocketAdapter extends AbstractECNBitsDatagramSocket {
                 }
                 final long st = System.currentTimeMillis();
                 if (dc.pollin(to) > 0) {
-                    if ((sender = dc.receive(bb)) != null) {
+                    if ((sender = dc_receive(bb, info)) != null) {
                         return sender;
                     }
                 }
@@ -218,8 +239,24 @@ class ECNBitsDatagramSocketAdapter extends AbstractECNBitsDatagramSocket {
         }
     }
 
+    private SocketAddress dc_receive(final ByteBuffer bb, final ECNBitsDatagramInfo info) throws IOException {
+        return info == null ? dc.receive(bb) : dc.receive(bb, info);
+    }
+
     @Override
     public void receive(final DatagramPacket p) throws IOException {
+        receive_info(p, null);
+    }
+
+    @Override
+    public void receive(final DatagramPacket p, final ECNBitsDatagramInfo info) throws IOException {
+        if (info == null) {
+            throw new NullPointerException();
+        }
+        receive_info(p, info);
+    }
+
+    private void receive_info(final DatagramPacket p, final ECNBitsDatagramInfo info) throws IOException {
         synchronized (dc.blockingLock()) {
             if (!dc.isBlocking()) {
                 throw new IllegalBlockingModeException();
@@ -229,7 +266,7 @@ class ECNBitsDatagramSocketAdapter extends AbstractECNBitsDatagramSocket {
                 //noinspection SynchronizationOnLocalVariableOrMethodParameter
                 synchronized (p) {
                     final ByteBuffer bb = ByteBuffer.wrap(p.getData(), p.getOffset(), p.getLength());
-                    final SocketAddress sender = receive(bb);
+                    final SocketAddress sender = receive(bb, info);
                     p.setSocketAddress(sender);
                     // this is wrong but what the JDK does; p.setReceivedLength()
                     // should be used, but it’s package-private and äpp-hidden so
@@ -405,6 +442,16 @@ class ECNBitsDatagramSocketAdapter extends AbstractECNBitsDatagramSocket {
         return dc.retrieveLastTrafficClass();
     }
 
+    @Override
+    public long retrieveLastReceiveTimestamp() {
+        return dc.retrieveLastReceiveTimestamp();
+    }
+
+    @Override
+    public void setReceiveTimestamps(final boolean on) throws SocketException {
+        setBooleanOption(ECNBitsSocketOptions.SO_TIMESTAMPNS, on);
+    }
+
     @Override
     public void startMeasurement() {
         dc.startMeasurement();
@@ -415,6 +462,26 @@ class ECNBitsDatagramSocketAdapter extends AbstractECNBitsDatagramSocket {
         return dc.getMeasurement(doContinue);
     }
 
+    @Override
+    public ECNMeasurementSession openMeasurementSession() {
+        return dc.openMeasurementSession();
+    }
+
+    @Override
+    public void startCongestionEstimate(final double gain) {
+        dc.startCongestionEstimate(gain);
+    }
+
+    @Override
+    public void stopCongestionEstimate() {
+        dc.stopCongestionEstimate();
+    }
+
+    @Override
+    public double getCongestionEstimate() {
+        return dc.getCongestionEstimate();
+    }
+
     /*
      * A dummy implementation of DatagramSocketImpl that can be passed to the
      * DatagramSocket constructor so that no native resources are allocated in
@@ -45,6 +45,8 @@ import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketOptions;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Objects;
 import java.util.logging.Level;
 
@@ -63,12 +65,32 @@ class ECNBitsDatagramSocketImpl extends DatagramSocketImpl {
     /* timeout value for receive() */
     private int timeout = 0;
     private boolean connected = false;
+    private InetSocketAddress connectedAddress;
+
+    // metadata of the last datagram received, reused; protected by this
+    private final ByteBuffer rmd = ByteBuffer.allocateDirect(JNI.MD_SIZE).order(ByteOrder.nativeOrder());
+    private final ECNBitsDatagramInfo rinfo = new ECNBitsDatagramInfo();
+    // caller’s holder to fill instead, set around a receive call by the socket
+    private ECNBitsDatagramInfo uinfo = null;
 
     // for ECNBitsDatagramSocket only
     ECNMeasurer getMeasurer() {
         return tcm;
     }
 
+    // for ECNBitsDatagramSocket only
+    synchronized void setReceiveInfo(final ECNBitsDatagramInfo info) {
+        uinfo = info;
+    }
+
+    // for ECNBitsDatagramSocket only
+    void setReceiveTimestamps(final boolean on) throws SocketException {
+        if (isClosed()) {
+            throw new SocketException("Socket closed");
+        }
+        n_setsockopt(fd, JNI.SO_TIMESTAMPNS, on ? 1 : 0);
+    }
+
     @Override
     public void setOption(final int optID, final Object value) throws SocketException {
         if (isClosed()) {
@@ -180,6 +202,17 @@ class ECNBitsDatagramSocketImpl extends DatagramSocketImpl {
 
     @Override
     protected void send(final DatagramPacket p) throws IOException {
+        send(p, -1);
+    }
+
+    /**
+     * Sends a datagram packet, optionally with a per-packet traffic class
+     *
+     * @param p  packet to send
+     * @param tc traffic class octet (0‥255) to send with, or -1 for the socket’s
+     * @throws IOException on error
+     */
+    void send(final DatagramPacket p, final int tc) throws IOException {
         if (isClosed()) {
             throw new SocketException("Socket closed");
         }
@@ -193,7 +226,7 @@ class ECNBitsDatagramSocketImpl extends DatagramSocketImpl {
         do {
             n = n_sendto(fd, p.getData(), p.getOffset(), p.getLength(),
               address == null ? null : JNI.AddrPort.addr(address),
-              port, JNI.AddrPort.scopeId(address));
+              port, JNI.AddrPort.scopeId(address), tc);
         } while (n == JNI.EINTR && !isClosed());
     }
 
@@ -203,6 +236,7 @@ class ECNBitsDatagramSocketImpl extends DatagramSocketImpl {
             throw new SocketException("Socket closed");
         }
         n_connect(fd, JNI.AddrPort.addr(address), port, JNI.AddrPort.scopeId(address));
+        connectedAddress = new InetSocketAddress(address, port);
         connected = true;
     }
 
@@ -218,6 +252,7 @@ class ECNBitsDatagramSocketImpl extends DatagramSocketImpl {
             throw new RuntimeException("ECNBitsDatagramSocketImpl.disconnect()", e);
         } finally {
             connected = false;
+            connectedAddress = null;
         }
     }
 
@@ -255,7 +290,6 @@ class ECNBitsDatagramSocketImpl extends DatagramSocketImpl {
                 throw new SocketException("recvmsg poll failed");
             }
         }
-        final JNI.AddrPort aptc = new JNI.AddrPort();
         /*
          * this is wrong (should be p.bufLength) but see the comment in
          * {@link ECNBitsDatagramSocketAdapter#receive(DatagramPacket)}
@@ -265,10 +299,19 @@ class ECNBitsDatagramSocketImpl extends DatagramSocketImpl {
         int rv;
         do {
             rv = n_recvfrom(fd, p.getData(), p.getOffset(), p.getLength(),
-              aptc, peekOnly, connected);
+              rmd, peekOnly, connected);
         } while (rv == JNI.EINTR && !isClosed());
-        final InetSocketAddress src = aptc.get();
-        if (rv == JNI.EAVAIL || src == null) {
+        if (rv < 0) {
+            throw new SocketTimeoutException("recvmsg timed out");
+        }
+        final ECNBitsDatagramInfo ri = uinfo != null ? uinfo : rinfo;
+        ri.fill(rmd, 0);
+        // the kernel does not report the sender if connected
+        if (connected) {
+            ri.setSender(connectedAddress);
+        }
+        final InetSocketAddress src = ri.getSender();
+        if (src == null) {
             throw new SocketTimeoutException("recvmsg timed out");
         }
         // also wrong (see above), should be p.setReceivedLength()
@@ -278,7 +321,9 @@ class ECNBitsDatagramSocketImpl extends DatagramSocketImpl {
         if (!src.getAddress().equals(p.getAddress())) {
             p.setAddress(src.getAddress());
         }
-        tcm.received(aptc.tcValid, aptc.tc);
+        tcm.received(ri.isTrafficClassValid(), ri.getTrafficClass(),
+          ri.getLength(), ri.getSegmentSize(), ri.getReceiveTimestamp(),
+          rmd.getInt(JNI.MD_DROPS));
     }
 
     @Override
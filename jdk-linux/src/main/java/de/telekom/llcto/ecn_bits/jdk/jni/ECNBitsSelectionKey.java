@@ -0,0 +1,115 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectionKey;
+
+/**
+ * Registration of an {@link ECNBitsDatagramChannelImpl} with an
+ * {@link ECNBitsSelector}.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+final class ECNBitsSelectionKey extends AbstractSelectionKey {
+    final ECNBitsDatagramChannelImpl channel;
+    final ECNBitsSelector selector;
+    // cached at registration, the channel’s may be reset by kill()
+    final int fd;
+
+    private volatile int interestOps;
+    private volatile int readyOps;
+
+    // epoll events currently registered for fd, protected by the selector’s updateLock
+    int registeredEvents;
+
+    ECNBitsSelectionKey(final ECNBitsDatagramChannelImpl channel, final ECNBitsSelector selector) {
+        this.channel = channel;
+        this.selector = selector;
+        this.fd = channel.getFDVal();
+    }
+
+    @Override
+    public SelectableChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public Selector selector() {
+        return selector;
+    }
+
+    @Override
+    public int interestOps() {
+        ensureValid();
+        return interestOps;
+    }
+
+    @Override
+    public SelectionKey interestOps(final int ops) {
+        ensureValid();
+        if ((ops & ~channel.validOps()) != 0) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            selector.setInterest(this, ops);
+        } catch (IOException e) {
+            // the channel or selector was closed concurrently
+            throw new CancelledKeyException();
+        }
+        return this;
+    }
+
+    @Override
+    public int readyOps() {
+        ensureValid();
+        return readyOps;
+    }
+
+    // without validity check, for the selector
+    int nioInterestOps() {
+        return interestOps;
+    }
+
+    // protected by the selector’s updateLock
+    void nioInterestOps(final int ops) {
+        interestOps = ops;
+    }
+
+    int nioReadyOps() {
+        return readyOps;
+    }
+
+    void nioReadyOps(final int ops) {
+        readyOps = ops;
+    }
+
+    private void ensureValid() {
+        if (!isValid()) {
+            throw new CancelledKeyException();
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.channels.spi.AbstractSelector;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import static de.telekom.llcto.ecn_bits.jdk.jni.JNI.*;
+
+/**
+ * epoll(7)-based {@link Selector} for {@link ECNBitsDatagramChannelImpl},
+ * modelled after the OpenJDK 8 EPollSelectorImpl; woken up via eventfd(2).
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+@Log
+final class ECNBitsSelector extends AbstractSelector {
+    private int epfd;
+    private int evfd;
+
+    // -- The following fields are protected by publicKeys
+
+    private final Map<Integer, ECNBitsSelectionKey> fdToKey = new HashMap<>();
+    private final Set<SelectionKey> keys = new HashSet<>();
+    private final Set<SelectionKey> selectedKeys = new HashSet<>();
+    // (fd, events) records filled in by n_epwait
+    private final ByteBuffer evbuf = ByteBuffer.allocateDirect(EP_MAX * EP_SIZE)
+      .order(ByteOrder.nativeOrder());
+
+    // -- End of fields protected by publicKeys
+
+    // views handed out to the user; also used as locks, as per the spec
+    private final Set<SelectionKey> publicKeys = Collections.unmodifiableSet(keys);
+    private final Set<SelectionKey> publicSelectedKeys = new UngrowableSet<>(selectedKeys);
+
+    // protects epoll registration changes and the keys’ registeredEvents
+    private final Object updateLock = new Object();
+
+    // protects interruptTriggered and the eventfd
+    private final Object interruptLock = new Object();
+    private boolean interruptTriggered = false;
+
+    ECNBitsSelector(final ECNBitsSelectorProvider sp) throws IOException {
+        super(sp);
+        epfd = n_epcreate();
+        try {
+            evfd = n_evcreate();
+            try {
+                n_epctl(epfd, EPOLL_CTL_ADD, evfd, EPOLLIN);
+            } catch (IOException e) {
+                n_close(evfd);
+                throw e;
+            }
+        } catch (IOException e) {
+            n_close(epfd);
+            throw e;
+        }
+    }
+
+    @Override
+    public Set<SelectionKey> keys() {
+        if (!isOpen()) {
+            throw new ClosedSelectorException();
+        }
+        return publicKeys;
+    }
+
+    @Override
+    public Set<SelectionKey> selectedKeys() {
+        if (!isOpen()) {
+            throw new ClosedSelectorException();
+        }
+        return publicSelectedKeys;
+    }
+
+    @Override
+    public int selectNow() throws IOException {
+        return lockAndDoSelect(0);
+    }
+
+    @Override
+    public int select(final long timeout) throws IOException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        return lockAndDoSelect(timeout == 0 ? -1 : (int) Math.min(timeout, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int select() throws IOException {
+        return select(0);
+    }
+
+    @Override
+    public Selector wakeup() {
+        synchronized (interruptLock) {
+            if (!interruptTriggered) {
+                try {
+                    n_evsignal(evfd);
+                } catch (IOException e) {
+                    // only possible if already closed
+                    LOG.log(Level.FINE, "wakeup", e);
+                }
+                interruptTriggered = true;
+            }
+        }
+        return this;
+    }
+
+    private int lockAndDoSelect(final int timeout) throws IOException {
+        synchronized (this) {
+            if (!isOpen()) {
+                throw new ClosedSelectorException();
+            }
+            synchronized (publicKeys) {
+                synchronized (publicSelectedKeys) {
+                    return doSelect(timeout);
+                }
+            }
+        }
+    }
+
+    private int doSelect(final int timeout) throws IOException {
+        processDeregisterQueue();
+        int n = 0;
+        try {
+            begin();
+            n = n_epwait(epfd, evbuf, EP_MAX, timeout);
+        } finally {
+            end();
+        }
+        processDeregisterQueue();
+        // EINTR: spurious wakeup, as permitted
+        return n > 0 ? updateSelectedKeys(n) : 0;
+    }
+
+    private int updateSelectedKeys(final int n) throws IOException {
+        int numKeysUpdated = 0;
+        boolean interrupted = false;
+        for (int i = 0; i < n; ++i) {
+            final int fd = evbuf.getInt(i * EP_SIZE);
+            final int events = evbuf.getInt(i * EP_SIZE + 4);
+            if (fd == evfd) {
+                interrupted = true;
+                continue;
+            }
+            final ECNBitsSelectionKey key = fdToKey.get(fd);
+            // key may have been cancelled meanwhile
+            if (key == null || !key.isValid()) {
+                continue;
+            }
+            final int rOps = translateReadyOps(events, key.nioInterestOps());
+            if (rOps == 0) {
+                continue;
+            }
+            if (selectedKeys.contains(key)) {
+                final int oldOps = key.nioReadyOps();
+                if ((rOps & ~oldOps) != 0) {
+                    key.nioReadyOps(oldOps | rOps);
+                    ++numKeysUpdated;
+                }
+            } else {
+                key.nioReadyOps(rOps);
+                selectedKeys.add(key);
+                ++numKeysUpdated;
+            }
+        }
+        if (interrupted) {
+            synchronized (interruptLock) {
+                n_evdrain(evfd);
+                interruptTriggered = false;
+            }
+        }
+        return numKeysUpdated;
+    }
+
+    private static int translateReadyOps(final int events, final int interestOps) {
+        int ops = 0;
+        if ((events & (EPOLLERR | EPOLLHUP)) != 0) {
+            // let the channel operation report the error
+            return interestOps;
+        }
+        if ((events & EPOLLIN) != 0) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if ((events & EPOLLOUT) != 0) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        return ops & interestOps;
+    }
+
+    private static int translateInterestOps(final int ops) {
+        int events = 0;
+        if ((ops & SelectionKey.OP_READ) != 0) {
+            events |= EPOLLIN;
+        }
+        if ((ops & SelectionKey.OP_WRITE) != 0) {
+            events |= EPOLLOUT;
+        }
+        return events;
+    }
+
+    // called by ECNBitsSelectionKey.interestOps(int)
+    void setInterest(final ECNBitsSelectionKey key, final int ops) throws IOException {
+        final int events = translateInterestOps(ops);
+        synchronized (updateLock) {
+            if (!key.isValid()) {
+                return;
+            }
+            if (events != key.registeredEvents) {
+                if (events == 0) {
+                    n_epctl(epfd, EPOLL_CTL_DEL, key.fd, 0);
+                } else {
+                    n_epctl(epfd, key.registeredEvents == 0 ? EPOLL_CTL_ADD : EPOLL_CTL_MOD,
+                      key.fd, events);
+                }
+                key.registeredEvents = events;
+            }
+            key.nioInterestOps(ops);
+        }
+    }
+
+    @Override
+    protected SelectionKey register(final AbstractSelectableChannel ch, final int ops, final Object att) {
+        if (!(ch instanceof ECNBitsDatagramChannelImpl) ||
+          ((ECNBitsDatagramChannelImpl) ch).usesRxRing()) {
+            throw new IllegalSelectorException();
+        }
+        final ECNBitsSelectionKey key = new ECNBitsSelectionKey((ECNBitsDatagramChannelImpl) ch, this);
+        key.attach(att);
+        synchronized (publicKeys) {
+            if (!isOpen()) {
+                throw new ClosedSelectorException();
+            }
+            fdToKey.put(key.fd, key);
+            keys.add(key);
+        }
+        key.interestOps(ops);
+        return key;
+    }
+
+    // must hold publicKeys and publicSelectedKeys
+    private void processDeregisterQueue() throws IOException {
+        final Set<SelectionKey> cks = cancelledKeys();
+        synchronized (cks) {
+            if (cks.isEmpty()) {
+                return;
+            }
+            final Iterator<SelectionKey> i = cks.iterator();
+            while (i.hasNext()) {
+                final ECNBitsSelectionKey key = (ECNBitsSelectionKey) i.next();
+                try {
+                    implDereg(key);
+                } finally {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    private void implDereg(final ECNBitsSelectionKey key) throws IOException {
+        synchronized (updateLock) {
+            if (key.registeredEvents != 0) {
+                key.registeredEvents = 0;
+                try {
+                    n_epctl(epfd, EPOLL_CTL_DEL, key.fd, 0);
+                } catch (IOException e) {
+                    // must not keep the channel from being killed below
+                    LOG.log(Level.FINE, "epoll_ctl DEL", e);
+                }
+            }
+        }
+        if (fdToKey.get(key.fd) == key) {
+            fdToKey.remove(key.fd);
+        }
+        keys.remove(key);
+        selectedKeys.remove(key);
+        deregister(key);
+        final ECNBitsDatagramChannelImpl ch = key.channel;
+        if (!ch.isOpen() && !ch.isRegistered()) {
+            ch.kill();
+        }
+    }
+
+    @Override
+    protected void implCloseSelector() throws IOException {
+        wakeup();
+        synchronized (this) {
+            synchronized (publicKeys) {
+                synchronized (publicSelectedKeys) {
+                    synchronized (interruptLock) {
+                        n_close(evfd);
+                        evfd = -1;
+                    }
+                    synchronized (updateLock) {
+                        n_close(epfd);
+                        epfd = -1;
+                    }
+                    for (final SelectionKey k : keys) {
+                        final ECNBitsSelectionKey key = (ECNBitsSelectionKey) k;
+                        key.registeredEvents = 0;
+                        deregister(key);
+                        final ECNBitsDatagramChannelImpl ch = key.channel;
+                        if (!ch.isOpen() && !ch.isRegistered()) {
+                            ch.kill();
+                        }
+                    }
+                    fdToKey.clear();
+                    keys.clear();
+                    selectedKeys.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Set view that permits removal but not addition, as required for
+     * {@link Selector#selectedKeys()}.
+     */
+    private static final class UngrowableSet<E> extends AbstractSet<E> {
+        private final Set<E> s;
+
+        UngrowableSet(final Set<E> s) {
+            this.s = s;
+        }
+
+        @Override
+        public int size() {
+            return s.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return s.isEmpty();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return s.contains(o);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return s.iterator();
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            return s.remove(o);
+        }
+
+        @Override
+        public void clear() {
+            s.clear();
+        }
+
+        @Override
+        public boolean add(final E o) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.io.IOException;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.AbstractSelector;
+import java.nio.channels.spi.SelectorProvider;
+
+/**
+ * {@link SelectorProvider} for {@link ECNBitsDatagramChannel}s, whose
+ * file descriptors live in native code and thus cannot be registered with
+ * the platform default selectors. Selectors opened from this provider are
+ * backed by epoll(7), so one thread can serve thousands of channels:
+ *
+ * <pre>
+ * final Selector sel = ECNBitsSelectorProvider.provider().openSelector();
+ * final ECNBitsDatagramChannel chan = ECNBitsDatagramChannel.open();
+ * chan.configureBlocking(false);
+ * chan.register(sel, SelectionKey.OP_READ);
+ * </pre>
+ *
+ * Only datagram channels and selectors are provided; all other channel
+ * kinds must still be obtained from {@link SelectorProvider#provider()}.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public final class ECNBitsSelectorProvider extends SelectorProvider {
+    private static final ECNBitsSelectorProvider INSTANCE = new ECNBitsSelectorProvider();
+
+    private ECNBitsSelectorProvider() {
+    }
+
+    /**
+     * Returns the provider, which is also the one returned by the
+     * {@link ECNBitsDatagramChannel#provider()} method.
+     *
+     * @return the ECN-Bits selector provider
+     */
+    public static ECNBitsSelectorProvider provider() {
+        return INSTANCE;
+    }
+
+    /**
+     * Opens an {@link ECNBitsDatagramChannel}.
+     *
+     * @return the new channel
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public ECNBitsDatagramChannel openDatagramChannel() throws IOException {
+        return new ECNBitsDatagramChannelImpl(this);
+    }
+
+    /**
+     * Opens an {@link ECNBitsDatagramChannel}. All channels are dual-stack
+     * IPv6 sockets handling IPv4 via v4-mapped addresses, so both families
+     * are accepted.
+     *
+     * @param family the protocol family
+     * @return the new channel
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public ECNBitsDatagramChannel openDatagramChannel(final ProtocolFamily family) throws IOException {
+        if (family != StandardProtocolFamily.INET && family != StandardProtocolFamily.INET6) {
+            throw new UnsupportedOperationException("Protocol family not supported: " + family);
+        }
+        return openDatagramChannel();
+    }
+
+    @Override
+    public AbstractSelector openSelector() throws IOException {
+        return new ECNBitsSelector(this);
+    }
+
+    @Override
+    public Pipe openPipe() {
+        throw new UnsupportedOperationException("only datagram channels are supported");
+    }
+
+    @Override
+    public ServerSocketChannel openServerSocketChannel() {
+        throw new UnsupportedOperationException("only datagram channels are supported");
+    }
+
+    @Override
+    public SocketChannel openSocketChannel() {
+        throw new UnsupportedOperationException("only datagram channels are supported");
+    }
+}
@@ -0,0 +1,128 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+
+/**
+ * Socket options supported by {@link ECNBitsDatagramChannel} in addition
+ * to the {@link StandardSocketOptions} ones.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public final class ECNBitsSocketOptions {
+    private ECNBitsSocketOptions() {
+    }
+
+    /**
+     * UDP generic receive offload (Linux 5.0+).
+     *
+     * If enabled, the kernel may coalesce consecutive datagrams from the
+     * same sender with the same traffic class into one large datagram,
+     * which is then received with a single call; receive buffers should
+     * therefore be 64 KiB large. All segments but the last have the same
+     * size, which {@link ECNBitsDatagramInfo#getSegmentSize()} reports;
+     * the statistics count every segment. Disabled by default.
+     */
+    public static final SocketOption<Boolean> UDP_GRO = new Option<>("UDP_GRO", Boolean.class);
+
+    /**
+     * Kernel receive timestamps (SO_TIMESTAMPNS).
+     *
+     * If enabled, the kernel records when each datagram arrived, before
+     * any queueing in the socket buffer or delay in the JVM; it is then
+     * reported by {@link ECNBitsDatagramInfo#getReceiveTimestamp()} and
+     * {@link AbstractECNBitsDatagramReceiver#retrieveLastReceiveTimestamp()},
+     * and used by the trace, cf. {@link ECNBitsDatagramChannel#setTrace(int)}.
+     * Disabled by default.
+     */
+    public static final SocketOption<Boolean> SO_TIMESTAMPNS = new Option<>("SO_TIMESTAMPNS", Boolean.class);
+
+    /**
+     * Busy polling (SO_BUSY_POLL, Linux 3.11+).
+     *
+     * The number of microseconds a blocking receive busy-polls the
+     * network device queue for new datagrams before sleeping, trading
+     * CPU time for lower wake-up latency; 0 (the default, unless set
+     * system-wide with the net.core.busy_read sysctl) disables it.
+     * Raising it above that sysctl needs CAP_NET_ADMIN. Combine with
+     * {@link ECNBitsDatagramChannel#setReceiveSpin(long, java.util.concurrent.TimeUnit)}.
+     */
+    public static final SocketOption<Integer> SO_BUSY_POLL = new Option<>("SO_BUSY_POLL", Integer.class);
+
+    /**
+     * Preferring busy polling over interrupt processing
+     * (SO_PREFER_BUSY_POLL, Linux 5.11+), cf. {@link #SO_BUSY_POLL}.
+     * Disabled by default.
+     */
+    public static final SocketOption<Boolean> SO_PREFER_BUSY_POLL = new Option<>("SO_PREFER_BUSY_POLL",
+      Boolean.class);
+
+    /**
+     * Sharing the local port among several sockets (SO_REUSEPORT,
+     * Linux 3.9+), which the kernel then distributes received datagrams
+     * over; must be set on each before binding. Disabled by default.
+     * Cf. {@link ECNShardedListener}.
+     */
+    public static final SocketOption<Boolean> SO_REUSEPORT = new Option<>("SO_REUSEPORT",
+      Boolean.class);
+
+    /**
+     * CPU affinity of the socket (SO_INCOMING_CPU, Linux 3.19+).
+     *
+     * Reading it returns the CPU that last processed a datagram received
+     * on the socket, i.e. where the receive queue’s interrupt landed, or
+     * −1 if none yet; a reader thread pinned to that CPU (see
+     * {@link ECNShardedListener#pinCurrentThread(int)}) finds the data
+     * in its cache. Setting it (Linux 4.4+) makes a socket sharing its
+     * port via {@link #SO_REUSEPORT} preferred for datagrams processed
+     * on that CPU.
+     */
+    public static final SocketOption<Integer> SO_INCOMING_CPU = new Option<>("SO_INCOMING_CPU",
+      Integer.class);
+
+    private static final class Option<T> implements SocketOption<T> {
+        private final String name;
+        private final Class<T> type;
+
+        Option(final String name, final Class<T> type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public Class<T> type() {
+            return type;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+/**
+ * Notified when CE marking on the traffic received by a channel starts
+ * or stops, cf. {@link ECNBitsDatagramChannel#setCongestionListener}
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+@FunctionalInterface
+public interface ECNCongestionListener {
+    /**
+     * Called asynchronously, never from the receiving thread, on every
+     * congestion onset and offset.
+     *
+     * @param channel   whose received traffic changed its congestion state
+     * @param congested true on onset, false on offset
+     */
+    void congestionChanged(ECNBitsDatagramChannel channel, boolean congested);
+}
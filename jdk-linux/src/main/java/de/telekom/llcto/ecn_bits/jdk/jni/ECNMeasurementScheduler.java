@@ -0,0 +1,415 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.extern.java.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Delivers periodic {@link ECNStatistics} of many receivers to listeners
+ * from one shared thread, instead of one timer per receiver.
+ *
+ * Each registration opens its own {@link ECNMeasurementSession} on the
+ * receiver and is driven by a hierarchical timing wheel (four levels of
+ * 64 slots each, cf. Varghese and Lauck), so scheduling, rescheduling
+ * and cancelling are O(1) regardless of the number of registrations.
+ * Roll-overs are delivered at most one tick late, plus the time taken
+ * by listeners run on the scheduler thread itself; slow listeners
+ * should therefore be registered with an {@link Executor} to hand off
+ * to (the measurement is still taken on time, on the scheduler thread).
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+@Log
+public final class ECNMeasurementScheduler implements AutoCloseable {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    // longest delay the wheel can represent, in ticks; longer ones re-cascade
+    private static final long MAX_DELAY = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    /**
+     * Receives the statistics of a receiver’s measurement period
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called once per period, on the scheduler thread or via the executor
+         * given at registration; in the latter case calls may overlap.
+         *
+         * @param receiver whose period rolled over
+         * @param stats    of the period just ended
+         */
+        void measured(AbstractECNBitsDatagramReceiver receiver, ECNStatistics stats);
+    }
+
+    /**
+     * Handle for a receiver registered with the scheduler
+     */
+    public static final class Registration implements AutoCloseable {
+        private final ECNMeasurementScheduler scheduler;
+        private final AbstractECNBitsDatagramReceiver receiver;
+        private final ECNMeasurementSession session;
+        private final Listener listener;
+        private final Executor executor;
+        private final long period;
+        private volatile boolean cancelled = false;
+
+        // -- The following fields are only used by the scheduler thread
+
+        private long deadline;
+        private Registration prev;
+        private Registration next;
+        private boolean linked = false;
+        private int level;
+        private int slot;
+        private boolean counted = false;
+
+        // -- End of fields used by the scheduler thread
+
+        private Registration(final ECNMeasurementScheduler scheduler,
+          final AbstractECNBitsDatagramReceiver receiver, final long period,
+          final Listener listener, final Executor executor) {
+            this.scheduler = scheduler;
+            this.receiver = receiver;
+            this.period = period;
+            this.listener = listener;
+            this.executor = executor;
+            session = receiver.openMeasurementSession();
+        }
+
+        /**
+         * Returns the receiver this registration measures.
+         *
+         * @return receiver
+         */
+        public AbstractECNBitsDatagramReceiver getReceiver() {
+            return receiver;
+        }
+
+        /**
+         * Returns whether this registration is still active.
+         *
+         * @return false once cancelled or the scheduler is closed
+         */
+        public boolean isActive() {
+            return !cancelled;
+        }
+
+        /**
+         * Cancels this registration and closes its measurement session;
+         * a listener call already in progress (or handed off) still happens.
+         */
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            session.close();
+            scheduler.pending.add(this);
+            LockSupport.unpark(scheduler.thread);
+        }
+
+        /**
+         * Same as {@link #cancel()}
+         */
+        @Override
+        public void close() {
+            cancel();
+        }
+    }
+
+    private final long tickNanos;
+    private final Thread thread;
+    // registrations added or cancelled, for the scheduler thread to process
+    private final ConcurrentLinkedQueue<Registration> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean open = true;
+
+    // -- The following fields are only used by the scheduler thread
+
+    private final Registration[][] wheel = new Registration[LEVELS][WHEEL_SIZE];
+    // current tick, and System.nanoTime() at tick 0
+    private long now = 0;
+    private long base;
+    private int count = 0;
+
+    // -- End of fields used by the scheduler thread
+
+    /**
+     * Creates a scheduler with a tick, and thus jitter, of one millisecond.
+     */
+    public ECNMeasurementScheduler() {
+        this(1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a scheduler with the given tick, which bounds the jitter;
+     * periods are rounded up to a multiple of it.
+     *
+     * @param tick length of a tick, positive
+     * @param unit of tick
+     */
+    public ECNMeasurementScheduler(final long tick, final TimeUnit unit) {
+        tickNanos = unit.toNanos(tick);
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        thread = new Thread(this::run, "ECNMeasurementScheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers a receiver to have the listener called with its statistics
+     * every period, on the scheduler thread; the first period starts now.
+     *
+     * @param receiver to measure
+     * @param period   length of the measuring periods, positive
+     * @param unit     of period
+     * @param listener to call with the statistics
+     * @return registration handle, to cancel it
+     */
+    public Registration schedule(final AbstractECNBitsDatagramReceiver receiver,
+      final long period, final TimeUnit unit, final Listener listener) {
+        return schedule(receiver, period, unit, listener, null);
+    }
+
+    /**
+     * Registers a receiver to have the listener called with its statistics
+     * every period, handed off to the executor (e.g. one running virtual
+     * threads) unless null; the first period starts now.
+     *
+     * @param receiver to measure
+     * @param period   length of the measuring periods, positive
+     * @param unit     of period
+     * @param listener to call with the statistics
+     * @param executor to run the listener on, or null for the scheduler thread
+     * @return registration handle, to cancel it
+     */
+    public Registration schedule(final AbstractECNBitsDatagramReceiver receiver,
+      final long period, final TimeUnit unit, final Listener listener, final Executor executor) {
+        if (receiver == null || listener == null) {
+            throw new NullPointerException();
+        }
+        final long nanos = unit.toNanos(period);
+        if (nanos <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        if (!open) {
+            throw new IllegalStateException("scheduler closed");
+        }
+        final Registration r = new Registration(this, receiver,
+          Math.max(1, (nanos + tickNanos - 1) / tickNanos), listener, executor);
+        pending.add(r);
+        LockSupport.unpark(thread);
+        // lost the race against close()
+        if (!open) {
+            r.cancel();
+        }
+        return r;
+    }
+
+    /**
+     * Stops the scheduler thread and cancels all registrations.
+     */
+    @Override
+    public void close() {
+        open = false;
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() != thread) {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        base = System.nanoTime();
+        try {
+            while (open) {
+                drainPending();
+                if (count == 0) {
+                    if (pending.isEmpty()) {
+                        LockSupport.park(this);
+                    }
+                    // nothing to tick for while idle
+                    base = System.nanoTime() - now * tickNanos;
+                    continue;
+                }
+                final long wait = base + (now + 1) * tickNanos - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                tick();
+            }
+        } finally {
+            open = false;
+            for (final Registration[] level : wheel) {
+                for (Registration r : level) {
+                    while (r != null) {
+                        final Registration next = r.next;
+                        r.cancel();
+                        r = next;
+                    }
+                }
+            }
+            Registration r;
+            while ((r = pending.poll()) != null) {
+                // no-op unless new, then queued again once
+                r.cancel();
+            }
+        }
+    }
+
+    private void drainPending() {
+        Registration r;
+        while ((r = pending.poll()) != null) {
+            if (r.cancelled) {
+                if (r.linked) {
+                    unlink(r);
+                }
+                if (r.counted) {
+                    r.counted = false;
+                    --count;
+                }
+            } else if (!r.counted) {
+                r.counted = true;
+                ++count;
+                r.deadline = now + r.period;
+                insert(r);
+            }
+        }
+    }
+
+    private void tick() {
+        ++now;
+        // move the entries of higher-level slots due now one level down
+        for (int level = LEVELS - 1; level > 0; --level) {
+            if ((now & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                Registration r = detach(level, (int) (now >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                while (r != null) {
+                    final Registration next = r.next;
+                    insert(r);
+                    r = next;
+                }
+            }
+        }
+        Registration r = detach(0, (int) now & WHEEL_MASK);
+        while (r != null) {
+            final Registration next = r.next;
+            if (r.cancelled) {
+                // drainPending() does the bookkeeping
+                r = next;
+                continue;
+            }
+            if (r.deadline <= now) {
+                fire(r);
+                r.deadline = Math.max(r.deadline + r.period, now + 1);
+            }
+            insert(r);
+            r = next;
+        }
+    }
+
+    private void fire(final Registration r) {
+        final ECNStatistics stats = r.session.getMeasurement(true);
+        if (stats == null) {
+            // closed meanwhile
+            return;
+        }
+        if (r.executor == null) {
+            deliver(r, stats);
+            return;
+        }
+        try {
+            r.executor.execute(() -> deliver(r, stats));
+        } catch (RejectedExecutionException e) {
+            LOG.log(Level.WARNING, "listener hand-off rejected", e);
+        }
+    }
+
+    private static void deliver(final Registration r, final ECNStatistics stats) {
+        try {
+            r.listener.measured(r.receiver, stats);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "listener failed", e);
+        }
+    }
+
+    private void insert(final Registration r) {
+        final long delta = Math.min(Math.max(r.deadline - now, 0), MAX_DELAY);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            ++level;
+        }
+        final int slot = (int) ((now + delta) >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+        r.prev = null;
+        r.next = wheel[level][slot];
+        if (r.next != null) {
+            r.next.prev = r;
+        }
+        wheel[level][slot] = r;
+        r.linked = true;
+        r.level = level;
+        r.slot = slot;
+    }
+
+    private void unlink(final Registration r) {
+        if (r.prev != null) {
+            r.prev.next = r.next;
+        } else {
+            wheel[r.level][r.slot] = r.next;
+        }
+        if (r.next != null) {
+            r.next.prev = r.prev;
+        }
+        r.prev = null;
+        r.next = null;
+        r.linked = false;
+    }
+
+    // removes all entries from a slot, returning them as list
+    private Registration detach(final int level, final int slot) {
+        final Registration head = wheel[level][slot];
+        wheel[level][slot] = null;
+        for (Registration r = head; r != null; r = r.next) {
+            r.linked = false;
+        }
+        return head;
+    }
+}
@@ -0,0 +1,82 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+/**
+ * Handle for one consumer’s measurement of received traffic, obtained via
+ * {@link AbstractECNBitsDatagramReceiver#openMeasurementSession()}.
+ *
+ * Every session has its own measuring period, which is only reset when
+ * asked to by its owner, so e.g. a rate controller polling every 20 ms
+ * and monitoring polling every 10 s do not disturb each other (nor the
+ * {@link AbstractECNBitsDatagramReceiver#getMeasurement(boolean)} period).
+ * Open sessions cost nothing extra per received datagram but must be
+ * closed when no longer needed, as counting continues while any is open.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public final class ECNMeasurementSession implements AutoCloseable {
+    private final ECNMeasurer tcm;
+
+    // -- The following fields are protected by tcm
+
+    final ECNMeasurer.Totals base = new ECNMeasurer.Totals();
+    long start;
+    boolean open = true;
+
+    // -- End of fields protected by tcm
+
+    ECNMeasurementSession(final ECNMeasurer tcm) {
+        this.tcm = tcm;
+    }
+
+    /**
+     * Retrieves the measurement data for the period since this session
+     * was opened or last reset, and optionally resets it, starting a new
+     * period for this session only.
+     *
+     * @param reset whether to start a new period
+     * @return {@link ECNStatistics}, or null if the session was closed
+     */
+    public ECNStatistics getMeasurement(final boolean reset) {
+        return tcm.measure(this, reset);
+    }
+
+    /**
+     * Returns whether this session is still open.
+     *
+     * @return false after {@link #close()}
+     */
+    public boolean isOpen() {
+        synchronized (tcm) {
+            return open;
+        }
+    }
+
+    /**
+     * Closes this session; further calls have no effect.
+     */
+    @Override
+    public void close() {
+        tcm.close(this);
+    }
+}
@@ -21,26 +21,169 @@ package de.telekom.llcto.ecn_bits.jdk.jni;
  * of said person’s immediate fault when using the work as intended.
  */
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Implementation for collecting ECN bit statistics and the last TC octet
+ * (and kernel receive timestamp)
+ *
+ * Receivers never block: datagrams and their octets are counted into
+ * striped 64-bit counters (one per ECN codepoint plus one for an unknown
+ * traffic class, and a histogram of datagram sizes) of the currently
+ * active period, as long as any measurement session is open. To read
+ * them, the active period is swapped with a spare one; the reader then
+ * waits, using a writer/reader phaser modelled after the one in
+ * HdrHistogram, until all receivers that may still be counting into the
+ * old period have left it, and folds it into cumulative totals, which
+ * are thus consistent. Each {@link ECNMeasurementSession} keeps its own
+ * baseline of these totals, so sessions cost nothing per datagram.
+ *
+ * Datagrams the kernel dropped because the socket buffer was full are
+ * counted from the socket’s drop counter, which the kernel reports with
+ * each datagram (once nonzero); the increase since the last datagram is
+ * counted into the period the datagram is counted in.
+ *
+ * Independently of the measuring periods, an incremental DCTCP-style
+ * congestion estimate α (an EWMA of the CE fraction) can be kept; its
+ * state is a single double, updated by compare-and-swap once per call.
  *
  * @author mirabilos (t.glaser@tarent.de)
  */
 class ECNMeasurer {
-    private Byte lastTc = null;
-    private byte measuring = 0;
-    final private int[] measurement = new int[2];
-    private long measuredFrom;
+    /**
+     * Index of the counter for datagrams without a traffic class octet;
+     * indicēs 0‥3 are the ECN bits, cf. {@link Bits#getBits()}
+     */
+    static final int UNKNOWN = 4;
+    /**
+     * Number of counters per measuring period
+     */
+    static final int NCOUNTERS = 5;
+    /**
+     * Number of datagram size histogram buckets, cf. {@link #sizeBucket(int)}
+     */
+    static final int NSIZES = 17;
+
+    // CE onset/offset detector, if any
+    private volatile CongestionDetector detector = null;
+
+    // congestion estimator gain, 0 unless estimating
+    private volatile double gain = 0;
+    // congestion estimator state α, as raw double bits
+    private final AtomicLong alpha = new AtomicLong(0);
+
+    // last traffic class octet, or -1 if none
+    private volatile int lastTc = -1;
+    // last kernel receive timestamp, or 0 if none
+    private volatile long lastStamp = 0;
+    // highest kernel drop counter seen
+    private final AtomicInteger dropMark = new AtomicInteger(0);
+    // null unless measuring
+    private volatile Period active = null;
+
+    // -- The following fields are protected by this
+
+    // receivers count into periods[cur] while measuring, the other is spare
+    private final Period[] periods = { new Period(), new Period() };
+    private int cur = 0;
+    // everything counted so far, as of the last fold
+    private final Totals totals = new Totals();
+    private int nsessions = 0;
+    // session used by doMeasuring
+    private ECNMeasurementSession legacy = null;
+
+    // -- End of fields protected by this
+
+    // writer/reader phaser: writers enter by incrementing startEpoch and
+    // leave by incrementing the end epoch matching the sign they saw
+    private final AtomicLong startEpoch = new AtomicLong(0);
+    private final AtomicLong evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+    private static final class Period {
+        private final LongAdder[] counts = adders(NCOUNTERS);
+        private final LongAdder[] bytes = adders(NCOUNTERS);
+        private final LongAdder[] sizes = adders(NSIZES);
+        private final LongAdder drops = new LongAdder();
+
+        void count(final boolean valid, final byte octet, final int len, final int segsz) {
+            final int i = valid ? octet & 3 : UNKNOWN;
+            final int segs = segments(len, segsz);
+            counts[i].add(segs);
+            bytes[i].add(len);
+            if (segs > 1) {
+                // all but the last GRO segment are full-sized
+                sizes[sizeBucket(segsz)].add(segs - 1);
+                sizes[sizeBucket(len - (segs - 1) * segsz)].increment();
+            } else {
+                sizes[sizeBucket(len)].increment();
+            }
+        }
+
+        // no receiver may still be counting into this period
+        void drainTo(final Totals t) {
+            drain(counts, t.counts);
+            drain(bytes, t.bytes);
+            drain(sizes, t.sizes);
+            t.drops += drops.sumThenReset();
+        }
+
+        private static LongAdder[] adders(final int n) {
+            final LongAdder[] rv = new LongAdder[n];
+            for (int i = 0; i < n; ++i) {
+                rv[i] = new LongAdder();
+            }
+            return rv;
+        }
+
+        private static void drain(final LongAdder[] adders, final long[] to) {
+            for (int i = 0; i < adders.length; ++i) {
+                to[i] += adders[i].sumThenReset();
+            }
+        }
+    }
+
+    /**
+     * Cumulative counts, also used as baseline of a measurement session
+     */
+    static final class Totals {
+        private final long[] counts = new long[NCOUNTERS];
+        private final long[] bytes = new long[NCOUNTERS];
+        private final long[] sizes = new long[NSIZES];
+        private long drops;
+
+        void set(final Totals t) {
+            System.arraycopy(t.counts, 0, counts, 0, NCOUNTERS);
+            System.arraycopy(t.bytes, 0, bytes, 0, NCOUNTERS);
+            System.arraycopy(t.sizes, 0, sizes, 0, NSIZES);
+            drops = t.drops;
+        }
+
+        ECNStatistics since(final long start, final Totals base) {
+            return new ECNStatistics(start, minus(counts, base.counts),
+              minus(bytes, base.bytes), minus(sizes, base.sizes), drops - base.drops);
+        }
+
+        private static long[] minus(final long[] a, final long[] b) {
+            final long[] rv = new long[a.length];
+            for (int i = 0; i < a.length; ++i) {
+                rv[i] = a[i] - b[i];
+            }
+            return rv;
+        }
+    }
 
     /**
      * Sets up listening for the next packet. Intended to be called at the
      * beginning of all functions a user can call to receive a datagram, so
-     * the cached last packet’s traffic class field can be reset.
+     * the cached last packet’s traffic class and timestamp can be reset.
      */
     public void listen() {
-        synchronized (this) {
-            lastTc = null;
-        }
+        lastTc = -1;
+        lastStamp = 0;
     }
 
     /**
@@ -49,65 +192,321 @@ class ECNMeasurer {
      * @return byte or nil if no record
      */
     public Byte last() {
-        synchronized (this) {
-            return lastTc;
-        }
+        final int tc = lastTc;
+        return tc == -1 ? null : (byte) tc;
+    }
+
+    /**
+     * Retrieves the kernel receive timestamp of the last datagram received.
+     *
+     * @return nanoseconds since the epoch, or 0 if no record
+     */
+    public long lastStamp() {
+        return lastStamp;
     }
 
     /**
      * Records the receipt of a new datagram. This should be called only if
      * the packet was received successfully, but independently of whether
-     * a traffic class octet was actually read.
+     * a traffic class octet was actually read. The datagram may have been
+     * coalesced from several on-wire datagrams by UDP GRO; all segments
+     * share the traffic class octet, and each is counted.
      *
-     * @param valid whether the {@code octet} argument is valid
-     * @param octet the traffic class octet of the received datagram
+     * @param valid  whether the {@code octet} argument is valid
+     * @param octet  the traffic class octet of the received datagram
+     * @param len    length of the received datagram
+     * @param segsz  UDP GRO segment size, 0 if not coalesced
+     * @param tstamp kernel receive timestamp in ns since the epoch, 0 if none
+     * @param drops  the socket’s kernel drop counter, 0 if none
      */
-    public void received(final boolean valid, final byte octet) {
-        synchronized (this) {
-            if (valid) {
-                lastTc = octet;
+    public void received(final boolean valid, final byte octet, final int len, final int segsz,
+      final long tstamp, final int drops) {
+        if (valid) {
+            lastTc = octet & 0xFF;
+        }
+        if (tstamp != 0) {
+            lastStamp = tstamp;
+        }
+        final double g = gain;
+        final CongestionDetector d = detector;
+        if (g != 0 || d != null) {
+            final int segs = segments(len, segsz);
+            final boolean ce = valid && (octet & 3) == 3;
+            if (g != 0) {
+                estimate(g, segs, ce ? segs : 0);
+            }
+            if (d != null) {
+                d.received(ce, segs);
             }
+        }
+        final int nd = drops == 0 ? 0 : dropped(drops);
+        if (active == null) {
+            return;
+        }
+        final long e = startEpoch.getAndIncrement();
+        try {
+            final Period p = active;
+            if (p != null) {
+                p.count(valid, octet, len, segsz);
+                if (nd > 0) {
+                    p.drops.add(nd);
+                }
+            }
+        } finally {
+            (e < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+        }
+    }
 
-            if (measuring == 1) {
-                final int offset = valid && Bits.CE.equals(Bits.valueOf(octet)) ? 1 : 0;
-                if (measurement[offset] == Integer.MAX_VALUE / 2) {
-                    measuring = 2;
-                } else {
-                    ++measurement[offset];
+    /**
+     * Records the receipt of a batch of new datagrams, all at once.
+     *
+     * @param md native-order metadata buffer, cf. {@link JNI#MD_SIZE}
+     * @param n  number of datagrams received into md
+     */
+    public void received(final ByteBuffer md, final int n) {
+        int i = n;
+        while (--i >= 0) {
+            final short tcv = md.getShort(i * JNI.MD_SIZE + JNI.MD_TC);
+            if ((tcv & 0xFF00) == JNI.MD_TC_VALID) {
+                lastTc = tcv & 0xFF;
+                break;
+            }
+        }
+        int nd = 0;
+        if (n > 0) {
+            final long tstamp = md.getLong((n - 1) * JNI.MD_SIZE + JNI.MD_TSTAMP);
+            if (tstamp != 0) {
+                lastStamp = tstamp;
+            }
+            // the counter only grows in queue order
+            final int drops = md.getInt((n - 1) * JNI.MD_SIZE + JNI.MD_DROPS);
+            if (drops != 0) {
+                nd = dropped(drops);
+            }
+        }
+        final double g = gain;
+        final CongestionDetector d = detector;
+        if (g != 0 || d != null) {
+            long segs = 0;
+            long ce = 0;
+            for (i = 0; i < n; ++i) {
+                final int off = i * JNI.MD_SIZE;
+                final short tcv = md.getShort(off + JNI.MD_TC);
+                final int k = segments(md.getInt(off + JNI.MD_LEN), md.getInt(off + JNI.MD_SEGSZ));
+                final boolean mark = (tcv & 0xFF00) == JNI.MD_TC_VALID && (tcv & 3) == 3;
+                segs += k;
+                if (mark) {
+                    ce += k;
+                }
+                if (d != null) {
+                    d.received(mark, k);
                 }
             }
+            if (g != 0 && segs > 0) {
+                estimate(g, segs, ce);
+            }
+        }
+        if (active == null) {
+            return;
         }
+        final long e = startEpoch.getAndIncrement();
+        try {
+            final Period p = active;
+            if (p != null) {
+                for (i = 0; i < n; ++i) {
+                    final int off = i * JNI.MD_SIZE;
+                    final short tcv = md.getShort(off + JNI.MD_TC);
+                    p.count((tcv & 0xFF00) == JNI.MD_TC_VALID, (byte) tcv,
+                      md.getInt(off + JNI.MD_LEN), md.getInt(off + JNI.MD_SEGSZ));
+                }
+                if (nd > 0) {
+                    p.drops.add(nd);
+                }
+            }
+        } finally {
+            (e < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+        }
+    }
+
+    /**
+     * Advances the drop mark to the given kernel drop counter.
+     *
+     * @param drops kernel drop counter reported with a datagram
+     * @return number of drops since the mark, 0 if not advanced
+     */
+    private int dropped(final int drops) {
+        int mark;
+        int nd;
+        // unsigned, wrapping, and concurrent receivers may see them out of order
+        while ((nd = drops - (mark = dropMark.get())) > 0) {
+            if (dropMark.compareAndSet(mark, drops)) {
+                return nd;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Applies k per-packet EWMA steps α ← α + g·(mark − α) at once, in
+     * closed form, treating the c marks as spread evenly over the k
+     * packets: α ← (1 − g)ᵏ·α + (1 − (1 − g)ᵏ)·c/k
+     */
+    private void estimate(final double g, final long k, final long c) {
+        final double keep = k == 1 ? 1.0 - g : Math.pow(1.0 - g, k);
+        final double target = (double) c / (double) k;
+        long prev;
+        long next;
+        do {
+            prev = alpha.get();
+            next = Double.doubleToRawLongBits(target + keep * (Double.longBitsToDouble(prev) - target));
+        } while (!alpha.compareAndSet(prev, next));
+    }
+
+    /**
+     * Starts (or restarts, resetting α to 0) the congestion estimator.
+     *
+     * @param g gain per received packet, 0 &lt; g ≤ 1
+     * @throws IllegalArgumentException if g is out of range
+     */
+    public void startEstimating(final double g) {
+        if (!(g > 0 && g <= 1)) {
+            throw new IllegalArgumentException("gain out of range: " + g);
+        }
+        gain = 0;
+        alpha.set(Double.doubleToRawLongBits(0.0));
+        gain = g;
     }
 
     /**
-     * Starts/stops live measuring and provides statistics of received packets.
+     * Sets or removes the CE onset/offset detector.
+     *
+     * @param d detector, updated from the receive path, or null
+     */
+    public void setDetector(final CongestionDetector d) {
+        detector = d;
+    }
+
+    /**
+     * Stops the congestion estimator.
+     */
+    public void stopEstimating() {
+        gain = 0;
+    }
+
+    /**
+     * Returns the current congestion estimate.
+     *
+     * @return α, or NaN unless estimating
+     */
+    public double estimate() {
+        return gain == 0 ? Double.NaN : Double.longBitsToDouble(alpha.get());
+    }
+
+    /**
+     * Calculates the number of on-wire datagrams a received one represents.
+     *
+     * @param len   length of the received datagram
+     * @param segsz UDP GRO segment size, 0 if not coalesced
+     * @return number of segments, at least 1
+     */
+    static int segments(final int len, final int segsz) {
+        return segsz > 0 && len > segsz ? (len + segsz - 1) / segsz : 1;
+    }
+
+    /**
+     * Determines the size histogram bucket for a datagram: bucket 0 holds
+     * empty datagrams, bucket i those of 2ⁱ⁻¹ to 2ⁱ−1 octets, the last
+     * bucket also all larger ones.
+     *
+     * @param len length of the (segment of the) datagram
+     * @return index into the size histogram
+     */
+    static int sizeBucket(final int len) {
+        return Math.min(32 - Integer.numberOfLeadingZeros(len), NSIZES - 1);
+    }
+
+    /**
+     * Starts/stops live measuring and provides statistics of received packets,
+     * using a session of its own, independent of {@link #openSession()}.
+     *
+     * Only concurrent calls to this method are serialised; receivers
+     * continue counting, into the new period, while it runs.
      *
      * @param start whether to start/continue measuring after this
-     * @param cont  (set this to true)
      * @return statistics about the last period; nil unless measuring
-     * @throws ArithmeticException if too many packets were received during the interval
-     */
-    public ECNStatistics doMeasuring(final boolean start, final boolean cont) {
-        ECNStatistics rv = null;
-        final int measured;
-        synchronized (this) {
-            // timestamp quickly
-            if (measuring > 0) {
-                rv = new ECNStatistics(measuredFrom, measurement);
+     */
+    public synchronized ECNStatistics doMeasuring(final boolean start) {
+        if (legacy == null) {
+            if (start) {
+                legacy = openSession();
             }
-            // save old state
-            measured = measuring;
-            // start new cycle
-            measuring = start ? (byte) 1 : (byte) 0;
-            measurement[0] = 0;
-            measurement[1] = 0;
-            // timestamp just as we’re leaving the synchronised section
-            measuredFrom = System.nanoTime();
-        }
-        // new period is started, let’s return information about past period
-        if (cont && measured > 1) {
-            throw new ArithmeticException("too many packets during measurement period");
+            return null;
+        }
+        final ECNStatistics rv = measure(legacy, true);
+        if (!start) {
+            close(legacy);
+            legacy = null;
         }
         return rv;
     }
+
+    /**
+     * Opens a new measurement session, whose period starts now.
+     *
+     * @return session handle, to be closed after use
+     */
+    public synchronized ECNMeasurementSession openSession() {
+        fold(true);
+        final ECNMeasurementSession session = new ECNMeasurementSession(this);
+        session.base.set(totals);
+        session.start = System.nanoTime();
+        ++nsessions;
+        return session;
+    }
+
+    // cf. ECNMeasurementSession#getMeasurement(boolean)
+    synchronized ECNStatistics measure(final ECNMeasurementSession session, final boolean reset) {
+        if (!session.open) {
+            return null;
+        }
+        fold(true);
+        final ECNStatistics rv = totals.since(session.start, session.base);
+        if (reset) {
+            session.base.set(totals);
+            session.start = System.nanoTime();
+        }
+        return rv;
+    }
+
+    // cf. ECNMeasurementSession#close()
+    synchronized void close(final ECNMeasurementSession session) {
+        if (!session.open) {
+            return;
+        }
+        session.open = false;
+        fold(--nsessions > 0);
+    }
+
+    // moves everything counted so far into totals; must hold the monitor
+    private void fold(final boolean counting) {
+        final Period old = active;
+        cur ^= 1;
+        active = counting ? periods[cur] : null;
+        if (old != null) {
+            flip();
+            old.drainTo(totals);
+        }
+    }
+
+    // waits until all writers that entered before have left; must hold the monitor
+    private void flip() {
+        final boolean nextOdd = startEpoch.get() >= 0;
+        final long initial = nextOdd ? Long.MIN_VALUE : 0;
+        (nextOdd ? oddEndEpoch : evenEndEpoch).set(initial);
+        final long startAtFlip = startEpoch.getAndSet(initial);
+        final AtomicLong endEpoch = nextOdd ? evenEndEpoch : oddEndEpoch;
+        while (endEpoch.get() != startAtFlip) {
+            Thread.yield();
+        }
+    }
 }
@@ -0,0 +1,181 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Approximate analytics about the senders of the traffic received by an
+ * unconnected channel during a period, cf. {@link
+ * ECNBitsDatagramChannel#getSenderReport(boolean)}: the heaviest senders
+ * by packets, bytes and CE-marked packets, and the number of distinct
+ * senders.
+ *
+ * The per-sender figures are count-min sketch estimates, that is, they
+ * can overestimate (by hash collisions with other senders) but never
+ * underestimate; the distinct sender count is a HyperLogLog estimate,
+ * with a standard error of about 1.6%.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public final class ECNSenderReport {
+    /**
+     * Estimated traffic from one sender
+     */
+    public static final class Sender {
+        private final InetSocketAddress address;
+        private final long packets;
+        private final long bytes;
+        private final long congested;
+
+        Sender(final InetSocketAddress address, final long packets, final long bytes, final long congested) {
+            this.address = address;
+            this.packets = packets;
+            this.bytes = bytes;
+            this.congested = congested;
+        }
+
+        /**
+         * Returns the address and port of the sender
+         *
+         * @return sender address
+         */
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        /**
+         * Returns the estimated number of packets received from the sender
+         *
+         * @return packets, at least the actual number
+         */
+        public long getPackets() {
+            return packets;
+        }
+
+        /**
+         * Returns the estimated number of payload bytes received from the sender
+         *
+         * @return bytes, at least the actual number
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the estimated number of packets received from the sender
+         * that had the ECN CE mark
+         *
+         * @return congested packets, at least the actual number
+         */
+        public long getCongestedPackets() {
+            return congested;
+        }
+
+        @Override
+        public String toString() {
+            return address + ": " + packets + " packets, " + bytes + " bytes, " + congested + " CE";
+        }
+    }
+
+    private final long nanoStart;
+    private final long nanoEnd;
+    private final long distinct;
+    private final List<Sender> byPackets;
+    private final List<Sender> byBytes;
+    private final List<Sender> byCongestion;
+
+    ECNSenderReport(final long start, final long distinct, final List<Sender> byPackets,
+      final List<Sender> byBytes, final List<Sender> byCongestion) {
+        nanoEnd = System.nanoTime();
+        nanoStart = start;
+        this.distinct = distinct;
+        this.byPackets = Collections.unmodifiableList(byPackets);
+        this.byBytes = Collections.unmodifiableList(byBytes);
+        this.byCongestion = Collections.unmodifiableList(byCongestion);
+    }
+
+    /**
+     * Returns the timestamp of the start of the period
+     *
+     * @return nanoseconds since the epoch (1970)
+     */
+    public long getStartOfMeasuringPeriod() {
+        return ECNStatistics.NANO_OFFSET + nanoStart;
+    }
+
+    /**
+     * Returns the timestamp of the end of the period
+     *
+     * @return nanoseconds since the epoch (1970)
+     */
+    public long getEndOfMeasuringPeriod() {
+        return ECNStatistics.NANO_OFFSET + nanoEnd;
+    }
+
+    /**
+     * Returns the length of the period
+     *
+     * @return nanoseconds since the starting timestamp
+     */
+    public long getLengthOfMeasuringPeriod() {
+        return nanoEnd - nanoStart;
+    }
+
+    /**
+     * Returns the estimated number of distinct senders (address and port)
+     *
+     * @return HyperLogLog estimate
+     */
+    public long getDistinctSenders() {
+        return distinct;
+    }
+
+    /**
+     * Returns the senders of the most packets, heaviest first
+     *
+     * @return up to top-K senders
+     */
+    public List<Sender> getTopByPackets() {
+        return byPackets;
+    }
+
+    /**
+     * Returns the senders of the most payload bytes, heaviest first
+     *
+     * @return up to top-K senders
+     */
+    public List<Sender> getTopByBytes() {
+        return byBytes;
+    }
+
+    /**
+     * Returns the senders of the most CE-marked packets, heaviest first
+     *
+     * @return up to top-K senders
+     */
+    public List<Sender> getTopByCongestion() {
+        return byCongestion;
+    }
+}
@@ -0,0 +1,408 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.logging.Level;
+
+/**
+ * Receives on one local port with several {@link ECNBitsDatagramChannel}s
+ * sharing it via SO_REUSEPORT, each read by its own thread, so that
+ * receiving scales across cores instead of serialising on one socket.
+ *
+ * The kernel distributes datagrams over the shards by a hash of the
+ * sender by default; {@link Steering#FLOW} attaches a classic BPF
+ * program doing so deterministically (all datagrams of a sender land
+ * on the same shard, as long as the shard count does not change), and
+ * {@link Steering#CPU} one choosing the shard by the CPU the datagram
+ * was received on, so a shard thread pinned there stays cache-local:
+ * with as many shards as CPUs (and the NIC’s receive queue interrupts
+ * spread over them), {@code start(handler, true)} pins the reader of
+ * shard n to CPU n, processing every datagram on the core that took
+ * its interrupt. {@link ECNBitsSocketOptions#SO_INCOMING_CPU} tells
+ * which CPU that was for a shard, e.g. to verify the topology.
+ *
+ * Every shard counts ECN statistics on its own channel, lock-free as
+ * usual; {@link #getMeasurement(boolean)} merges them on demand, thus
+ * the shards never contend with each other on the receive path.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+@Log
+public final class ECNShardedListener implements AutoCloseable {
+    // one maximum-sized datagram
+    private static final int BUFSIZE = 65536;
+
+    /**
+     * How received datagrams are distributed over the shards
+     */
+    public enum Steering {
+        /**
+         * The kernel’s default SO_REUSEPORT hash of the 4-tuple
+         */
+        KERNEL,
+        /**
+         * By sender address and port, via a classic BPF program
+         */
+        FLOW,
+        /**
+         * By the receiving CPU, modulo the shard count
+         */
+        CPU
+    }
+
+    /**
+     * Handles the datagrams received by a shard
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Called on the shard’s reader thread for every datagram;
+         * calls for the same shard never overlap, calls for different
+         * shards do. The buffer is reused after this returns.
+         *
+         * @param shard   index of the shard that received the datagram
+         * @param channel of the shard, e.g. to reply on
+         * @param data    payload, from position to limit
+         * @param sender  address and port the datagram came from
+         */
+        void received(int shard, ECNBitsDatagramChannel channel, ByteBuffer data,
+          InetSocketAddress sender);
+    }
+
+    private final ECNBitsDatagramChannel[] channels;
+    private final InetSocketAddress local;
+
+    // -- The following fields are protected by this
+
+    private Thread[] threads;
+    private ECNMeasurementSession[] sessions;
+    private boolean closed = false;
+
+    // -- End of fields protected by this
+
+    /**
+     * Opens the shards, binds them all to the same local address and,
+     * unless {@link Steering#KERNEL}, attaches the steering program.
+     *
+     * @param local    address to bind to; port 0 picks one for all shards
+     * @param shards   number of shards, positive, e.g. the CPU count
+     * @param steering how to distribute datagrams over the shards
+     * @throws IOException if opening, binding or steering fails
+     */
+    public ECNShardedListener(final InetSocketAddress local, final int shards,
+      final Steering steering) throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
+        if (steering == null) {
+            throw new NullPointerException();
+        }
+        channels = new ECNBitsDatagramChannel[shards];
+        try {
+            InetSocketAddress bindTo = local;
+            for (int i = 0; i < shards; ++i) {
+                channels[i] = ECNBitsDatagramChannel.open();
+                channels[i].setOption(ECNBitsSocketOptions.SO_REUSEPORT, true);
+                channels[i].bind(bindTo);
+                if (i == 0) {
+                    // the remaining shards must join the same port
+                    bindTo = (InetSocketAddress) channels[0].getLocalAddress();
+                }
+            }
+            this.local = (InetSocketAddress) channels[0].getLocalAddress();
+            switch (steering) {
+            case FLOW:
+                ((ECNBitsDatagramChannelImpl) channels[0]).steerReusePort(JNI.REUSEPORT_FLOW, shards);
+                break;
+            case CPU:
+                ((ECNBitsDatagramChannelImpl) channels[0]).steerReusePort(JNI.REUSEPORT_CPU, shards);
+                break;
+            default:
+                break;
+            }
+        } catch (IOException | RuntimeException e) {
+            closeChannels(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts one reader thread per shard, each receiving into its own
+     * direct buffer and calling the handler; may be called only once.
+     * Alternatively, the channels may be read by the caller’s threads.
+     *
+     * @param handler to call for every received datagram
+     */
+    public void start(final Handler handler) {
+        start(handler, false);
+    }
+
+    /**
+     * Starts one reader thread per shard, like {@link #start(Handler)},
+     * optionally pinning the reader of shard n to CPU n, which matches
+     * {@link Steering#CPU} with one shard per CPU. Failing to pin (e.g.
+     * because the CPU is not in the process’ affinity mask) is logged,
+     * the reader then runs unpinned.
+     *
+     * @param handler to call for every received datagram
+     * @param pin     whether to pin the reader threads
+     */
+    public synchronized void start(final Handler handler, final boolean pin) {
+        if (handler == null) {
+            throw new NullPointerException();
+        }
+        if (closed) {
+            throw new IllegalStateException("listener closed");
+        }
+        if (threads != null) {
+            throw new IllegalStateException("already started");
+        }
+        threads = new Thread[channels.length];
+        for (int i = 0; i < channels.length; ++i) {
+            final int shard = i;
+            threads[i] = new Thread(() -> {
+                if (pin) {
+                    try {
+                        pinCurrentThread(shard);
+                    } catch (IOException e) {
+                        LOG.log(Level.WARNING, "cannot pin shard " + shard, e);
+                    }
+                }
+                read(shard, handler);
+            }, "ECNShardedListener-" + i);
+            threads[i].setDaemon(true);
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Pins the calling thread to one CPU (sched_setaffinity(2)), e.g.
+     * a reader thread to the CPU its channel’s datagrams are processed
+     * on, cf. {@link ECNBitsSocketOptions#SO_INCOMING_CPU}.
+     *
+     * @param cpu number, from 0
+     * @throws IOException if the CPU does not exist or is not allowed
+     */
+    public static void pinCurrentThread(final int cpu) throws IOException {
+        JNI.n_setaffinity(cpu);
+    }
+
+    /**
+     * Returns the CPU the calling thread currently runs on
+     * (sched_getcpu(3)), which is only stable if it is pinned.
+     *
+     * @return CPU number, or −1 if unknown
+     */
+    public static int getCurrentCpu() {
+        return JNI.n_getcpu();
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return shard count
+     */
+    public int getShardCount() {
+        return channels.length;
+    }
+
+    /**
+     * Returns the channel of one shard, e.g. to set further options.
+     *
+     * @param shard index, from 0 to {@link #getShardCount()} − 1
+     * @return channel
+     */
+    public ECNBitsDatagramChannel getChannel(final int shard) {
+        return channels[shard];
+    }
+
+    /**
+     * Returns the local address all shards are bound to.
+     *
+     * @return address, with the actual port
+     */
+    public InetSocketAddress getLocalAddress() {
+        return local;
+    }
+
+    /**
+     * Starts (or restarts) measuring on all shards, opening one
+     * {@link ECNMeasurementSession} per shard, so that measurements
+     * by other users of the channels are not disturbed.
+     */
+    public synchronized void startMeasurement() {
+        if (closed) {
+            throw new IllegalStateException("listener closed");
+        }
+        closeSessions();
+        sessions = new ECNMeasurementSession[channels.length];
+        for (int i = 0; i < channels.length; ++i) {
+            sessions[i] = channels[i].openMeasurementSession();
+        }
+    }
+
+    /**
+     * Retrieves the measurement data of every shard since measuring
+     * started or was last reset, optionally resetting it.
+     *
+     * @param reset whether to start a new period
+     * @return {@link ECNStatistics} per shard, or null if not measuring
+     */
+    public synchronized ECNStatistics[] getShardMeasurements(final boolean reset) {
+        if (sessions == null) {
+            return null;
+        }
+        final ECNStatistics[] rv = new ECNStatistics[sessions.length];
+        for (int i = 0; i < sessions.length; ++i) {
+            rv[i] = sessions[i].getMeasurement(reset);
+            if (rv[i] == null) {
+                // channel closed
+                return null;
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Retrieves the measurement data of all shards merged, since
+     * measuring started or was last reset, optionally resetting it.
+     *
+     * @param reset whether to start a new period
+     * @return merged {@link ECNStatistics}, or null if not measuring
+     */
+    public ECNStatistics getMeasurement(final boolean reset) {
+        final ECNStatistics[] parts = getShardMeasurements(reset);
+        return parts == null ? null : ECNStatistics.merge(parts);
+    }
+
+    /**
+     * Closes all shards and waits for their reader threads to finish.
+     *
+     * @throws IOException if closing a channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        final Thread[] toJoin;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeSessions();
+            sessions = null;
+            toJoin = threads;
+        }
+        IOException failure = null;
+        for (final ECNBitsDatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (toJoin != null) {
+            boolean interrupted = false;
+            for (final Thread thread : toJoin) {
+                if (thread == Thread.currentThread()) {
+                    continue;
+                }
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // must hold this
+    private void closeSessions() {
+        if (sessions != null) {
+            for (final ECNMeasurementSession session : sessions) {
+                session.close();
+            }
+        }
+    }
+
+    private void closeChannels(final Exception cause) {
+        for (final ECNBitsDatagramChannel channel : channels) {
+            if (channel == null) {
+                continue;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    private void read(final int shard, final Handler handler) {
+        final ECNBitsDatagramChannel channel = channels[shard];
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFSIZE);
+        while (channel.isOpen()) {
+            buf.clear();
+            final InetSocketAddress sender;
+            try {
+                sender = (InetSocketAddress) channel.receive(buf);
+            } catch (ClosedChannelException e) {
+                // includes AsynchronousCloseException from close()
+                break;
+            } catch (IOException e) {
+                if (!channel.isOpen()) {
+                    break;
+                }
+                LOG.log(Level.WARNING, "receive on shard " + shard, e);
+                continue;
+            }
+            if (sender == null) {
+                continue;
+            }
+            buf.flip();
+            try {
+                handler.received(shard, channel, buf, sender);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "handler on shard " + shard, e);
+            }
+        }
+    }
+}
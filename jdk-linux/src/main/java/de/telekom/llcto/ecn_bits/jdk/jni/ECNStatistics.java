@@ -35,7 +35,7 @@ public class ECNStatistics {
      *
      * The year 2106 in nanoseconds since 1970 fits into 62 bits.
      */
-    private static final long NANO_OFFSET;
+    static final long NANO_OFFSET;
 
     static {
         // this initialisation code is *carefully* tweaked for precision
@@ -46,20 +46,87 @@ public class ECNStatistics {
 
     private final long nanoStart;
     private final long nanoEnd;
-    private final int congested;
-    private final int packets;
+    private final long[] counts;
+    private final long[] bytes;
+    private final long[] sizes;
+    private final long packets;
+    private final long octets;
+    private final long drops;
 
     /**
      * Private constructor for an ECN-Bits statistics measurement structure
      *
-     * @param start       timestamp
-     * @param measurement of packets
+     * @param start  timestamp
+     * @param counts of packets, per ECN bits, then without traffic class
+     * @param bytes  received, indexed like counts
+     * @param sizes  histogram of packet sizes, cf. {@link #getSizeHistogram()}
+     * @param drops  packets dropped by the kernel
      */
-    public ECNStatistics(final long start, final int[] measurement) {
+    ECNStatistics(final long start, final long[] counts, final long[] bytes, final long[] sizes,
+      final long drops) {
         nanoEnd = System.nanoTime();
         nanoStart = start;
-        congested = measurement[1];
-        packets = measurement[0] + measurement[1];
+        this.counts = counts;
+        this.bytes = bytes;
+        this.sizes = sizes;
+        packets = sum(counts);
+        octets = sum(bytes);
+        this.drops = drops;
+    }
+
+    /**
+     * Public constructor for an ECN-Bits statistics measurement structure
+     * from packet counts only; the non-congested packets are accounted as
+     * of unknown codepoint, all byte counts and the size histogram are 0
+     *
+     * @param start       timestamp
+     * @param measurement of packets: non-congested, congested
+     * @deprecated carries no per-codepoint counts, bytes or sizes;
+     * statistics are normally obtained from the channel
+     */
+    @Deprecated
+    public ECNStatistics(final long start, final int[] measurement) {
+        this(start, legacyCounts(measurement), new long[ECNMeasurer.NCOUNTERS],
+          new long[ECNMeasurer.NSIZES], 0);
+    }
+
+    private static long[] legacyCounts(final int[] measurement) {
+        final long[] counts = new long[ECNMeasurer.NCOUNTERS];
+        counts[ECNMeasurer.UNKNOWN] = measurement[0];
+        counts[Bits.CE.getBits()] = measurement[1];
+        return counts;
+    }
+
+    /**
+     * Sums up statistics of several receivers measured over roughly the
+     * same period, e.g. the shards of an {@link ECNShardedListener}; the
+     * merged period starts with the earliest one and ends now.
+     *
+     * @param parts statistics to merge, at least one
+     * @return merged statistics
+     */
+    static ECNStatistics merge(final ECNStatistics[] parts) {
+        final ECNStatistics first = parts[0];
+        final long[] counts = new long[first.counts.length];
+        final long[] bytes = new long[first.bytes.length];
+        final long[] sizes = new long[first.sizes.length];
+        long start = first.nanoStart;
+        long drops = 0;
+        for (final ECNStatistics part : parts) {
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] += part.counts[i];
+                bytes[i] += part.bytes[i];
+            }
+            for (int i = 0; i < sizes.length; ++i) {
+                sizes[i] += part.sizes[i];
+            }
+            // nanoTime values may wrap, compare by difference
+            if (part.nanoStart - start < 0) {
+                start = part.nanoStart;
+            }
+            drops += part.drops;
+        }
+        return new ECNStatistics(start, counts, bytes, sizes, drops);
     }
 
     /**
@@ -93,22 +160,149 @@ public class ECNStatistics {
      * Returns the number of packets which had the ECN CE mark
      * that were received during the measuring period
      *
-     * @return number of congested packets
+     * @return number of congested packets, saturated to {@link Integer#MAX_VALUE}
+     * @see #getCongestedPacketCount()
      */
     public int getCongestedPackets() {
-        return congested;
+        return saturate(getCongestedPacketCount());
     }
 
     /**
      * Returns the total number of packets
      * that were received during the measuring period
      *
-     * @return total number of packets received
+     * @return total number of packets received, saturated to {@link Integer#MAX_VALUE}
+     * @see #getReceivedPacketCount()
      */
     public int getReceivedPackets() {
+        return saturate(packets);
+    }
+
+    /**
+     * Returns the number of packets which had the ECN CE mark
+     * that were received during the measuring period
+     *
+     * @return number of congested packets
+     */
+    public long getCongestedPacketCount() {
+        return getPackets(Bits.CE);
+    }
+
+    /**
+     * Returns the total number of packets
+     * that were received during the measuring period
+     *
+     * @return total number of packets received
+     */
+    public long getReceivedPacketCount() {
         return packets;
     }
 
+    /**
+     * Returns the number of packets with the given ECN bits
+     * that were received during the measuring period
+     *
+     * @param bits ECN codepoint
+     * @return number of packets received with that codepoint
+     */
+    public long getPackets(final Bits bits) {
+        return counts[bits.getBits()];
+    }
+
+    /**
+     * Returns the number of packets whose traffic class could not be
+     * determined that were received during the measuring period;
+     * these count as not congested
+     *
+     * @return number of packets received without traffic class
+     */
+    public long getUnknownPackets() {
+        return counts[ECNMeasurer.UNKNOWN];
+    }
+
+    /**
+     * Returns the number of packets the kernel dropped during the measuring
+     * period because the socket receive buffer was full, e.g. while the
+     * application did not read for a while; not included in the other
+     * counts (nor tracked per peer)
+     *
+     * @return number of packets lost locally
+     */
+    public long getDroppedPackets() {
+        return drops;
+    }
+
+    /**
+     * Returns the number of payload bytes in packets which had the
+     * ECN CE mark that were received during the measuring period
+     *
+     * @return number of congested bytes
+     */
+    public long getCongestedBytes() {
+        return getBytes(Bits.CE);
+    }
+
+    /**
+     * Returns the total number of payload bytes
+     * that were received during the measuring period
+     *
+     * @return total number of bytes received
+     */
+    public long getReceivedBytes() {
+        return octets;
+    }
+
+    /**
+     * Returns the number of payload bytes in packets with the given
+     * ECN bits that were received during the measuring period
+     *
+     * @param bits ECN codepoint
+     * @return number of bytes received with that codepoint
+     */
+    public long getBytes(final Bits bits) {
+        return bytes[bits.getBits()];
+    }
+
+    /**
+     * Returns the number of payload bytes in packets whose traffic class
+     * could not be determined that were received during the measuring period
+     *
+     * @return number of bytes received without traffic class
+     */
+    public long getUnknownBytes() {
+        return bytes[ECNMeasurer.UNKNOWN];
+    }
+
+    /**
+     * Returns the histogram of the sizes of the packets received during
+     * the measuring period, with power-of-two buckets: index 0 counts
+     * empty packets, index i those with 2ⁱ⁻¹ to 2ⁱ−1 payload bytes
+     * (the last index, 16, thus 32768 bytes and more)
+     *
+     * @return copy of the histogram, 17 buckets
+     */
+    public long[] getSizeHistogram() {
+        return sizes.clone();
+    }
+
+    /**
+     * Returns the average packet rate during the measuring period
+     *
+     * @return packets per second
+     */
+    public double getPacketRate() {
+        return perSecond(packets);
+    }
+
+    /**
+     * Returns the average payload throughput during the measuring period
+     *
+     * @return bytes per second
+     */
+    public double getByteRate() {
+        return perSecond(octets);
+    }
+
     /**
      * Returns the congestion factor, that is,
      * how many packets received during the measuring period
@@ -120,6 +314,55 @@ public class ECNStatistics {
         if (packets == 0) {
             return 0;
         }
-        return (double) congested / (double) packets;
+        return (double) getCongestedPacketCount() / (double) packets;
+    }
+
+    /**
+     * Returns the byte-weighted congestion factor, that is,
+     * how many of the payload bytes received during the measuring
+     * period were in packets that had the ECN CE mark
+     *
+     * @return 0 ≤ factor ≤ 1
+     */
+    public double getByteCongestionFactor() {
+        if (octets == 0) {
+            return 0;
+        }
+        return (double) getCongestedBytes() / (double) octets;
+    }
+
+    /**
+     * Returns the local loss factor, that is, how many of the packets
+     * that arrived during the measuring period the kernel dropped
+     * because the socket receive buffer was full
+     *
+     * @return 0 ≤ factor ≤ 1
+     * @see #getDroppedPackets()
+     */
+    public double getLossFactor() {
+        if (packets + drops == 0) {
+            return 0;
+        }
+        return (double) drops / (double) (packets + drops);
+    }
+
+    private double perSecond(final long n) {
+        final long len = getLengthOfMeasuringPeriod();
+        if (len <= 0) {
+            return 0;
+        }
+        return (double) n * 1.0e9 / (double) len;
+    }
+
+    private static long sum(final long[] values) {
+        long rv = 0;
+        for (final long v : values) {
+            rv += v;
+        }
+        return rv;
+    }
+
+    private static int saturate(final long v) {
+        return (int) Math.min(v, Integer.MAX_VALUE);
     }
 }
@@ -0,0 +1,174 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reusable holder for one record of a channel’s per-datagram trace,
+ * cf. {@link ECNBitsDatagramChannel#setTrace(int)}: when the datagram
+ * was received, its traffic class octet, its length and a compact ID
+ * of its sender.
+ *
+ * Instances are owned by the caller and filled in by the calls taking
+ * them; they can (and should) be reused across calls. An instance must
+ * not be filled in by more than one thread at a time.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public final class ECNTraceEntry {
+    private long sequence;
+    private long time;
+    private int senderId;
+    private int length;
+    private byte tc;
+    private boolean tcValid;
+    private int segmentSize;
+
+    /**
+     * Creates a new, empty, trace record holder.
+     */
+    public ECNTraceEntry() {
+    }
+
+    /**
+     * Returns the sequence number of the record; records are numbered
+     * consecutively from 0 as they are written, so gaps show records
+     * overwritten before being drained
+     *
+     * @return sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns when the datagram was received (by the kernel if receive
+     * timestamps are enabled, cf. {@link ECNBitsSocketOptions#SO_TIMESTAMPNS},
+     * else when the receive call returned), in the timebase of
+     * {@link System#nanoTime()}
+     *
+     * @return nanoTime timestamp
+     */
+    public long getNanoTime() {
+        return time;
+    }
+
+    /**
+     * Returns when the datagram was received
+     *
+     * @return timestamp in nanoseconds since the epoch
+     */
+    public long getTimestamp() {
+        return time + ECNStatistics.NANO_OFFSET;
+    }
+
+    /**
+     * Returns the compact ID of the sender of the datagram, a 32-bit
+     * hash of its address and port, which can be compared with the
+     * result of {@link #senderId(InetSocketAddress)}; unequal senders
+     * may, rarely, share an ID
+     *
+     * @return sender ID, 0 if the sender is not known (connected channel)
+     */
+    public int getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * Returns the length of the datagram
+     *
+     * @return number of bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the UDP GRO segment size if the kernel coalesced several
+     * on-wire datagrams into this one, cf. {@link ECNBitsDatagramInfo#getSegmentSize()}
+     *
+     * @return segment size, or 0 if not coalesced
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Returns whether the traffic class octet could be determined
+     *
+     * @return true if {@link #getTrafficClass()} is valid
+     */
+    public boolean isTrafficClassValid() {
+        return tcValid;
+    }
+
+    /**
+     * Returns the traffic class octet the datagram was received with;
+     * only meaningful if {@link #isTrafficClassValid()} is true
+     *
+     * @return traffic class octet
+     */
+    public byte getTrafficClass() {
+        return tc;
+    }
+
+    /**
+     * Returns the ECN bits of the traffic class octet
+     *
+     * @return {@link Bits}; null if the tc could not be determined
+     */
+    public Bits getBits() {
+        return tcValid ? Bits.valueOf(tc) : null;
+    }
+
+    /**
+     * Computes the compact sender ID trace records use for a sender.
+     *
+     * @param sender address and port
+     * @return sender ID, never 0
+     */
+    public static int senderId(final InetSocketAddress sender) {
+        final ByteBuffer ab = ByteBuffer.wrap(JNI.AddrPort.addr(sender)).order(ByteOrder.nativeOrder());
+        return senderId(ab.getLong(0), ab.getLong(8), sender.getPort());
+    }
+
+    // from the address as two native-order longs, as in the metadata records
+    static int senderId(final long hi, final long lo, final int port) {
+        final long h = SenderSketch.hash(hi, lo, port);
+        final int id = (int) (h ^ (h >>> 32));
+        return id == 0 ? 1 : id;
+    }
+
+    void fill(final long seq, final long nanoTime, final int id, final int len,
+      final short tcv, final int segsz) {
+        sequence = seq;
+        time = nanoTime;
+        senderId = id;
+        length = len;
+        tc = (byte) tcv;
+        tcValid = (tcv & 0xFF00) == JNI.MD_TC_VALID;
+        segmentSize = segsz < len ? segsz : 0;
+    }
+}
@@ -65,6 +65,17 @@ final class JNI {
     static final int SO_REUSEADDR = 3;
     static final int SO_SNDBUF = 4;
     static final int IPV6_MULTICAST_HOPS = 5;
+    static final int UDP_SEGMENT = 6; // getsockopt only, to probe for GSO
+    static final int UDP_GRO = 7;
+    static final int SO_TIMESTAMPNS = 8;
+    static final int SO_BUSY_POLL = 9;
+    static final int SO_PREFER_BUSY_POLL = 10;
+    static final int SO_REUSEPORT = 11;
+    static final int SO_INCOMING_CPU = 12;
+
+    // n_reuseport steering modes, keep in sync with C code!
+    static final int REUSEPORT_FLOW = 1;
+    static final int REUSEPORT_CPU = 2;
 
     // return values for error codes, keep in sync with C code!
     // -1 = EOF
@@ -74,6 +85,63 @@ final class JNI {
     static final int EAVAIL = -2;
     static final int EINTR = -3;
     // -4 = exception thrown in native code, never seen in Java™
+    /**
+     * offload (e.g. UDP GSO) refused by the kernel, fall back
+     */
+    static final int ENOTSUP = -5;
+    /**
+     * offload refused for this call only (e.g. segments above the path MTU)
+     */
+    static final int EINVAL = -6;
+
+    // per-datagram metadata record in a native-order direct ByteBuffer,
+    // keep in sync with struct ecnbits_md in C code!
+    static final int MD_ADDR = 0; // 16 bytes in network order, v4-mapped or IPv6 address
+    static final int MD_PORT = 16; // int, port in host order
+    static final int MD_SCOPE = 20; // int, IPv6 scope ID (numeric); -1 if not set
+    static final int MD_LEN = 24; // int, length of the datagram
+    static final int MD_TC = 28; // short, traffic class octet and validity bits
+    static final int MD_FLAGS = 30; // short, MDF_* flags
+    static final int MD_SEGSZ = 32; // int, UDP GRO segment size; 0 if not coalesced
+    static final int MD_DROPS = 36; // int, the socket’s kernel drop counter (unsigned, wraps); 0 if none
+    static final int MD_TSTAMP = 40; // long, kernel receive timestamp in ns since the epoch; 0 if none
+    static final int MD_SIZE = 48;
+    // MD_FLAGS bits
+    static final int MDF_SENDER = 0x0001; // MD_ADDR, MD_PORT, MD_SCOPE are valid (sender or destination)
+    static final int MDF_TRUNC = 0x0002; // datagram was truncated
+    // MD_TC validity: (short)(tc | ECNBITS_ISVALID_BIT) if valid; for sending, if to be set
+    static final int MD_TC_VALID = 0x0200;
+
+    /**
+     * Maximum number of datagrams transferred by one batch I/O call
+     */
+    static final int BATCH_MAX = 256;
+
+    // epoll(7) operations and event bits, passed through; keep in sync with C code!
+    static final int EPOLL_CTL_ADD = 1;
+    static final int EPOLL_CTL_DEL = 2;
+    static final int EPOLL_CTL_MOD = 3;
+    static final int EPOLLIN = 0x001;
+    static final int EPOLLOUT = 0x004;
+    static final int EPOLLERR = 0x008;
+    static final int EPOLLHUP = 0x010;
+    /**
+     * Maximum number of events returned by one epoll wait call
+     */
+    static final int EP_MAX = 1024;
+    /**
+     * Size of one (int fd, int events) record in the epoll wait buffer
+     */
+    static final int EP_SIZE = 8;
+
+    /**
+     * Maximum number of segments per UDP GSO send (UDP_MAX_SEGMENTS in Linux)
+     */
+    static final int GSO_MAX_SEGS = 64;
+    /**
+     * Maximum number of payload bytes per UDP GSO send (max. IPv4 UDP payload)
+     */
+    static final int GSO_MAX_BYTES = 65507;
 
     static String renderNativeExceptionMessage(final String file, final int line, final String func,
       final String msg, final String str) {
@@ -317,6 +385,9 @@ final class JNI {
         // not part of AddrPort but provided by the receiving JNI calls
         byte tc; // out
         boolean tcValid; // out
+        int segSize; // out, UDP GRO segment size; 0 if not coalesced
+        long tstamp; // out, kernel receive timestamp in ns since the epoch; 0 if none
+        int drops; // out, the socket’s kernel drop counter; 0 if none
 
         /**
          * Converts address part to native addr representation.
@@ -358,6 +429,22 @@ final class JNI {
             return nb;
         }
 
+        /**
+         * Stores address/scope/port tuple into a native metadata record.
+         *
+         * @param md  native-order metadata buffer, cf. {@link #MD_SIZE}
+         * @param off offset of the record in md
+         * @param isa {@link InetSocketAddress} to store
+         */
+        static void put(final ByteBuffer md, final int off, final InetSocketAddress isa) {
+            final byte[] ab = addr(isa);
+            for (int i = 0; i < 16; ++i) {
+                md.put(off + MD_ADDR + i, ab[i]);
+            }
+            md.putInt(off + MD_PORT, isa.getPort());
+            md.putInt(off + MD_SCOPE, scopeId(isa));
+        }
+
         /**
          * Retrieves the IPv6 scope ID of an IP address
          *
@@ -379,11 +466,12 @@ final class JNI {
         }
 
         /**
-         * Checks whether this 16-byte address is a v4-mapped IPv6 address.
+         * Checks whether a 16-byte address is a v4-mapped IPv6 address.
          *
+         * @param addr byte[16] in network order
          * @return true if it is a v4-mapped address
          */
-        private boolean isIPv4MappedAddress() {
+        private static boolean isIPv4MappedAddress(final byte[] addr) {
             return (addr[0] == 0x00) && (addr[1] == 0x00) &&
               (addr[2] == 0x00) && (addr[3] == 0x00) &&
               (addr[4] == 0x00) && (addr[5] == 0x00) &&
@@ -398,9 +486,20 @@ final class JNI {
          *
          * @return {@link Inet4Address} or (possibly scoped) {@link Inet6Address}
          */
-        @SneakyThrows(UnknownHostException.class)
         InetAddress getAddr() {
-            if (addr.length == 16 && (scopeId != -1 || !isIPv4MappedAddress())) {
+            return getAddr(addr, scopeId);
+        }
+
+        /**
+         * Converts a native addr representation to a form usable for Java™
+         *
+         * @param addr    byte[16] v4-mapped or IPv6 address in network order
+         * @param scopeId IPv6 scope ID (numeric); -1 if not set
+         * @return {@link Inet4Address} or (possibly scoped) {@link Inet6Address}
+         */
+        @SneakyThrows(UnknownHostException.class)
+        static InetAddress getAddr(final byte[] addr, final int scopeId) {
+            if (addr.length == 16 && (scopeId != -1 || !isIPv4MappedAddress(addr))) {
                 return Inet6Address.getByAddress(null, addr, scopeId);
             }
             return InetAddress.getByAddress(addr);
@@ -440,6 +539,12 @@ final class JNI {
 
     static native void n_sigtid(long tid) throws ErrnoException;
 
+    // pins the calling thread to one CPU
+    static native void n_setaffinity(final int cpu) throws ErrnoException;
+
+    // CPU the calling thread currently runs on, -1 if unknown
+    static native int n_getcpu();
+
     // +++ socket operations +++
 
     static native int n_socket() throws SocketException;
@@ -466,21 +571,31 @@ final class JNI {
 
     static native void n_disconnect(final int fd) throws SocketException;
 
+    // attaches a classic BPF program steering among nshards sockets
+    static native void n_reuseport(final int fd,
+      final int mode, final int nshards) throws SocketException;
+
+    // metadata into md (one record); connected: sender not reported
     static native int n_recv(final int fd,
       final ByteBuffer buf, final int bbpos, final int bbsize,
-      final AddrPort aptc, final boolean connected) throws SocketException;
+      final ByteBuffer md, final boolean connected) throws SocketException;
 
+    // tc < 0 uses the socket traffic class, else sends tc as ancillary data
     static native int n_send(final int fd,
       final ByteBuffer buf, final int bbpos, final int bbsize,
-      final byte[] addr, final int port, final int scopeId) throws SocketException;
+      final byte[] addr, final int port, final int scopeId,
+      final int tc) throws SocketException;
 
+    // metadata into md (one record); connected: sender not reported
     static native int n_recvfrom(final int fd,
       final byte[] buf, final int bufpos, final int len,
-      final AddrPort aptc, final boolean peekOnly, final boolean connected) throws SocketException;
+      final ByteBuffer md, final boolean peekOnly, final boolean connected) throws SocketException;
 
+    // tc as with n_send
     static native int n_sendto(final int fd,
       final byte[] buf, final int bufpos, final int len,
-      final byte[] addr, final int port, final int scopeId) throws SocketException;
+      final byte[] addr, final int port, final int scopeId,
+      final int tc) throws SocketException;
 
     static native long n_rd(final int fd,
       final SGIO[] bufs, final int nbufs, final AddrPort tc) throws SocketException;
@@ -489,10 +604,68 @@ final class JNI {
       final SGIO[] bufs,
       final byte[] addr, final int port, final int scopeId) throws SocketException;
 
+    // number of datagrams received, one into each bufs element, or EAVAIL, EINTR
+    static native int n_recvmmsg(final int fd,
+      final SGIO[] bufs, final int nbufs,
+      final ByteBuffer md, final boolean connected) throws SocketException;
+
+    // number of datagrams sent, one from each bufs element, or EAVAIL, EINTR
+    static native int n_sendmmsg(final int fd,
+      final SGIO[] bufs, final int nbufs,
+      final ByteBuffer md) throws SocketException;
+
+    // bytes sent as segsize-sized datagrams (the last may be shorter), or EAVAIL, EINTR, ENOTSUP, EINVAL
+    static native int n_sendgso(final int fd,
+      final ByteBuffer buf, final int bbpos, final int bbsize,
+      final byte[] addr, final int port, final int scopeId,
+      final int segsize) throws SocketException;
+
+    static native int n_epcreate() throws ErrnoException;
+
+    static native void n_epctl(final int epfd,
+      final int op, final int fd, final int events) throws ErrnoException;
+
+    // number of (fd, events) records stored into evbuf, or EINTR
+    static native int n_epwait(final int epfd,
+      final ByteBuffer evbuf, final int nevents, final int timeout) throws ErrnoException;
+
+    static native int n_evcreate() throws ErrnoException;
+
+    static native void n_evsignal(final int fd) throws ErrnoException;
+
+    static native void n_evdrain(final int fd) throws ErrnoException;
+
+    // io_uring handle for one direction, 0 if io_uring is unavailable
+    static native long n_uropen(final boolean rx);
+
+    static native void n_urclose(final long h);
+
+    // as n_recvmmsg, or ENOTSUP (use n_recvmmsg instead); block: wait for the first datagram
+    static native int n_urecvmmsg(final long h, final int fd,
+      final SGIO[] bufs, final int nbufs,
+      final ByteBuffer md, final boolean connected, final boolean block) throws SocketException;
+
+    // as n_pollin, but for the completions of the receive ring (which took the
+    // datagrams off the socket already): 1 (something to receive), 0, EINTR,
+    // THROWN or ENOTSUP (use n_pollin instead)
+    static native int n_urpollin(final long h, final int fd,
+      final int timeout) throws SocketException;
+
+    // as n_sendmmsg, via a linked chain of io_uring sendmsg operations
+    static native int n_usendmmsg(final long h, final int fd,
+      final SGIO[] bufs, final int nbufs,
+      final ByteBuffer md) throws SocketException;
+
+    // shutdown(2), to wake up threads waiting on an io_uring before close
+    static native void n_preclose(final int fd);
+
     // 1 (ok), 0 (timeout or POLLERR/POLLHUP/POLLNVAL), EINTR or THROWN
     static native int n_pollin(final int fd,
       final int timeout) throws SocketException;
 
+    // nonblocking: 1 (readable), 0 (not yet), 2 (POLLERR/POLLHUP/POLLNVAL), EINTR or THROWN
+    static native int n_pollrx(final int fd) throws SocketException;
+
     // +++ I/O operations +++
 
     static long ioresult(final long n) {
@@ -0,0 +1,267 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-sender ECN accounting for unconnected channels: an open-addressing
+ * hash table with linear probing (and backward-shift deletion), keyed by
+ * the 128-bit address and the port from the native metadata records, with
+ * all keys and counters in parallel primitive arrays, so the receive path
+ * neither allocates nor boxes.
+ *
+ * The number of peers is capped; entries not seen for the idle timeout are
+ * evicted when room for a new peer is needed (at most every eighth of the
+ * timeout, as that requires a sweep) and when all peers are retrieved. As
+ * long as no room can be made, datagrams from further peers are not
+ * accounted for per peer.
+ *
+ * Guarded by its own monitor, taken once per received datagram or batch.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+final class PeerTable {
+    /**
+     * Largest supported number of peers
+     */
+    static final int MAX_PEERS = 1 << 20;
+
+    private final int maxPeers;
+    private final long idleNanos;
+    private final int mask;
+    private final long[] addrHi;
+    private final long[] addrLo;
+    // port, or -1 if the slot is free
+    private final int[] port;
+    private final int[] scope;
+    // System.nanoTime() of the last datagram and of the period start
+    private final long[] seen;
+    private final long[] start;
+    // ECNMeasurer.NCOUNTERS per slot each
+    private final long[] counts;
+    private final long[] bytes;
+    private int size = 0;
+    private long lastSweep;
+
+    /**
+     * Creates a new table.
+     *
+     * @param maxPeers    maximum number of peers, 1 ≤ maxPeers ≤ {@link #MAX_PEERS}
+     * @param idleTimeout in nanoseconds, after which a silent peer may be evicted
+     * @throws IllegalArgumentException if out of range
+     */
+    PeerTable(final int maxPeers, final long idleTimeout) {
+        if (maxPeers < 1 || maxPeers > MAX_PEERS) {
+            throw new IllegalArgumentException("maxPeers out of range: " + maxPeers);
+        }
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("idle timeout must be positive");
+        }
+        this.maxPeers = maxPeers;
+        idleNanos = idleTimeout;
+        // load factor at most ½
+        final int cap = Integer.highestOneBit(maxPeers * 2 - 1) << 1;
+        mask = cap - 1;
+        addrHi = new long[cap];
+        addrLo = new long[cap];
+        port = new int[cap];
+        scope = new int[cap];
+        seen = new long[cap];
+        start = new long[cap];
+        counts = new long[cap * ECNMeasurer.NCOUNTERS];
+        bytes = new long[cap * ECNMeasurer.NCOUNTERS];
+        Arrays.fill(port, -1);
+        lastSweep = System.nanoTime();
+    }
+
+    /**
+     * Accounts a batch of received datagrams to their senders; records
+     * without sender (connected channel) are skipped.
+     *
+     * @param md native-order metadata buffer, cf. {@link JNI#MD_SIZE}
+     * @param n  number of datagrams received into md
+     */
+    synchronized void received(final ByteBuffer md, final int n) {
+        final long now = System.nanoTime();
+        for (int i = 0; i < n; ++i) {
+            final int off = i * JNI.MD_SIZE;
+            if ((md.getShort(off + JNI.MD_FLAGS) & JNI.MDF_SENDER) == 0) {
+                continue;
+            }
+            final long hi = md.getLong(off + JNI.MD_ADDR);
+            final long lo = md.getLong(off + JNI.MD_ADDR + 8);
+            final int p = md.getInt(off + JNI.MD_PORT);
+            int slot = find(hi, lo, p);
+            if (slot < 0) {
+                if (size >= maxPeers && now - lastSweep >= idleNanos / 8) {
+                    sweep(now);
+                }
+                if (size >= maxPeers) {
+                    continue;
+                }
+                slot = insert(~slot, hi, lo, p, md.getInt(off + JNI.MD_SCOPE), now);
+            }
+            final short tcv = md.getShort(off + JNI.MD_TC);
+            final int len = md.getInt(off + JNI.MD_LEN);
+            final int c = slot * ECNMeasurer.NCOUNTERS +
+              ((tcv & 0xFF00) == JNI.MD_TC_VALID ? tcv & 3 : ECNMeasurer.UNKNOWN);
+            counts[c] += ECNMeasurer.segments(len, md.getInt(off + JNI.MD_SEGSZ));
+            bytes[c] += len;
+            seen[slot] = now;
+        }
+    }
+
+    /**
+     * Returns the statistics of one peer, without size histogram.
+     *
+     * @param peer  sender address
+     * @param reset whether to start a new period for this peer
+     * @return statistics since the peer was first seen or last reset, or null if not tracked
+     */
+    synchronized ECNStatistics get(final InetSocketAddress peer, final boolean reset) {
+        final ByteBuffer ab = ByteBuffer.wrap(JNI.AddrPort.addr(peer)).order(ByteOrder.nativeOrder());
+        final int slot = find(ab.getLong(0), ab.getLong(8), peer.getPort());
+        return slot < 0 ? null : snapshot(slot, reset, System.nanoTime());
+    }
+
+    /**
+     * Returns the statistics of all peers, without size histogram,
+     * after evicting idle ones.
+     *
+     * @param reset whether to start a new period for all peers
+     * @return map from sender address to statistics
+     */
+    synchronized Map<InetSocketAddress, ECNStatistics> getAll(final boolean reset) {
+        final long now = System.nanoTime();
+        sweep(now);
+        final Map<InetSocketAddress, ECNStatistics> rv = new HashMap<>();
+        final ByteBuffer ab = ByteBuffer.allocate(16).order(ByteOrder.nativeOrder());
+        for (int slot = 0; slot <= mask; ++slot) {
+            if (port[slot] < 0) {
+                continue;
+            }
+            ab.putLong(0, addrHi[slot]).putLong(8, addrLo[slot]);
+            rv.put(new InetSocketAddress(JNI.AddrPort.getAddr(ab.array(), scope[slot]), port[slot]),
+              snapshot(slot, reset, now));
+        }
+        return rv;
+    }
+
+    private ECNStatistics snapshot(final int slot, final boolean reset, final long now) {
+        final int c = slot * ECNMeasurer.NCOUNTERS;
+        final ECNStatistics rv = new ECNStatistics(start[slot],
+          Arrays.copyOfRange(counts, c, c + ECNMeasurer.NCOUNTERS),
+          Arrays.copyOfRange(bytes, c, c + ECNMeasurer.NCOUNTERS),
+          new long[ECNMeasurer.NSIZES], 0);
+        if (reset) {
+            Arrays.fill(counts, c, c + ECNMeasurer.NCOUNTERS, 0L);
+            Arrays.fill(bytes, c, c + ECNMeasurer.NCOUNTERS, 0L);
+            start[slot] = now;
+        }
+        return rv;
+    }
+
+    private static int hash(final long hi, final long lo, final int p) {
+        long h = hi * 0x9E3779B97F4A7C15L + lo;
+        h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L + p;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (h ^ (h >>> 31));
+    }
+
+    // slot of the key, or ~(free slot to insert it at) if absent
+    private int find(final long hi, final long lo, final int p) {
+        int slot = hash(hi, lo, p) & mask;
+        while (port[slot] >= 0) {
+            if (port[slot] == p && addrHi[slot] == hi && addrLo[slot] == lo) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ~slot;
+    }
+
+    private int insert(final int slot, final long hi, final long lo, final int p,
+      final int sc, final long now) {
+        addrHi[slot] = hi;
+        addrLo[slot] = lo;
+        port[slot] = p;
+        scope[slot] = sc;
+        start[slot] = now;
+        final int c = slot * ECNMeasurer.NCOUNTERS;
+        Arrays.fill(counts, c, c + ECNMeasurer.NCOUNTERS, 0L);
+        Arrays.fill(bytes, c, c + ECNMeasurer.NCOUNTERS, 0L);
+        ++size;
+        return slot;
+    }
+
+    // evicts all peers idle for longer than the timeout
+    private void sweep(final long now) {
+        lastSweep = now;
+        int slot = 0;
+        while (slot <= mask) {
+            if (port[slot] >= 0 && now - seen[slot] > idleNanos) {
+                // re-examine the slot, another entry may have moved in
+                delete(slot);
+            } else {
+                ++slot;
+            }
+        }
+    }
+
+    // backward-shift deletion, keeping all probe sequences intact
+    private void delete(final int slot) {
+        int hole = slot;
+        int j = slot;
+        while (true) {
+            j = (j + 1) & mask;
+            if (port[j] < 0) {
+                break;
+            }
+            final int home = hash(addrHi[j], addrLo[j], port[j]) & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                move(j, hole);
+                hole = j;
+            }
+        }
+        port[hole] = -1;
+        --size;
+    }
+
+    private void move(final int from, final int to) {
+        addrHi[to] = addrHi[from];
+        addrLo[to] = addrLo[from];
+        port[to] = port[from];
+        scope[to] = scope[from];
+        seen[to] = seen[from];
+        start[to] = start[from];
+        System.arraycopy(counts, from * ECNMeasurer.NCOUNTERS, counts, to * ECNMeasurer.NCOUNTERS,
+          ECNMeasurer.NCOUNTERS);
+        System.arraycopy(bytes, from * ECNMeasurer.NCOUNTERS, bytes, to * ECNMeasurer.NCOUNTERS,
+          ECNMeasurer.NCOUNTERS);
+    }
+}
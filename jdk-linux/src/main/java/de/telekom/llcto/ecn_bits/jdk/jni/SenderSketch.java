@@ -0,0 +1,372 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Approximate per-sender analytics for unconnected channels with too many
+ * peers for exact accounting ({@link PeerTable}): count-min sketches of
+ * the packets, bytes and CE-marked packets per sender, a top-K min-heap
+ * of the heaviest senders by each of these, and a HyperLogLog estimate of
+ * the number of distinct senders, all in fixed-size primitive arrays, so
+ * the receive path neither allocates nor boxes.
+ *
+ * Guarded by its own monitor, taken once per received datagram or batch.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+final class SenderSketch {
+    /**
+     * Largest supported top-K size
+     */
+    static final int TOPK_MAX = 4096;
+    /**
+     * Largest supported sketch width
+     */
+    static final int WIDTH_MAX = 1 << 22;
+
+    static final int PACKETS = 0;
+    static final int BYTES = 1;
+    static final int CONGESTED = 2;
+    private static final int NMETRICS = 3;
+
+    private static final int DEPTH = 4;
+    private static final int HLL_BITS = 12;
+    private static final int HLL_SIZE = 1 << HLL_BITS;
+
+    private final int width;
+    private final int mask;
+    // [metric][row][column]
+    private final long[] cms;
+    private final byte[] hll = new byte[HLL_SIZE];
+    private final TopK[] top = new TopK[NMETRICS];
+    private long start;
+
+    /**
+     * Creates a new sketch.
+     *
+     * @param topK  number of heaviest senders to keep per metric, 1 ≤ topK ≤ {@link #TOPK_MAX}
+     * @param width columns per sketch row, rounded up to a power of two, 16 ≤ width ≤ {@link #WIDTH_MAX}
+     * @throws IllegalArgumentException if out of range
+     */
+    SenderSketch(final int topK, final int width) {
+        if (topK < 1 || topK > TOPK_MAX) {
+            throw new IllegalArgumentException("topK out of range: " + topK);
+        }
+        if (width < 16 || width > WIDTH_MAX) {
+            throw new IllegalArgumentException("width out of range: " + width);
+        }
+        this.width = Integer.highestOneBit(width * 2 - 1);
+        mask = this.width - 1;
+        cms = new long[NMETRICS * DEPTH * this.width];
+        for (int m = 0; m < NMETRICS; ++m) {
+            top[m] = new TopK(topK);
+        }
+        start = System.nanoTime();
+    }
+
+    /**
+     * Accounts a batch of received datagrams to their senders; records
+     * without sender (connected channel) are skipped.
+     *
+     * @param md native-order metadata buffer, cf. {@link JNI#MD_SIZE}
+     * @param n  number of datagrams received into md
+     */
+    synchronized void received(final ByteBuffer md, final int n) {
+        for (int i = 0; i < n; ++i) {
+            final int off = i * JNI.MD_SIZE;
+            if ((md.getShort(off + JNI.MD_FLAGS) & JNI.MDF_SENDER) == 0) {
+                continue;
+            }
+            final long hi = md.getLong(off + JNI.MD_ADDR);
+            final long lo = md.getLong(off + JNI.MD_ADDR + 8);
+            final int port = md.getInt(off + JNI.MD_PORT);
+            final short tcv = md.getShort(off + JNI.MD_TC);
+            final int len = md.getInt(off + JNI.MD_LEN);
+            final int segs = ECNMeasurer.segments(len, md.getInt(off + JNI.MD_SEGSZ));
+            final boolean ce = (tcv & 0xFF00) == JNI.MD_TC_VALID && (tcv & 3) == 3;
+            final long h = hash(hi, lo, port);
+
+            // HyperLogLog: register from the top bits, rank from the rest
+            final long hh = mix(h ^ 0x5851F42D4C957F2DL);
+            final int reg = (int) (hh >>> (64 - HLL_BITS));
+            final int rank = Long.numberOfLeadingZeros((hh << HLL_BITS) | (1L << (HLL_BITS - 1))) + 1;
+            if (rank > hll[reg]) {
+                hll[reg] = (byte) rank;
+            }
+
+            add(PACKETS, h, segs);
+            add(BYTES, h, len);
+            if (ce) {
+                add(CONGESTED, h, segs);
+            }
+            final int scope = md.getInt(off + JNI.MD_SCOPE);
+            for (int m = 0; m < NMETRICS; ++m) {
+                if (m != CONGESTED || ce) {
+                    top[m].offer(hi, lo, port, scope, h, estimate(m, h));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the current analytics and optionally starts a new period.
+     *
+     * @param reset whether to clear all data afterwards
+     * @return report about the period since creation or the last reset
+     */
+    synchronized ECNSenderReport report(final boolean reset) {
+        final List<List<ECNSenderReport.Sender>> lists = new ArrayList<>(NMETRICS);
+        final ByteBuffer ab = ByteBuffer.allocate(16).order(ByteOrder.nativeOrder());
+        for (int m = 0; m < NMETRICS; ++m) {
+            final TopK t = top[m];
+            final Integer[] order = new Integer[t.size];
+            for (int i = 0; i < t.size; ++i) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(t.val[b], t.val[a]));
+            final List<ECNSenderReport.Sender> list = new ArrayList<>(t.size);
+            for (final int i : order) {
+                ab.putLong(0, t.hi[i]).putLong(8, t.lo[i]);
+                list.add(new ECNSenderReport.Sender(
+                  new InetSocketAddress(JNI.AddrPort.getAddr(ab.array(), t.scope[i]), t.port[i]),
+                  estimate(PACKETS, t.h[i]), estimate(BYTES, t.h[i]), estimate(CONGESTED, t.h[i])));
+            }
+            lists.add(list);
+        }
+        final ECNSenderReport rv = new ECNSenderReport(start, distinct(),
+          lists.get(PACKETS), lists.get(BYTES), lists.get(CONGESTED));
+        if (reset) {
+            Arrays.fill(cms, 0L);
+            Arrays.fill(hll, (byte) 0);
+            for (final TopK t : top) {
+                t.clear();
+            }
+            start = System.nanoTime();
+        }
+        return rv;
+    }
+
+    private void add(final int metric, final long h, final long v) {
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32) | 1;
+        final int base = metric * DEPTH * width;
+        for (int r = 0; r < DEPTH; ++r) {
+            cms[base + r * width + ((h1 + r * h2) & mask)] += v;
+        }
+    }
+
+    private long estimate(final int metric, final long h) {
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32) | 1;
+        final int base = metric * DEPTH * width;
+        long rv = Long.MAX_VALUE;
+        for (int r = 0; r < DEPTH; ++r) {
+            rv = Math.min(rv, cms[base + r * width + ((h1 + r * h2) & mask)]);
+        }
+        return rv;
+    }
+
+    private long distinct() {
+        double sum = 0;
+        int zeros = 0;
+        for (final byte r : hll) {
+            sum += Math.scalb(1.0, -r);
+            if (r == 0) {
+                ++zeros;
+            }
+        }
+        final double m = HLL_SIZE;
+        final double e = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (e <= 2.5 * m && zeros > 0) {
+            // small range correction: linear counting
+            return Math.round(m * Math.log(m / zeros));
+        }
+        return Math.round(e);
+    }
+
+    static long hash(final long hi, final long lo, final int port) {
+        return mix(mix(hi) ^ lo ^ ((long) port << 32));
+    }
+
+    // SplitMix64 finaliser
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Min-heap of the k senders with the largest estimate of one metric,
+     * with an open-addressing index from sender to heap position
+     */
+    private static final class TopK {
+        private final int k;
+        private final long[] hi;
+        private final long[] lo;
+        private final int[] port;
+        private final int[] scope;
+        private final long[] h;
+        private final long[] val;
+        // index slot of each heap entry
+        private final int[] slotOf;
+        // heap position + 1 per index slot, 0 if free
+        private final int[] index;
+        private final int imask;
+        private int size = 0;
+
+        TopK(final int k) {
+            this.k = k;
+            hi = new long[k];
+            lo = new long[k];
+            port = new int[k];
+            scope = new int[k];
+            h = new long[k];
+            val = new long[k];
+            slotOf = new int[k];
+            index = new int[Integer.highestOneBit(k * 2 - 1) << 1];
+            imask = index.length - 1;
+        }
+
+        void clear() {
+            Arrays.fill(index, 0);
+            size = 0;
+        }
+
+        void offer(final long khi, final long klo, final int kport, final int kscope,
+          final long kh, final long v) {
+            int slot = (int) kh & imask;
+            int pos;
+            while ((pos = index[slot] - 1) >= 0) {
+                if (h[pos] == kh && hi[pos] == khi && lo[pos] == klo && port[pos] == kport) {
+                    // estimates only grow
+                    val[pos] = v;
+                    siftDown(pos);
+                    return;
+                }
+                slot = (slot + 1) & imask;
+            }
+            if (size < k) {
+                pos = size++;
+            } else if (v > val[0]) {
+                unindex(slotOf[0]);
+                pos = 0;
+                // the index may have shifted into the slot found above
+                slot = (int) kh & imask;
+                while (index[slot] != 0) {
+                    slot = (slot + 1) & imask;
+                }
+            } else {
+                return;
+            }
+            hi[pos] = khi;
+            lo[pos] = klo;
+            port[pos] = kport;
+            scope[pos] = kscope;
+            h[pos] = kh;
+            val[pos] = v;
+            index[slot] = pos + 1;
+            slotOf[pos] = slot;
+            if (pos == 0) {
+                siftDown(0);
+            } else {
+                siftUp(pos);
+            }
+        }
+
+        // backward-shift deletion from the index
+        private void unindex(final int slot) {
+            int hole = slot;
+            int j = slot;
+            while (true) {
+                j = (j + 1) & imask;
+                final int pos = index[j] - 1;
+                if (pos < 0) {
+                    break;
+                }
+                final int home = (int) h[pos] & imask;
+                if (((j - home) & imask) >= ((j - hole) & imask)) {
+                    index[hole] = index[j];
+                    slotOf[pos] = hole;
+                    hole = j;
+                }
+            }
+            index[hole] = 0;
+        }
+
+        private void siftUp(int pos) {
+            while (pos > 0) {
+                final int parent = (pos - 1) >>> 1;
+                if (val[parent] <= val[pos]) {
+                    break;
+                }
+                swap(pos, parent);
+                pos = parent;
+            }
+        }
+
+        private void siftDown(int pos) {
+            while (true) {
+                final int l = 2 * pos + 1;
+                if (l >= size) {
+                    break;
+                }
+                final int c = l + 1 < size && val[l + 1] < val[l] ? l + 1 : l;
+                if (val[pos] <= val[c]) {
+                    break;
+                }
+                swap(pos, c);
+                pos = c;
+            }
+        }
+
+        private void swap(final int a, final int b) {
+            swap(hi, a, b);
+            swap(lo, a, b);
+            swap(h, a, b);
+            swap(val, a, b);
+            swap(port, a, b);
+            swap(scope, a, b);
+            swap(slotOf, a, b);
+            index[slotOf[a]] = a + 1;
+            index[slotOf[b]] = b + 1;
+        }
+
+        private static void swap(final long[] x, final int a, final int b) {
+            final long t = x[a];
+            x[a] = x[b];
+            x[b] = t;
+        }
+
+        private static void swap(final int[] x, final int a, final int b) {
+            final int t = x[a];
+            x[a] = x[b];
+            x[b] = t;
+        }
+    }
+}
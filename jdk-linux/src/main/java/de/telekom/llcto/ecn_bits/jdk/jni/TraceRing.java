@@ -0,0 +1,189 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed-size off-heap ring of per-datagram trace records, written by the
+ * receive path (serialised by the channel’s read lock, or by the ring’s
+ * monitor in concurrent-reader mode, so there is one writer at a time)
+ * without further locking or allocation, and read concurrently
+ * by any number of threads, seqlock-style: readers copy records, then
+ * re-check how far the writer has got and discard (retry) what it may
+ * have overwritten meanwhile.
+ *
+ * The writer stores each record, then publishes the new head with an
+ * ordered store; as it may already be writing the record after the
+ * head, overwriting the oldest, readers only trust the most recent
+ * capacity − 2 records.
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+final class TraceRing {
+    /**
+     * Size of one record in bytes
+     */
+    static final int REC_SIZE = 24;
+    static final int REC_TIME = 0; // long, System.nanoTime()
+    static final int REC_SENDER = 8; // int, compact sender ID, 0 if none
+    static final int REC_LEN = 12; // int, datagram length
+    static final int REC_TC = 16; // short, as JNI.MD_TC
+    static final int REC_SEGSZ = 20; // int, UDP GRO segment size, 0 if not coalesced
+
+    /**
+     * Smallest and largest supported capacity, in records
+     */
+    static final int CAP_MIN = 16;
+    static final int CAP_MAX = 1 << 24;
+
+    // Java 8 has no public load fence, but StampedLock.validate issues one
+    private static final StampedLock FENCE = new StampedLock();
+    private static final long FENCE_STAMP = FENCE.tryOptimisticRead();
+
+    private final ByteBuffer ring;
+    private final int mask;
+    // sequence number of the next record to write
+    private final AtomicLong head = new AtomicLong(0);
+    // sequence number of the next record to drain
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /**
+     * Creates a new ring.
+     *
+     * @param capacity in records, rounded up to a power of two, {@link #CAP_MIN} ≤ capacity ≤ {@link #CAP_MAX}
+     * @throws IllegalArgumentException if out of range
+     */
+    TraceRing(final int capacity) {
+        if (capacity < CAP_MIN || capacity > CAP_MAX) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        final int cap = Integer.highestOneBit(capacity * 2 - 1);
+        mask = cap - 1;
+        ring = ByteBuffer.allocateDirect(cap * REC_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Records a batch of received datagrams, at their kernel receive
+     * timestamps if available, else now; writer only.
+     *
+     * @param md native-order metadata buffer, cf. {@link JNI#MD_SIZE}
+     * @param n  number of datagrams received into md
+     */
+    void received(final ByteBuffer md, final int n) {
+        final long now = System.nanoTime();
+        long seq = head.get();
+        for (int i = 0; i < n; ++i) {
+            final int off = i * JNI.MD_SIZE;
+            final int id = (md.getShort(off + JNI.MD_FLAGS) & JNI.MDF_SENDER) == 0 ? 0 :
+              ECNTraceEntry.senderId(md.getLong(off + JNI.MD_ADDR),
+                md.getLong(off + JNI.MD_ADDR + 8), md.getInt(off + JNI.MD_PORT));
+            final long tstamp = md.getLong(off + JNI.MD_TSTAMP);
+            put(seq, tstamp == 0 ? now : tstamp - ECNStatistics.NANO_OFFSET, id,
+              md.getInt(off + JNI.MD_LEN), md.getShort(off + JNI.MD_TC), md.getInt(off + JNI.MD_SEGSZ));
+            head.lazySet(++seq);
+        }
+    }
+
+    /**
+     * Records a datagram received without sender; writer only.
+     *
+     * @param valid  whether the {@code octet} argument is valid
+     * @param octet  the traffic class octet of the received datagram
+     * @param len    length of the received datagram
+     * @param segsz  UDP GRO segment size, 0 if not coalesced
+     * @param tstamp kernel receive timestamp in ns since the epoch, 0 if none
+     */
+    void received(final boolean valid, final byte octet, final int len, final int segsz,
+      final long tstamp) {
+        final long seq = head.get();
+        put(seq, tstamp == 0 ? System.nanoTime() : tstamp - ECNStatistics.NANO_OFFSET, 0, len,
+          (short) ((valid ? JNI.MD_TC_VALID : 0) | (octet & 0xFF)), segsz);
+        head.lazySet(seq + 1);
+    }
+
+    private void put(final long seq, final long now, final int id, final int len,
+      final short tc, final int segsz) {
+        final int off = ((int) seq & mask) * REC_SIZE;
+        ring.putLong(off + REC_TIME, now);
+        ring.putInt(off + REC_SENDER, id);
+        ring.putInt(off + REC_LEN, len);
+        ring.putShort(off + REC_TC, tc);
+        ring.putInt(off + REC_SEGSZ, segsz);
+    }
+
+    /**
+     * Copies the most recent records, without consuming them.
+     *
+     * @param into holders to fill, oldest first
+     * @return number of holders filled
+     */
+    int snapshot(final ECNTraceEntry[] into) {
+        while (true) {
+            final long h = head.get();
+            final long from = Math.max(Math.max(h - into.length, h - mask + 1), 0);
+            final int n = copy(from, h, into);
+            if (valid(from)) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Consumes the oldest records not yet drained by any reader;
+     * records overwritten before being drained are skipped, which
+     * shows as a gap in the sequence numbers.
+     *
+     * @param into holders to fill, oldest first
+     * @return number of holders filled
+     */
+    int drain(final ECNTraceEntry[] into) {
+        while (true) {
+            final long t = tail.get();
+            final long h = head.get();
+            final long from = Math.max(t, h - mask + 1);
+            final int n = copy(from, Math.min(h, from + into.length), into);
+            if (valid(from) && tail.compareAndSet(t, from + n)) {
+                return n;
+            }
+        }
+    }
+
+    private int copy(final long from, final long to, final ECNTraceEntry[] into) {
+        int n = 0;
+        for (long seq = from; seq < to; ++seq) {
+            final int off = ((int) seq & mask) * REC_SIZE;
+            into[n++].fill(seq, ring.getLong(off + REC_TIME), ring.getInt(off + REC_SENDER),
+              ring.getInt(off + REC_LEN), ring.getShort(off + REC_TC), ring.getInt(off + REC_SEGSZ));
+        }
+        return n;
+    }
+
+    // whether the records from seq onwards copied before were not overwritten meanwhile
+    private boolean valid(final long seq) {
+        FENCE.validate(FENCE_STAMP);
+        return seq >= head.get() - mask + 1;
+    }
+}
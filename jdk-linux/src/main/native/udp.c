@@ -20,16 +20,23 @@
  */
 
 #include <sys/types.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <sys/mman.h>
 #include <sys/socket.h>
+#include <sys/syscall.h>
 #include <sys/uio.h>
 #include <netinet/in.h>
 #include <netinet/ip.h>
+#include <netinet/udp.h>
+#include <linux/filter.h>
 /*#include <netinet6/in6.h>*/
 #include <errno.h>
 #include <fcntl.h>
 #include <netdb.h>
 #include <poll.h>
 #include <pthread.h>
+#include <sched.h>
 #include <signal.h>
 #include <stdarg.h>
 #include <stddef.h>
@@ -37,14 +44,54 @@
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
+#include <time.h>
 #include <unistd.h>
 
+#if defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#include <linux/io_uring.h>
+#endif
+#endif
+
 #include <jni.h>
 
 #include "nh.h"
 
 #include "alog.h"
 
+/* Linux 4.18+ UDP GSO, not in all libc headers yet */
+#ifndef SOL_UDP
+#define SOL_UDP		17
+#endif
+#ifndef UDP_SEGMENT
+#define UDP_SEGMENT	103
+#endif
+/* Linux 5.0+ UDP GRO */
+#ifndef UDP_GRO
+#define UDP_GRO		104
+#endif
+/* Linux 3.11+ busy polling, 5.11+ preferring it over interrupts */
+#ifndef SO_BUSY_POLL
+#define SO_BUSY_POLL	46
+#endif
+#ifndef SO_PREFER_BUSY_POLL
+#define SO_PREFER_BUSY_POLL	69
+#endif
+/* Linux 4.5+ reuseport group steering */
+#ifndef SO_ATTACH_REUSEPORT_CBPF
+#define SO_ATTACH_REUSEPORT_CBPF	51
+#endif
+/* Linux 3.19+ CPU that last processed the socket’s packets */
+#ifndef SO_INCOMING_CPU
+#define SO_INCOMING_CPU	49
+#endif
+/* io_uring with multishot recvmsg needs Linux 6.0+ headers */
+#if defined(IORING_RECV_MULTISHOT) && defined(__NR_io_uring_setup)
+#define HAVE_URING	1
+#else
+#define HAVE_URING	0
+#endif
+
 #ifndef HAVE_NI_WITHSCOPEID
 #ifdef NI_WITHSCOPEID
 #define HAVE_NI_WITHSCOPEID 1
@@ -62,7 +109,7 @@
 #define NIF_FQDN NI_NAMEREQD | NI_NUMERICSERV
 #endif
 
-#define ECNBITS_CMSGBUFLEN	64
+#define ECNBITS_CMSGBUFLEN	128	/* TCLASS/TOS, UDP_GRO, SO_TIMESTAMPNS, SO_RXQ_OVFL */
 #define ECNBITS_INVALID_BIT	((unsigned short)0x0100U)
 #define ECNBITS_ISVALID_BIT	((unsigned short)0x0200U)
 #define ECNBITS_VALID(result)	(((unsigned short)(result) >> 8) == 0x02U)
@@ -75,6 +122,34 @@
 #define rstrerror(e)	jniStrError((e), rstrerrstr, sizeof(rstrerrstr))
 #define SIGTID_SIGNO	(__SIGRTMAX - 2)	/* OpenJDK and glibc */
 
+/* keep in sync with JNI.java */
+#define BATCH_MAX	256	/* maximum datagrams per batch I/O call */
+
+/* keep in sync with JNI.EP_* (values passed through unchanged) */
+#define EP_MAX		1024	/* maximum events per epoll_wait call */
+typedef char ecnbits_ep_check[(EPOLL_CTL_ADD == 1 && EPOLL_CTL_DEL == 2 &&
+    EPOLL_CTL_MOD == 3 && EPOLLIN == 0x001 && EPOLLOUT == 0x004 &&
+    EPOLLERR == 0x008 && EPOLLHUP == 0x010) ? 1 : -1];
+
+/* per-datagram metadata record, keep in sync with JNI.MD_* */
+struct ecnbits_md {
+	unsigned char addr[16];	/* v4-mapped or IPv6, network order */
+	int32_t port;		/* host order */
+	int32_t scope;		/* -1 if not set */
+	int32_t len;		/* length of the datagram */
+	uint16_t tc;		/* ECNBITS_* result */
+	uint16_t flags;		/* MDF_* */
+	int32_t segsz;		/* GRO segment size, 0 if not coalesced */
+	uint32_t drops;		/* socket’s kernel drop counter (SO_RXQ_OVFL) */
+	int64_t tstamp;		/* kernel receive time, ns since epoch; 0 if none */
+};
+/* compile-time assertion */
+typedef char ecnbits_md_size_check[sizeof(struct ecnbits_md) == 48 ? 1 : -1];
+#define MDF_SENDER	0x0001U	/* addr, port, scope are valid */
+#define MDF_TRUNC	0x0002U	/* datagram was truncated */
+
+#define IO_EINVAL	(-6)	/* offload refused for this call only */
+#define IO_ENOTSUP	(-5)	/* offload refused by the kernel */
 #define IO_THROWN	(-4)
 #define IO_EINTR	(-3)
 #define IO_EAVAIL	(-2)
@@ -120,12 +195,31 @@ static JNICALL void n_bind(JNIEnv *, jclass, jint, jbyteArray, jint, jint);
 static JNICALL void n_connect(JNIEnv *, jclass, jint, jbyteArray, jint, jint);
 static JNICALL void n_disconnect(JNIEnv *, jclass, jint);
 static JNICALL jint n_recv(JNIEnv *, jclass, jint, jobject, jint, jint, jobject, jboolean);
-static JNICALL jint n_send(JNIEnv *, jclass, jint, jobject, jint, jint, jbyteArray, jint, jint);
+static JNICALL jint n_send(JNIEnv *, jclass, jint, jobject, jint, jint, jbyteArray, jint, jint, jint);
 static JNICALL jint n_recvfrom(JNIEnv *, jclass, jint, jbyteArray, jint, jint, jobject, jboolean, jboolean);
-static JNICALL jint n_sendto(JNIEnv *, jclass, jint, jbyteArray, jint, jint, jbyteArray, jint, jint);
+static JNICALL jint n_sendto(JNIEnv *, jclass, jint, jbyteArray, jint, jint, jbyteArray, jint, jint, jint);
 static JNICALL jlong n_rd(JNIEnv *, jclass, jint, jobjectArray, jint, jobject);
 static JNICALL jlong n_wr(JNIEnv *, jclass, jint, jobjectArray, jbyteArray, jint, jint);
 static JNICALL jint n_pollin(JNIEnv *, jclass, jint, jint);
+static JNICALL jint n_pollrx(JNIEnv *, jclass, jint);
+static JNICALL jint n_recvmmsg(JNIEnv *, jclass, jint, jobjectArray, jint, jobject, jboolean);
+static JNICALL jint n_epcreate(JNIEnv *, jclass);
+static JNICALL void n_epctl(JNIEnv *, jclass, jint, jint, jint, jint);
+static JNICALL jint n_epwait(JNIEnv *, jclass, jint, jobject, jint, jint);
+static JNICALL jint n_evcreate(JNIEnv *, jclass);
+static JNICALL void n_evsignal(JNIEnv *, jclass, jint);
+static JNICALL void n_evdrain(JNIEnv *, jclass, jint);
+static JNICALL jint n_sendgso(JNIEnv *, jclass, jint, jobject, jint, jint, jbyteArray, jint, jint, jint);
+static JNICALL jint n_sendmmsg(JNIEnv *, jclass, jint, jobjectArray, jint, jobject);
+static JNICALL jlong n_uropen(JNIEnv *, jclass, jboolean);
+static JNICALL void n_urclose(JNIEnv *, jclass, jlong);
+static JNICALL jint n_urecvmmsg(JNIEnv *, jclass, jlong, jint, jobjectArray, jint, jobject, jboolean, jboolean);
+static JNICALL jint n_urpollin(JNIEnv *, jclass, jlong, jint, jint);
+static JNICALL jint n_usendmmsg(JNIEnv *, jclass, jlong, jint, jobjectArray, jint, jobject);
+static JNICALL void n_preclose(JNIEnv *, jclass, jint);
+static JNICALL void n_reuseport(JNIEnv *, jclass, jint, jint, jint);
+static JNICALL void n_setaffinity(JNIEnv *, jclass, jint);
+static JNICALL jint n_getcpu(JNIEnv *, jclass);
 
 #define METH(name,signature) \
 	{ #name, signature, (void *)(name) }
@@ -141,13 +235,32 @@ static const JNINativeMethod methods[] = {
 	METH(n_bind, "(I[BII)V"),
 	METH(n_connect, "(I[BII)V"),
 	METH(n_disconnect, "(I)V"),
-	METH(n_recv, "(ILjava/nio/ByteBuffer;IILde/telekom/llcto/ecn_bits/jdk/jni/JNI$AddrPort;Z)I"),
-	METH(n_send, "(ILjava/nio/ByteBuffer;II[BII)I"),
-	METH(n_recvfrom, "(I[BIILde/telekom/llcto/ecn_bits/jdk/jni/JNI$AddrPort;ZZ)I"),
-	METH(n_sendto, "(I[BII[BII)I"),
+	METH(n_recv, "(ILjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;Z)I"),
+	METH(n_send, "(ILjava/nio/ByteBuffer;II[BIII)I"),
+	METH(n_recvfrom, "(I[BIILjava/nio/ByteBuffer;ZZ)I"),
+	METH(n_sendto, "(I[BII[BIII)I"),
 	METH(n_rd, "(I[Lde/telekom/llcto/ecn_bits/jdk/jni/JNI$SGIO;ILde/telekom/llcto/ecn_bits/jdk/jni/JNI$AddrPort;)J"),
 	METH(n_wr, "(I[Lde/telekom/llcto/ecn_bits/jdk/jni/JNI$SGIO;[BII)J"),
-	METH(n_pollin, "(II)I")
+	METH(n_pollin, "(II)I"),
+	METH(n_pollrx, "(I)I"),
+	METH(n_recvmmsg, "(I[Lde/telekom/llcto/ecn_bits/jdk/jni/JNI$SGIO;ILjava/nio/ByteBuffer;Z)I"),
+	METH(n_sendmmsg, "(I[Lde/telekom/llcto/ecn_bits/jdk/jni/JNI$SGIO;ILjava/nio/ByteBuffer;)I"),
+	METH(n_sendgso, "(ILjava/nio/ByteBuffer;II[BIII)I"),
+	METH(n_epcreate, "()I"),
+	METH(n_epctl, "(IIII)V"),
+	METH(n_epwait, "(ILjava/nio/ByteBuffer;II)I"),
+	METH(n_evcreate, "()I"),
+	METH(n_evsignal, "(I)V"),
+	METH(n_evdrain, "(I)V"),
+	METH(n_uropen, "(Z)J"),
+	METH(n_urclose, "(J)V"),
+	METH(n_urecvmmsg, "(JI[Lde/telekom/llcto/ecn_bits/jdk/jni/JNI$SGIO;ILjava/nio/ByteBuffer;ZZ)I"),
+	METH(n_urpollin, "(JII)I"),
+	METH(n_usendmmsg, "(JI[Lde/telekom/llcto/ecn_bits/jdk/jni/JNI$SGIO;ILjava/nio/ByteBuffer;)I"),
+	METH(n_preclose, "(I)V"),
+	METH(n_reuseport, "(III)V"),
+	METH(n_setaffinity, "(I)V"),
+	METH(n_getcpu, "()I")
 };
 #undef METH
 
@@ -176,6 +289,9 @@ static jfieldID o_AP_port;	// int
 static jfieldID o_AP_scopeId;	// int
 static jfieldID o_AP_tc;	// byte
 static jfieldID o_AP_tcValid;	// boolean
+static jfieldID o_AP_segSize;	// int
+static jfieldID o_AP_tstamp;	// long
+static jfieldID o_AP_drops;	// int
 
 static jfieldID o_SG_buf;	// ByteBuffer
 static jfieldID o_SG_pos;	// int
@@ -264,6 +380,9 @@ JNI_OnLoad(JavaVM *vm, void *reserved __unused)
 	getfield(AP, scopeId, "I");
 	getfield(AP, tc, "B");
 	getfield(AP, tcValid, "Z");
+	getfield(AP, segSize, "I");
+	getfield(AP, tstamp, "J");
+	getfield(AP, drops, "I");
 	getfield(SG, buf, "Ljava/nio/ByteBuffer;");
 	getfield(SG, pos, "I");
 	getfield(SG, len, "I");
@@ -503,6 +622,11 @@ n_socket(JNIEnv *env, jclass cls __unused)
 		ethrow(env, eX_S, "setsockopt(%s)", "IP_RECVTOS");
 		return (-1);
 	}
+	/* report the drop counter with each datagram, for the statistics */
+	if (setsockopt(fd, SOL_SOCKET, SO_RXQ_OVFL,
+	    (const void *)&so, sizeof(so)))
+		ecnlog_warn("could not enable %s on socket %d",
+		    "SO_RXQ_OVFL", fd);
 
 	return (fd);
 }
@@ -557,6 +681,41 @@ n_getsockopt(JNIEnv *env, jclass cls __unused, jint fd, jint optenum)
 		level = IPPROTO_IPV6;
 		optname = IPV6_MULTICAST_HOPS;
 		break;
+	case 6: // UDP_SEGMENT (only used to probe for GSO support)
+		isbool = 0;
+		level = SOL_UDP;
+		optname = UDP_SEGMENT;
+		break;
+	case 7: // UDP_GRO
+		isbool = 1;
+		level = SOL_UDP;
+		optname = UDP_GRO;
+		break;
+	case 8: // SO_TIMESTAMPNS
+		isbool = 1;
+		level = SOL_SOCKET;
+		optname = SO_TIMESTAMPNS;
+		break;
+	case 9: // SO_BUSY_POLL
+		isbool = 0;
+		level = SOL_SOCKET;
+		optname = SO_BUSY_POLL;
+		break;
+	case 10: // SO_PREFER_BUSY_POLL
+		isbool = 1;
+		level = SOL_SOCKET;
+		optname = SO_PREFER_BUSY_POLL;
+		break;
+	case 11: // SO_REUSEPORT
+		isbool = 1;
+		level = SOL_SOCKET;
+		optname = SO_REUSEPORT;
+		break;
+	case 12: // SO_INCOMING_CPU
+		isbool = 0;
+		level = SOL_SOCKET;
+		optname = SO_INCOMING_CPU;
+		break;
 	default:
 		/* NOTREACHED */
 		throw(env, eX_S, 0, "unknown optenum %d", optenum);
@@ -625,6 +784,30 @@ n_setsockopt(JNIEnv *env, jclass cls __unused, jint fd, jint optenum, jint val)
 	case 5: // IPV6_MULTICAST_HOPS
 		do_setsockopt(env, fd, IPPROTO_IPV6, IPV6_MULTICAST_HOPS, val);
 		break;
+	case 7: // UDP_GRO
+		do_setsockopt(env, fd, SOL_UDP, UDP_GRO,
+		    val == JNI_FALSE ? 0 : 1);
+		break;
+	case 8: // SO_TIMESTAMPNS
+		do_setsockopt(env, fd, SOL_SOCKET, SO_TIMESTAMPNS,
+		    val == JNI_FALSE ? 0 : 1);
+		break;
+	case 9: // SO_BUSY_POLL
+		/* raising it above net.core.busy_read needs CAP_NET_ADMIN */
+		do_setsockopt(env, fd, SOL_SOCKET, SO_BUSY_POLL, val);
+		break;
+	case 10: // SO_PREFER_BUSY_POLL
+		do_setsockopt(env, fd, SOL_SOCKET, SO_PREFER_BUSY_POLL,
+		    val == JNI_FALSE ? 0 : 1);
+		break;
+	case 11: // SO_REUSEPORT
+		do_setsockopt(env, fd, SOL_SOCKET, SO_REUSEPORT,
+		    val == JNI_FALSE ? 0 : 1);
+		break;
+	case 12: // SO_INCOMING_CPU
+		/* Linux 4.4+: prefer this socket for that CPU in a reuseport group */
+		do_setsockopt(env, fd, SOL_SOCKET, SO_INCOMING_CPU, val);
+		break;
 	default:
 		/* NOTREACHED */
 		throw(env, eX_S, 0, "unknown optenum %d", optenum);
@@ -773,12 +956,31 @@ recvtos_cmsg(struct cmsghdr *cmsg, unsigned short *e)
 }
 
 static void
-trycmsg(struct msghdr *msgh, unsigned short *e)
+trycmsg(struct msghdr *msgh, unsigned short *e, int *segsz, int64_t *tstamp,
+    uint32_t *drops)
 {
 	struct cmsghdr *cmsg = CMSG_FIRSTHDR(msgh);
+	struct timespec ts;
 
+	*segsz = 0;
+	*tstamp = 0;
+	/* only sent once the counter is nonzero */
+	*drops = 0;
 	while (cmsg) {
 		switch (cmsg->cmsg_level) {
+		case SOL_SOCKET:
+			/* not a switch: may not be constant with 64-bit time_t on ILP32 */
+			if (cmsg->cmsg_type == SCM_TIMESTAMPNS &&
+			    cmsg_actual_data_len(cmsg) == sizeof(ts)) {
+				memcpy(&ts, CMSG_DATA(cmsg), sizeof(ts));
+				*tstamp = (int64_t)ts.tv_sec * 1000000000 +
+				    ts.tv_nsec;
+			}
+			if (cmsg->cmsg_type == SO_RXQ_OVFL &&
+			    cmsg_actual_data_len(cmsg) == sizeof(uint32_t))
+				memcpy(drops, CMSG_DATA(cmsg),
+				    sizeof(uint32_t));
+			break;
 		case IPPROTO_IP:
 			switch (cmsg->cmsg_type) {
 			case IP_TOS:
@@ -794,17 +996,79 @@ trycmsg(struct msghdr *msgh, unsigned short *e)
 				break;
 			}
 			break;
+		case SOL_UDP:
+			switch (cmsg->cmsg_type) {
+			case UDP_GRO:
+				/* coalesced, all segments share the TC */
+				if (cmsg_actual_data_len(cmsg) == sizeof(int))
+					memcpy(segsz, CMSG_DATA(cmsg),
+					    sizeof(int));
+				break;
+			}
+			break;
 		}
 		cmsg = CMSG_NXTHDR(msgh, cmsg);
 	}
 }
 
+/* cf. ecnbits_mkcmsg (c/lib/mkcmsg.c) for AF_INET6 on Linux */
+#define ECNBITS_MKCMSGLEN	(2 * CMSG_SPACE(sizeof(int)))
+static size_t
+mkcmsg(void *buf, unsigned char tc)
+{
+	struct cmsghdr *cmsg;
+	struct msghdr mh;
+	int i = (int)(unsigned int)tc;
+
+	memset(buf, 0, ECNBITS_MKCMSGLEN);
+	mh.msg_control = buf;
+	mh.msg_controllen = ECNBITS_MKCMSGLEN;
+	cmsg = CMSG_FIRSTHDR(&mh);
+
+	cmsg->cmsg_level = IPPROTO_IPV6;
+	cmsg->cmsg_type = IPV6_TCLASS;
+	cmsg->cmsg_len = CMSG_LEN(sizeof(i));
+	memcpy(CMSG_DATA(cmsg), &i, sizeof(i));
+	/* send two, for v4-mapped */
+	cmsg = CMSG_NXTHDR(&mh, cmsg);
+	cmsg->cmsg_level = IPPROTO_IP;
+	cmsg->cmsg_type = IP_TOS;
+	cmsg->cmsg_len = CMSG_LEN(sizeof(i));
+	memcpy(CMSG_DATA(cmsg), &i, sizeof(i));
+	return (mh.msg_controllen);
+}
+
+static void
+md_put(struct ecnbits_md *md, const struct msghdr *m, const struct sockaddr_in6 *sin6,
+    size_t n, unsigned short e, int segsz, int64_t tstamp, uint32_t drops)
+{
+	md->flags = 0;
+	if (sin6 && sin6->sin6_family == AF_INET6) {
+		memcpy(md->addr, sin6->sin6_addr.s6_addr, 16);
+		md->port = ntohs(sin6->sin6_port);
+		md->scope = sin6->sin6_scope_id > 0 ?
+		    (int32_t)sin6->sin6_scope_id : -1;
+		md->flags |= MDF_SENDER;
+	}
+	if (m->msg_flags & MSG_TRUNC)
+		md->flags |= MDF_TRUNC;
+	md->len = (int32_t)n;
+	md->tc = e;
+	md->segsz = segsz;
+	md->drops = drops;
+	md->tstamp = tstamp;
+}
+
 static JNICALL jint
 n_recv(JNIEnv *env, jclass cls __unused, jint fd,
-    jobject bbuf, jint bbpos, jint bbsize, jobject aptc, jboolean connected)
+    jobject bbuf, jint bbpos, jint bbsize, jobject mdbuf, jboolean connected)
 {
 	ssize_t n;
 	unsigned short e;
+	int segsz;
+	int64_t tstamp;
+	uint32_t drops;
+	struct ecnbits_md *md;
 	struct msghdr m = {0};
 	struct iovec io;
 	char cmsgbuf[ECNBITS_CMSGBUFLEN];
@@ -812,6 +1076,8 @@ n_recv(JNIEnv *env, jclass cls __unused, jint fd,
 
 	e = ECNBITS_INVALID_BIT;
 
+	if (!(md = (*env)->GetDirectBufferAddress(env, mdbuf)))
+		return (IO_THROWN);
 	io.iov_base = (*env)->GetDirectBufferAddress(env, bbuf);
 	if (!io.iov_base)
 		return (IO_THROWN);
@@ -822,8 +1088,10 @@ n_recv(JNIEnv *env, jclass cls __unused, jint fd,
 
 	m.msg_iov = &io;
 	m.msg_iovlen = 1;
-	m.msg_name = &sin6;
-	m.msg_namelen = sizeof(sin6);
+	if (connected == JNI_FALSE) {
+		m.msg_name = &sin6;
+		m.msg_namelen = sizeof(sin6);
+	}
 	m.msg_control = cmsgbuf;
 	m.msg_controllen = sizeof(cmsgbuf);
 
@@ -842,44 +1110,32 @@ n_recv(JNIEnv *env, jclass cls __unused, jint fd,
 		return (ethrow(env, eX_S_auto, "recv(%d, %u)", fd,
 		    (unsigned int)io.iov_len));
 	}
-	trycmsg(&m, &e);
-
-	if (n == 0 && sin6.sin6_family == 0) {
-		/*
-		 * set sender to nil:
-		 * peer or another thread shut down the socket
-		 */
-		(*env)->SetObjectField(env, aptc, o_AP_addr, NULL);
-	} else if (sin6.sin6_family != AF_INET6) {
+	trycmsg(&m, &e, &segsz, &tstamp, &drops);
+
+	/*
+	 * connected: the sender is the peer, not asked for; otherwise
+	 * no sender means the socket was shut down (reported as nil)
+	 */
+	if (connected == JNI_FALSE && sin6.sin6_family != AF_INET6 &&
+	    !(n == 0 && sin6.sin6_family == 0))
 		return (throw(env, eX_S, EAFNOSUPPORT,
 		    "AF %d after recv(%d, %u)", (int)sin6.sin6_family,
 		    fd, (unsigned int)n));
-	} else {
-		jbyteArray addr;
-
-		if (!(addr = (*env)->NewByteArray(env, 16)))
-			return (IO_THROWN);
-		(*env)->SetByteArrayRegion(env, addr, 0, 16,
-		    (const void *)&sin6.sin6_addr.s6_addr);
-		(*env)->SetObjectField(env, aptc, o_AP_addr, addr);
-		(*env)->SetIntField(env, aptc, o_AP_port, ntohs(sin6.sin6_port));
-		(*env)->SetIntField(env, aptc, o_AP_scopeId,
-		    sin6.sin6_scope_id > 0 ? (int)sin6.sin6_scope_id : -1);
-	}
-	(*env)->SetByteField(env, aptc, o_AP_tc, e & 0xFF);
-	(*env)->SetBooleanField(env, aptc, o_AP_tcValid,
-	    ECNBITS_VALID(e) ? JNI_TRUE : JNI_FALSE);
+	md_put(md, &m, &sin6, n, e, segsz, tstamp, drops);
 
 	return (n);
 }
 
 static JNICALL jint
 n_send(JNIEnv *env, jclass cls __unused, jint fd,
-    jobject bbuf, jint bbpos, jint bbsize, jbyteArray addr, jint port, jint scope)
+    jobject bbuf, jint bbpos, jint bbsize, jbyteArray addr, jint port, jint scope,
+    jint tc)
 {
 	ssize_t n;
 	char *buf;
-	size_t len;
+	struct msghdr m = {0};
+	struct iovec io;
+	char cmsgbuf[ECNBITS_MKCMSGLEN];
 	struct sockaddr_in6 sin6 = {0};
 
 	if (mksockaddr(env, &sin6, addr, port, scope) /* threw an exception */)
@@ -887,20 +1143,29 @@ n_send(JNIEnv *env, jclass cls __unused, jint fd,
 
 	if (!(buf = (*env)->GetDirectBufferAddress(env, bbuf)))
 		return (IO_THROWN);
-	buf += (unsigned int)bbpos;
-	len = (unsigned int)bbsize;
-	if (len > /* MAX_PACKET_LEN */ 65536U)
-		len = 65536U;
+	io.iov_base = buf + (unsigned int)bbpos;
+	io.iov_len = (unsigned int)bbsize;
+	if (io.iov_len > /* MAX_PACKET_LEN */ 65536U)
+		io.iov_len = 65536U;
+
+	m.msg_iov = &io;
+	m.msg_iovlen = 1;
+	m.msg_name = &sin6;
+	m.msg_namelen = sizeof(sin6);
+	if (tc >= 0) {
+		/* per-packet traffic class instead of the socket’s */
+		m.msg_control = cmsgbuf;
+		m.msg_controllen = mkcmsg(cmsgbuf, (unsigned char)tc);
+	}
 
-	if ((n = sendto(fd, buf, len, 0, (struct sockaddr *)&sin6,
-	    sizeof(sin6))) == (ssize_t)-1) {
+	if ((n = sendmsg(fd, &m, 0)) == (ssize_t)-1) {
 		if (errno == EAGAIN || errno == EWOULDBLOCK)
 			return (IO_EAVAIL);
 		if (errno == EINTR)
 			return (IO_EINTR);
 		rgetnaminfo(r_errno, r_host, &sin6);
 		return (throw(env, r_errno == ECONNREFUSED ? eX_PORTUNR : eX_S_auto,
-		    r_errno, "send(%d, %u, [%s]:%u)", fd, (unsigned int)len,
+		    r_errno, "send(%d, %u, [%s]:%u)", fd, (unsigned int)io.iov_len,
 		    r_host, (int)port));
 	}
 	return (n);
@@ -909,10 +1174,14 @@ n_send(JNIEnv *env, jclass cls __unused, jint fd,
 static JNICALL jint
 n_recvfrom(JNIEnv *env, jclass cls __unused, jint fd,
     jbyteArray buf, jint bufpos, jint len,
-    jobject aptc, jboolean peekOnly, jboolean connected)
+    jobject mdbuf, jboolean peekOnly, jboolean connected)
 {
 	ssize_t n;
 	unsigned short e;
+	int segsz;
+	int64_t tstamp;
+	uint32_t drops;
+	struct ecnbits_md *md;
 	struct msghdr m = {0};
 	struct iovec io;
 	char cmsgbuf[ECNBITS_CMSGBUFLEN];
@@ -921,6 +1190,8 @@ n_recvfrom(JNIEnv *env, jclass cls __unused, jint fd,
 
 	e = ECNBITS_INVALID_BIT;
 
+	if (!(md = (*env)->GetDirectBufferAddress(env, mdbuf)))
+		return (IO_THROWN);
 	buf_elts = (*env)->GetByteArrayElements(env, buf, NULL);
 	if (!buf_elts)
 		return (IO_THROWN);
@@ -933,8 +1204,10 @@ n_recvfrom(JNIEnv *env, jclass cls __unused, jint fd,
 
 	m.msg_iov = &io;
 	m.msg_iovlen = 1;
-	m.msg_name = &sin6;
-	m.msg_namelen = sizeof(sin6);
+	if (connected == JNI_FALSE) {
+		m.msg_name = &sin6;
+		m.msg_namelen = sizeof(sin6);
+	}
 	m.msg_control = cmsgbuf;
 	m.msg_controllen = sizeof(cmsgbuf);
 
@@ -957,33 +1230,18 @@ n_recvfrom(JNIEnv *env, jclass cls __unused, jint fd,
 	}
 	(*env)->ReleaseByteArrayElements(env, buf, buf_elts, 0);
 	/* releasing buf_elts done */
-	trycmsg(&m, &e);
-
-	if (n == 0 && sin6.sin6_family == 0) {
-		/*
-		 * set sender to nil:
-		 * peer or another thread shut down the socket
-		 */
-		(*env)->SetObjectField(env, aptc, o_AP_addr, NULL);
-	} else if (sin6.sin6_family != AF_INET6) {
+	trycmsg(&m, &e, &segsz, &tstamp, &drops);
+
+	/*
+	 * connected: the sender is the peer, not asked for; otherwise
+	 * no sender means the socket was shut down (reported as nil)
+	 */
+	if (connected == JNI_FALSE && sin6.sin6_family != AF_INET6 &&
+	    !(n == 0 && sin6.sin6_family == 0))
 		return (throw(env, eX_S, EAFNOSUPPORT,
 		    "AF %d after recv(%d, %u)", (int)sin6.sin6_family,
 		    fd, (unsigned int)n));
-	} else {
-		jbyteArray addr;
-
-		if (!(addr = (*env)->NewByteArray(env, 16)))
-			return (IO_THROWN);
-		(*env)->SetByteArrayRegion(env, addr, 0, 16,
-		    (const void *)&sin6.sin6_addr.s6_addr);
-		(*env)->SetObjectField(env, aptc, o_AP_addr, addr);
-		(*env)->SetIntField(env, aptc, o_AP_port, ntohs(sin6.sin6_port));
-		(*env)->SetIntField(env, aptc, o_AP_scopeId,
-		    sin6.sin6_scope_id > 0 ? (int)sin6.sin6_scope_id : -1);
-	}
-	(*env)->SetByteField(env, aptc, o_AP_tc, e & 0xFF);
-	(*env)->SetBooleanField(env, aptc, o_AP_tcValid,
-	    ECNBITS_VALID(e) ? JNI_TRUE : JNI_FALSE);
+	md_put(md, &m, &sin6, n, e, segsz, tstamp, drops);
 
 	return (n);
 }
@@ -991,11 +1249,12 @@ n_recvfrom(JNIEnv *env, jclass cls __unused, jint fd,
 static JNICALL jint
 n_sendto(JNIEnv *env, jclass cls __unused, jint fd,
     jbyteArray bufarr, jint bufpos, jint buflen,
-    jbyteArray addr, jint port, jint scope)
+    jbyteArray addr, jint port, jint scope, jint tc)
 {
 	ssize_t n;
-	char *buf;
-	size_t len;
+	struct msghdr m = {0};
+	struct iovec io;
+	char cmsgbuf[ECNBITS_MKCMSGLEN];
 	struct sockaddr_in6 sin6 = {0};
 	jbyte *buf_elts;
 	int ec;
@@ -1009,14 +1268,24 @@ n_sendto(JNIEnv *env, jclass cls __unused, jint fd,
 		return (IO_THROWN);
 	/* releasing buf_elts needed */
 
-	buf = (char *)buf_elts + (unsigned int)bufpos;
-	len = (unsigned int)buflen;
-	if (len > /* MAX_PACKET_LEN */ 65536U)
-		len = 65536U;
+	io.iov_base = (char *)buf_elts + (unsigned int)bufpos;
+	io.iov_len = (unsigned int)buflen;
+	if (io.iov_len > /* MAX_PACKET_LEN */ 65536U)
+		io.iov_len = 65536U;
 
-	n = sendto(fd, buf, len, 0,
-	    addr ? (struct sockaddr *)&sin6 : NULL,
-	    addr ? sizeof(sin6) : 0);
+	m.msg_iov = &io;
+	m.msg_iovlen = 1;
+	if (addr) {
+		m.msg_name = &sin6;
+		m.msg_namelen = sizeof(sin6);
+	}
+	if (tc >= 0) {
+		/* per-packet traffic class instead of the socket’s */
+		m.msg_control = cmsgbuf;
+		m.msg_controllen = mkcmsg(cmsgbuf, (unsigned char)tc);
+	}
+
+	n = sendmsg(fd, &m, 0);
 	ec = errno;
 
 	(*env)->ReleaseByteArrayElements(env, bufarr, buf_elts, JNI_ABORT);
@@ -1031,10 +1300,10 @@ n_sendto(JNIEnv *env, jclass cls __unused, jint fd,
 		return (IO_EINTR);
 	if (!addr)
 		return (throw(env, ec == ECONNREFUSED ? eX_PORTUNR : eX_S_auto,
-		    ec, "send(%d, %u)", fd, (unsigned int)len));
+		    ec, "send(%d, %u)", fd, (unsigned int)io.iov_len));
 	rrgetnaminfo(r_host, &sin6);
 	return (throw(env, ec == ECONNREFUSED ? eX_PORTUNR : eX_S_auto,
-	    ec, "send(%d, %u, [%s]:%u)", fd, (unsigned int)len,
+	    ec, "send(%d, %u, [%s]:%u)", fd, (unsigned int)io.iov_len,
 	    r_host, (int)port));
 }
 
@@ -1073,6 +1342,9 @@ n_rd(JNIEnv *env, jclass cls __unused, jint fd,
 {
 	ssize_t n;
 	unsigned short e;
+	int segsz;
+	int64_t tstamp;
+	uint32_t drops;
 	struct msghdr m = {0};
 	struct iovec iop[nbufs];
 	char cmsgbuf[ECNBITS_CMSGBUFLEN];
@@ -1098,11 +1370,14 @@ n_rd(JNIEnv *env, jclass cls __unused, jint fd,
 		return (ethrow(env, errno == ECONNREFUSED ? eX_PORTUNR : eX_S_auto,
 		    "recvv(%d, [%d])", fd, (int)nbufs));
 	}
-	trycmsg(&m, &e);
+	trycmsg(&m, &e, &segsz, &tstamp, &drops);
 
 	(*env)->SetByteField(env, tc, o_AP_tc, e & 0xFF);
 	(*env)->SetBooleanField(env, tc, o_AP_tcValid,
 	    ECNBITS_VALID(e) ? JNI_TRUE : JNI_FALSE);
+	(*env)->SetIntField(env, tc, o_AP_segSize, segsz);
+	(*env)->SetLongField(env, tc, o_AP_tstamp, tstamp);
+	(*env)->SetIntField(env, tc, o_AP_drops, (jint)drops);
 
 	return (n);
 }
@@ -1159,3 +1434,932 @@ n_pollin(JNIEnv *env, jclass cls __unused, jint fd, jint timeout)
 		return (ethrow(env, eX_S_auto, "poll(%d, POLLIN, %d)", fd, timeout));
 	}
 }
+
+/* like n_pollin(fd, 0) but tells errors (e.g. queued ICMP) apart */
+static JNICALL jint
+n_pollrx(JNIEnv *env, jclass cls __unused, jint fd)
+{
+	struct pollfd pfd;
+
+	pfd.fd = fd;
+	pfd.events = POLLIN;
+	switch (poll(&pfd, 1, 0)) {
+	case 1:
+		return ((pfd.revents & POLLIN) ? 1 : 2);
+	case 0:
+		return (0);
+	default:
+		if (errno == EINTR)
+			return (IO_EINTR);
+		return (ethrow(env, eX_S_auto, "poll(%d, POLLIN, 0)", fd));
+	}
+}
+
+static JNICALL jint
+n_recvmmsg(JNIEnv *env, jclass cls __unused, jint fd,
+    jobjectArray bufs, jint nbufs, jobject mdbuf, jboolean connected)
+{
+	int i, n, segsz;
+	int64_t tstamp;
+	uint32_t drops;
+	unsigned short e;
+	struct ecnbits_md *md;
+	/* fixed size: nbufs is only validated below */
+	struct mmsghdr mm[BATCH_MAX];
+	struct iovec iop[BATCH_MAX];
+	char cmsgbuf[BATCH_MAX][ECNBITS_CMSGBUFLEN];
+	struct sockaddr_in6 sin6[BATCH_MAX];
+
+	if (nbufs < 1 || nbufs > BATCH_MAX)
+		return (throw(env, eX_S, EINVAL, "recvmmsg(%d, [%d])",
+		    fd, (int)nbufs));
+	if (!(md = (*env)->GetDirectBufferAddress(env, mdbuf)))
+		return (IO_THROWN);
+	if (sgio_unpack(env, iop, bufs, nbufs))
+		return (IO_THROWN);
+
+	memset(mm, 0, (size_t)nbufs * sizeof(mm[0]));
+	memset(sin6, 0, (size_t)nbufs * sizeof(sin6[0]));
+	i = -1;
+	while (++i < nbufs) {
+		if (iop[i].iov_len > /* MAX_PACKET_LEN */ 65536U)
+			iop[i].iov_len = 65536U;
+		mm[i].msg_hdr.msg_iov = &iop[i];
+		mm[i].msg_hdr.msg_iovlen = 1;
+		mm[i].msg_hdr.msg_name = &sin6[i];
+		mm[i].msg_hdr.msg_namelen = sizeof(sin6[i]);
+		mm[i].msg_hdr.msg_control = cmsgbuf[i];
+		mm[i].msg_hdr.msg_controllen = sizeof(cmsgbuf[i]);
+	}
+
+ retry:
+	/* block for the first datagram only, then take what is queued */
+	if ((n = recvmmsg(fd, mm, (unsigned int)nbufs,
+	    MSG_WAITFORONE, NULL)) == -1) {
+		if (errno == EAGAIN || errno == EWOULDBLOCK)
+			return (IO_EAVAIL);
+		if (errno == EINTR)
+			return (IO_EINTR);
+		if (errno == ECONNREFUSED) {
+			if (connected == JNI_FALSE)
+				goto retry;
+			return (ethrow(env, eX_PORTUNR, "recvmmsg(%d, [%d])",
+			    fd, (int)nbufs));
+		}
+		return (ethrow(env, eX_S_auto, "recvmmsg(%d, [%d])",
+		    fd, (int)nbufs));
+	}
+
+	i = -1;
+	while (++i < n) {
+		e = ECNBITS_INVALID_BIT;
+		trycmsg(&mm[i].msg_hdr, &e, &segsz, &tstamp, &drops);
+		md_put(&md[i], &mm[i].msg_hdr, &sin6[i], mm[i].msg_len, e, segsz, tstamp, drops);
+	}
+	return (n);
+}
+
+static JNICALL jint
+n_sendmmsg(JNIEnv *env, jclass cls __unused, jint fd,
+    jobjectArray bufs, jint nbufs, jobject mdbuf)
+{
+	int i, n;
+	struct ecnbits_md *md;
+	/* fixed size: nbufs is only validated below */
+	struct mmsghdr mm[BATCH_MAX];
+	struct iovec iop[BATCH_MAX];
+	char cmsgbuf[BATCH_MAX][ECNBITS_CMSGBUFLEN];
+	struct sockaddr_in6 sin6[BATCH_MAX];
+
+	if (nbufs < 1 || nbufs > BATCH_MAX)
+		return (throw(env, eX_S, EINVAL, "sendmmsg(%d, [%d])",
+		    fd, (int)nbufs));
+	if (!(md = (*env)->GetDirectBufferAddress(env, mdbuf)))
+		return (IO_THROWN);
+	if (sgio_unpack(env, iop, bufs, nbufs))
+		return (IO_THROWN);
+
+	memset(mm, 0, (size_t)nbufs * sizeof(mm[0]));
+	memset(sin6, 0, (size_t)nbufs * sizeof(sin6[0]));
+	i = -1;
+	while (++i < nbufs) {
+		if (iop[i].iov_len > /* MAX_PACKET_LEN */ 65536U)
+			iop[i].iov_len = 65536U;
+		mm[i].msg_hdr.msg_iov = &iop[i];
+		mm[i].msg_hdr.msg_iovlen = 1;
+		if (md[i].flags & MDF_SENDER) {
+			sin6[i].sin6_family = AF_INET6;
+			sin6[i].sin6_port = htons((uint16_t)md[i].port);
+			memcpy(sin6[i].sin6_addr.s6_addr, md[i].addr, 16);
+			sin6[i].sin6_scope_id = md[i].scope > 0 ?
+			    (uint32_t)md[i].scope : 0U;
+			mm[i].msg_hdr.msg_name = &sin6[i];
+			mm[i].msg_hdr.msg_namelen = sizeof(sin6[i]);
+		}
+		if (ECNBITS_VALID(md[i].tc)) {
+			mm[i].msg_hdr.msg_control = cmsgbuf[i];
+			mm[i].msg_hdr.msg_controllen = mkcmsg(cmsgbuf[i],
+			    md[i].tc & 0xFFU);
+		}
+	}
+
+	if ((n = sendmmsg(fd, mm, (unsigned int)nbufs, 0)) == -1) {
+		if (errno == EAGAIN || errno == EWOULDBLOCK)
+			return (IO_EAVAIL);
+		if (errno == EINTR)
+			return (IO_EINTR);
+		return (ethrow(env, errno == ECONNREFUSED ? eX_PORTUNR : eX_S_auto,
+		    "sendmmsg(%d, [%d])", fd, (int)nbufs));
+	}
+
+	i = -1;
+	while (++i < n)
+		md[i].len = (int32_t)mm[i].msg_len;
+	return (n);
+}
+
+static JNICALL jint
+n_sendgso(JNIEnv *env, jclass cls __unused, jint fd,
+    jobject bbuf, jint bbpos, jint bbsize, jbyteArray addr, jint port, jint scope,
+    jint segsize)
+{
+	ssize_t n;
+	char *buf;
+	struct msghdr m = {0};
+	struct iovec io;
+	char cmsgbuf[CMSG_SPACE(sizeof(uint16_t))];
+	struct cmsghdr *cmsg;
+	uint16_t gso = (uint16_t)segsize;
+	struct sockaddr_in6 sin6 = {0};
+
+	if (mksockaddr(env, &sin6, addr, port, scope) /* threw an exception */)
+		return (IO_THROWN);
+
+	if (!(buf = (*env)->GetDirectBufferAddress(env, bbuf)))
+		return (IO_THROWN);
+	/* size and segment count limits are enforced by the caller */
+	io.iov_base = buf + (unsigned int)bbpos;
+	io.iov_len = (unsigned int)bbsize;
+
+	m.msg_iov = &io;
+	m.msg_iovlen = 1;
+	m.msg_name = &sin6;
+	m.msg_namelen = sizeof(sin6);
+	memset(cmsgbuf, 0, sizeof(cmsgbuf));
+	m.msg_control = cmsgbuf;
+	m.msg_controllen = sizeof(cmsgbuf);
+	cmsg = CMSG_FIRSTHDR(&m);
+	cmsg->cmsg_level = SOL_UDP;
+	cmsg->cmsg_type = UDP_SEGMENT;
+	cmsg->cmsg_len = CMSG_LEN(sizeof(gso));
+	memcpy(CMSG_DATA(cmsg), &gso, sizeof(gso));
+
+	if ((n = sendmsg(fd, &m, 0)) == (ssize_t)-1) {
+		if (errno == EAGAIN || errno == EWOULDBLOCK)
+			return (IO_EAVAIL);
+		if (errno == EINTR)
+			return (IO_EINTR);
+		/* EIO: no checksum offload on the device */
+		if (errno == EIO || errno == ENOPROTOOPT || errno == EOPNOTSUPP)
+			return (IO_ENOTSUP);
+		/* segment too large for the path MTU, too many segments, etc. */
+		if (errno == EINVAL)
+			return (IO_EINVAL);
+		rgetnaminfo(r_errno, r_host, &sin6);
+		return (throw(env, r_errno == ECONNREFUSED ? eX_PORTUNR : eX_S_auto,
+		    r_errno, "sendgso(%d, %u/%u, [%s]:%u)", fd,
+		    (unsigned int)io.iov_len, (unsigned int)gso,
+		    r_host, (int)port));
+	}
+	return (n);
+}
+
+static JNICALL jint
+n_epcreate(JNIEnv *env, jclass cls __unused)
+{
+	int fd;
+
+	if ((fd = epoll_create1(EPOLL_CLOEXEC)) == -1)
+		return (ethrow(env, eX, "epoll_create1"));
+	return (fd);
+}
+
+static JNICALL void
+n_epctl(JNIEnv *env, jclass cls __unused, jint epfd, jint op, jint fd,
+    jint events)
+{
+	struct epoll_event epe;
+
+	memset(&epe, 0, sizeof(epe));
+	epe.events = (uint32_t)events;
+	epe.data.fd = fd;
+	if (epoll_ctl(epfd, op, fd, &epe))
+		ethrow(env, eX, "epoll_ctl(%d, %d, %d, 0x%X)", (int)epfd,
+		    (int)op, (int)fd, (unsigned int)events);
+}
+
+/* stores (fd, events) int pairs into the direct evbuf */
+static JNICALL jint
+n_epwait(JNIEnv *env, jclass cls __unused, jint epfd, jobject evbuf,
+    jint nevents, jint timeout)
+{
+	int i, n;
+	int32_t *ev;
+	struct epoll_event epe[EP_MAX];
+
+	if (nevents < 1 || nevents > EP_MAX)
+		return (throw(env, eX, EINVAL, "epoll_wait(%d, [%d])",
+		    (int)epfd, (int)nevents));
+	if (!(ev = (*env)->GetDirectBufferAddress(env, evbuf)))
+		return (IO_THROWN);
+
+	if ((n = epoll_wait(epfd, epe, nevents, timeout)) == -1) {
+		if (errno == EINTR)
+			return (IO_EINTR);
+		return (ethrow(env, eX, "epoll_wait(%d, [%d], %d)",
+		    (int)epfd, (int)nevents, (int)timeout));
+	}
+
+	i = -1;
+	while (++i < n) {
+		ev[2 * i] = epe[i].data.fd;
+		ev[2 * i + 1] = (int32_t)epe[i].events;
+	}
+	return (n);
+}
+
+static JNICALL jint
+n_evcreate(JNIEnv *env, jclass cls __unused)
+{
+	int fd;
+
+	if ((fd = eventfd(0, EFD_CLOEXEC | EFD_NONBLOCK)) == -1)
+		return (ethrow(env, eX, "eventfd"));
+	return (fd);
+}
+
+static JNICALL void
+n_evsignal(JNIEnv *env, jclass cls __unused, jint fd)
+{
+	uint64_t one = 1;
+
+	/* EAGAIN: counter saturated, which is still signalled */
+	if (write(fd, &one, sizeof(one)) == -1 && errno != EAGAIN)
+		ethrow(env, eX, "eventfd_write(%d)", (int)fd);
+}
+
+static JNICALL void
+n_evdrain(JNIEnv *env, jclass cls __unused, jint fd)
+{
+	uint64_t val;
+
+	/* EAGAIN: nothing to drain */
+	if (read(fd, &val, sizeof(val)) == -1 && errno != EAGAIN)
+		ethrow(env, eX, "eventfd_read(%d)", (int)fd);
+}
+
+/*
+ * io_uring engine: one ring per direction and channel, set up with raw
+ * syscalls (no liburing dependency). The receive ring keeps a multishot
+ * recvmsg posted whose datagrams land in a provided buffer ring; the
+ * send ring submits batches as linked sendmsg chains. Each ring is only
+ * used under the corresponding Java channel lock, so the rings need no
+ * locking of their own; only the kernel-shared indices are atomic.
+ */
+
+#define UR_ENTRIES	BATCH_MAX	/* SQ size; CQ is twice that */
+#define UR_NBUFS	64		/* provided buffers, power of two */
+#define UR_BGID		0		/* buffer group ID */
+#define UR_RXTAG	((uint64_t)0xEC0B175ULL)	/* user_data of the recvmsg */
+/* name area of the multishot recvmsg, keeps the control area aligned */
+#define UR_NAMELEN	32
+/* per provided buffer, room for a maximum-sized (or GRO) datagram */
+#define UR_BUFSZ	(sizeof(struct io_uring_recvmsg_out) + UR_NAMELEN + \
+			    ECNBITS_CMSGBUFLEN + 65535U)
+
+#if HAVE_URING
+struct ecnbits_uring {
+	int ringfd;
+	unsigned tosubmit;
+	/* mmap(2)ed rings, shared with the kernel */
+	void *sq_map;
+	void *cq_map;
+	size_t sq_mapsz;
+	size_t cq_mapsz;
+	struct io_uring_sqe *sqes;
+	size_t sqes_mapsz;
+	unsigned *sq_head, *sq_tail, *sq_mask, *sq_array;
+	unsigned *cq_head, *cq_tail, *cq_mask;
+	struct io_uring_cqe *cqes;
+	/* receiving: provided buffer ring and multishot state */
+	struct io_uring_buf_ring *br;
+	unsigned char *bufs;
+	unsigned short br_tail;
+	ecnbool armed;		/* the multishot recvmsg is posted */
+	ecnbool seen;		/* it delivered at least once */
+	int pending;		/* errno to report on the next call */
+	struct msghdr rxmsg;	/* template for the multishot recvmsg */
+	/* sending: must stay put until the completions are reaped */
+	struct msghdr txmsg[UR_ENTRIES];
+	struct iovec txiov[UR_ENTRIES];
+	struct sockaddr_in6 txsin6[UR_ENTRIES];
+	char txcmsg[UR_ENTRIES][ECNBITS_MKCMSGLEN];
+	int txres[UR_ENTRIES];
+};
+
+static void
+ur_free(struct ecnbits_uring *r)
+{
+	if (r->ringfd != -1)
+		close(r->ringfd);
+	if (r->sqes)
+		munmap(r->sqes, r->sqes_mapsz);
+	if (r->cq_map && r->cq_map != r->sq_map)
+		munmap(r->cq_map, r->cq_mapsz);
+	if (r->sq_map)
+		munmap(r->sq_map, r->sq_mapsz);
+	if (r->br)
+		munmap(r->br, UR_NBUFS * sizeof(struct io_uring_buf));
+	if (r->bufs)
+		munmap(r->bufs, (size_t)UR_NBUFS * UR_BUFSZ);
+	free(r);
+}
+
+static void *
+ur_mmap(int fd, size_t sz, off_t off)
+{
+	void *p;
+
+	p = mmap(NULL, sz, PROT_READ | PROT_WRITE,
+	    MAP_SHARED | MAP_POPULATE, fd, off);
+	return (p == MAP_FAILED ? NULL : p);
+}
+
+static void
+ur_bufput(struct ecnbits_uring *r, unsigned short bid)
+{
+	struct io_uring_buf *b = &r->br->bufs[r->br_tail & (UR_NBUFS - 1)];
+
+	b->addr = (uintptr_t)(r->bufs + (size_t)bid * UR_BUFSZ);
+	b->len = UR_BUFSZ;
+	b->bid = bid;
+	++r->br_tail;
+}
+
+static void
+ur_bufpublish(struct ecnbits_uring *r)
+{
+	__atomic_store_n(&r->br->tail, r->br_tail, __ATOMIC_RELEASE);
+}
+
+static struct ecnbits_uring *
+ur_setup(ecnbool rx)
+{
+	struct ecnbits_uring *r;
+	struct io_uring_params p;
+	struct io_uring_buf_reg reg;
+	unsigned short i;
+
+	if (!(r = calloc(1, sizeof(struct ecnbits_uring))))
+		return (NULL);
+	memset(&p, 0, sizeof(p));
+	p.flags = IORING_SETUP_CQSIZE;
+	p.cq_entries = 2 * UR_ENTRIES;
+	if ((r->ringfd = (int)syscall(__NR_io_uring_setup, UR_ENTRIES, &p)) == -1)
+		goto err;
+	/* SQ and CQ share one mapping since Linux 5.4 */
+	if (!(p.features & IORING_FEAT_SINGLE_MMAP))
+		goto err;
+
+	r->sq_mapsz = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+	r->cq_mapsz = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+	if (r->cq_mapsz > r->sq_mapsz)
+		r->sq_mapsz = r->cq_mapsz;
+	if (!(r->sq_map = ur_mmap(r->ringfd, r->sq_mapsz, IORING_OFF_SQ_RING)))
+		goto err;
+	r->cq_map = r->sq_map;
+	r->sqes_mapsz = p.sq_entries * sizeof(struct io_uring_sqe);
+	if (!(r->sqes = ur_mmap(r->ringfd, r->sqes_mapsz, IORING_OFF_SQES)))
+		goto err;
+
+#define ur_off(map,off) ((void *)((char *)(map) + (off)))
+	r->sq_head = ur_off(r->sq_map, p.sq_off.head);
+	r->sq_tail = ur_off(r->sq_map, p.sq_off.tail);
+	r->sq_mask = ur_off(r->sq_map, p.sq_off.ring_mask);
+	r->sq_array = ur_off(r->sq_map, p.sq_off.array);
+	r->cq_head = ur_off(r->cq_map, p.cq_off.head);
+	r->cq_tail = ur_off(r->cq_map, p.cq_off.tail);
+	r->cq_mask = ur_off(r->cq_map, p.cq_off.ring_mask);
+	r->cqes = ur_off(r->cq_map, p.cq_off.cqes);
+#undef ur_off
+
+	if (!rx)
+		return (r);
+
+	if ((r->br = mmap(NULL, UR_NBUFS * sizeof(struct io_uring_buf),
+	    PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS,
+	    -1, 0)) == MAP_FAILED) {
+		r->br = NULL;
+		goto err;
+	}
+	if ((r->bufs = mmap(NULL, (size_t)UR_NBUFS * UR_BUFSZ,
+	    PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS,
+	    -1, 0)) == MAP_FAILED) {
+		r->bufs = NULL;
+		goto err;
+	}
+	memset(&reg, 0, sizeof(reg));
+	reg.ring_addr = (uintptr_t)r->br;
+	reg.ring_entries = UR_NBUFS;
+	reg.bgid = UR_BGID;
+	if (syscall(__NR_io_uring_register, r->ringfd,
+	    IORING_REGISTER_PBUF_RING, &reg, 1) == -1)
+		goto err;
+	i = 0;
+	do {
+		ur_bufput(r, i);
+	} while (++i < UR_NBUFS);
+	ur_bufpublish(r);
+
+	r->rxmsg.msg_namelen = UR_NAMELEN;
+	r->rxmsg.msg_controllen = ECNBITS_CMSGBUFLEN;
+	return (r);
+
+ err:
+	ur_free(r);
+	return (NULL);
+}
+
+/* caller fills in the returned SQE */
+static struct io_uring_sqe *
+ur_sqe(struct ecnbits_uring *r)
+{
+	unsigned tail = *r->sq_tail;
+	unsigned idx = tail & *r->sq_mask;
+
+	r->sq_array[idx] = idx;
+	memset(&r->sqes[idx], 0, sizeof(struct io_uring_sqe));
+	return (&r->sqes[idx]);
+}
+
+static void
+ur_sqpush(struct ecnbits_uring *r)
+{
+	__atomic_store_n(r->sq_tail, *r->sq_tail + 1, __ATOMIC_RELEASE);
+	++r->tosubmit;
+}
+
+/* submits pending SQEs and optionally waits for nwait completions */
+static int
+ur_enter(struct ecnbits_uring *r, unsigned nwait)
+{
+	int rv;
+
+	rv = (int)syscall(__NR_io_uring_enter, r->ringfd, r->tosubmit, nwait,
+	    nwait ? IORING_ENTER_GETEVENTS : 0, NULL, 0);
+	/* the kernel may have consumed SQEs even if interrupted */
+	r->tosubmit = *r->sq_tail -
+	    __atomic_load_n(r->sq_head, __ATOMIC_ACQUIRE);
+	return (rv);
+}
+
+static void
+ur_arm(struct ecnbits_uring *r, int fd)
+{
+	struct io_uring_sqe *sqe = ur_sqe(r);
+
+	sqe->opcode = IORING_OP_RECVMSG;
+	sqe->fd = fd;
+	sqe->addr = (uintptr_t)&r->rxmsg;
+	sqe->len = 1;
+	sqe->ioprio = IORING_RECV_MULTISHOT;
+	sqe->flags = IOSQE_BUFFER_SELECT;
+	sqe->buf_group = UR_BGID;
+	sqe->user_data = UR_RXTAG;
+	ur_sqpush(r);
+	r->armed = 1;
+}
+
+/*-
+ * Processes one receive completion. Returns 1 if a datagram (or, with
+ * no sender, EOF after shutdown) was stored, 0 if there was nothing to
+ * deliver, or a negative errno value.
+ */
+static int
+ur_rxcqe(struct ecnbits_uring *r, const struct io_uring_cqe *cqe,
+    const struct iovec *iov, struct ecnbits_md *md)
+{
+	struct io_uring_recvmsg_out *o;
+	unsigned char *p;
+	unsigned short bid, e;
+	size_t hdrlen, plen;
+	struct sockaddr_in6 sin6;
+	struct msghdr m;
+	int segsz;
+	int64_t tstamp;
+	uint32_t drops;
+
+	if (cqe->user_data != UR_RXTAG)
+		return (0);
+	if (!(cqe->flags & IORING_CQE_F_MORE))
+		r->armed = 0;
+	if (cqe->res < 0)
+		return (cqe->res);
+	memset(&m, 0, sizeof(m));
+	if (!(cqe->flags & IORING_CQE_F_BUFFER)) {
+		/* multishot terminated by shutdown(2): report as EOF */
+		md_put(md, &m, NULL, 0, ECNBITS_INVALID_BIT, 0, 0, 0);
+		return (1);
+	}
+	bid = cqe->flags >> IORING_CQE_BUFFER_SHIFT;
+	p = r->bufs + (size_t)bid * UR_BUFSZ;
+	o = (struct io_uring_recvmsg_out *)p;
+	hdrlen = sizeof(*o) + UR_NAMELEN + ECNBITS_CMSGBUFLEN;
+	if ((size_t)cqe->res < hdrlen) {
+		ur_bufput(r, bid);
+		return (0);
+	}
+	r->seen = 1;
+
+	memset(&sin6, 0, sizeof(sin6));
+	memcpy(&sin6, p + sizeof(*o), o->namelen < sizeof(sin6) ?
+	    o->namelen : sizeof(sin6));
+	m.msg_control = p + sizeof(*o) + UR_NAMELEN;
+	m.msg_controllen = o->controllen;
+	m.msg_flags = (int)o->flags;
+	e = ECNBITS_INVALID_BIT;
+	trycmsg(&m, &e, &segsz, &tstamp, &drops);
+
+	plen = (size_t)cqe->res - hdrlen;
+	if (plen > iov->iov_len) {
+		plen = iov->iov_len;
+		m.msg_flags |= MSG_TRUNC;
+	}
+	memcpy(iov->iov_base, p + hdrlen, plen);
+	md_put(md, &m, &sin6, plen, e, segsz, tstamp, drops);
+	ur_bufput(r, bid);
+	return (1);
+}
+#endif
+
+/* 0 if io_uring is not available, the caller then uses the syscalls */
+static JNICALL jlong
+n_uropen(JNIEnv *env __unused, jclass cls __unused, jboolean rx)
+{
+#if HAVE_URING
+	return ((jlong)(intptr_t)ur_setup(rx == JNI_TRUE ? 1 : 0));
+#else
+	return (0);
+#endif
+}
+
+static JNICALL void
+n_urclose(JNIEnv *env __unused, jclass cls __unused, jlong h)
+{
+#if HAVE_URING
+	if (h)
+		ur_free((struct ecnbits_uring *)(intptr_t)h);
+#endif
+}
+
+static JNICALL jint
+n_urecvmmsg(JNIEnv *env, jclass cls __unused, jlong h, jint fd,
+    jobjectArray bufs, jint nbufs, jobject mdbuf, jboolean connected,
+    jboolean block)
+{
+#if HAVE_URING
+	struct ecnbits_uring *r = (struct ecnbits_uring *)(intptr_t)h;
+	struct ecnbits_md *md;
+	/* fixed size: nbufs is only validated below */
+	struct iovec iop[BATCH_MAX];
+	struct io_uring_cqe *cqe;
+	unsigned head;
+	int n = 0, pass = 0, rv, ec;
+
+	if (nbufs < 1 || nbufs > BATCH_MAX)
+		return (throw(env, eX_S, EINVAL, "uring recvmsg(%d, [%d])",
+		    fd, (int)nbufs));
+	if (!(md = (*env)->GetDirectBufferAddress(env, mdbuf)))
+		return (IO_THROWN);
+	if (sgio_unpack(env, iop, bufs, nbufs))
+		return (IO_THROWN);
+
+	if ((ec = r->pending)) {
+		r->pending = 0;
+		return (throw(env, ec == ECONNREFUSED ? eX_PORTUNR : eX_S_auto,
+		    ec, "uring recvmsg(%d, [%d])", fd, (int)nbufs));
+	}
+
+	while (1) {
+		head = *r->cq_head;
+		ec = 0;
+		while (n < nbufs &&
+		    head != __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE)) {
+			cqe = &r->cqes[head & *r->cq_mask];
+			if (iop[n].iov_len > /* MAX_PACKET_LEN */ 65536U)
+				iop[n].iov_len = 65536U;
+			rv = ur_rxcqe(r, cqe, &iop[n], &md[n]);
+			__atomic_store_n(r->cq_head, ++head, __ATOMIC_RELEASE);
+			if (rv > 0)
+				++n;
+			else if (rv == -ENOBUFS || rv == -EAGAIN) {
+				/* buffers exhausted or nonblocking, rearmed below */
+			} else if (rv == -ECONNREFUSED) {
+				if (connected == JNI_TRUE) {
+					ec = ECONNREFUSED;
+					break;
+				}
+			} else if (rv < 0) {
+				ec = -rv;
+				break;
+			}
+		}
+		ur_bufpublish(r);
+		if (ec) {
+			if (ec == EINVAL && !r->seen)
+				/* multishot recvmsg not supported */
+				return (IO_ENOTSUP);
+			if (n > 0) {
+				/* report after the datagrams */
+				r->pending = ec;
+				return (n);
+			}
+			return (throw(env, ec == ECONNREFUSED ? eX_PORTUNR :
+			    eX_S_auto, ec, "uring recvmsg(%d, [%d])",
+			    fd, (int)nbufs));
+		}
+		if (!r->armed)
+			ur_arm(r, fd);
+		if (n > 0) {
+			if (r->tosubmit)
+				/* rearm without waiting, errors recur later */
+				ur_enter(r, 0);
+			return (n);
+		}
+		/* nonblocking: one more look after submitting, then give up */
+		if (block != JNI_TRUE && (pass++ || !r->tosubmit))
+			return (IO_EAVAIL);
+		if ((block == JNI_TRUE || r->tosubmit) &&
+		    ur_enter(r, block == JNI_TRUE ? 1 : 0) == -1) {
+			if (errno == EINTR)
+				return (IO_EINTR);
+			if (errno != EAGAIN && errno != EBUSY)
+				return (ethrow(env, eX_S_auto,
+				    "io_uring_enter(%d)", fd));
+		}
+	}
+#else
+	(void)h;
+	(void)fd;
+	(void)bufs;
+	(void)nbufs;
+	(void)mdbuf;
+	(void)connected;
+	(void)block;
+	return (IO_ENOTSUP);
+#endif
+}
+
+/*-
+ * Waits up to timeout ms (0: do not wait, negative: forever) for the
+ * receive ring to have a completion, since the multishot recvmsg takes
+ * the datagrams off the socket so that poll(2) never sees them; returns
+ * 1 if n_urecvmmsg has something to report (datagram or error), else 0,
+ * or IO_ENOTSUP if the kernel cannot wait with a timeout
+ */
+static JNICALL jint
+n_urpollin(JNIEnv *env, jclass cls __unused, jlong h, jint fd, jint timeout)
+{
+#if HAVE_URING
+	struct ecnbits_uring *r = (struct ecnbits_uring *)(intptr_t)h;
+	struct io_uring_getevents_arg arg;
+	struct __kernel_timespec ts;
+	int rv;
+
+	if (r->pending)
+		return (1);
+	if (!r->armed)
+		ur_arm(r, fd);
+	if (*r->cq_head != __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE)) {
+		if (r->tosubmit)
+			ur_enter(r, 0);
+		return (1);
+	}
+	memset(&arg, 0, sizeof(arg));
+	if (timeout >= 0) {
+		ts.tv_sec = timeout / 1000;
+		ts.tv_nsec = (long long)(timeout % 1000) * 1000000LL;
+		arg.ts = (uintptr_t)&ts;
+	}
+	rv = (int)syscall(__NR_io_uring_enter, r->ringfd, r->tosubmit,
+	    timeout == 0 ? 0U : 1U,
+	    IORING_ENTER_GETEVENTS | IORING_ENTER_EXT_ARG, &arg, sizeof(arg));
+	r->tosubmit = *r->sq_tail -
+	    __atomic_load_n(r->sq_head, __ATOMIC_ACQUIRE);
+	if (rv == -1) {
+		if (errno == EINTR)
+			return (IO_EINTR);
+		if (errno == EINVAL)
+			/* IORING_ENTER_EXT_ARG needs Linux 5.11 */
+			return (IO_ENOTSUP);
+		if (errno != ETIME && errno != EAGAIN && errno != EBUSY)
+			return (ethrow(env, eX_S_auto, "io_uring_enter(%d)", fd));
+	}
+	return (*r->cq_head != __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE));
+#else
+	(void)env;
+	(void)h;
+	(void)fd;
+	(void)timeout;
+	return (IO_ENOTSUP);
+#endif
+}
+
+static JNICALL jint
+n_usendmmsg(JNIEnv *env, jclass cls __unused, jlong h, jint fd,
+    jobjectArray bufs, jint nbufs, jobject mdbuf)
+{
+#if HAVE_URING
+	struct ecnbits_uring *r = (struct ecnbits_uring *)(intptr_t)h;
+	struct ecnbits_md *md;
+	struct io_uring_sqe *sqe;
+	struct io_uring_cqe *cqe;
+	unsigned head;
+	int i, n, got;
+
+	if (nbufs < 1 || nbufs > BATCH_MAX)
+		return (throw(env, eX_S, EINVAL, "uring sendmsg(%d, [%d])",
+		    fd, (int)nbufs));
+	if (!(md = (*env)->GetDirectBufferAddress(env, mdbuf)))
+		return (IO_THROWN);
+	if (sgio_unpack(env, r->txiov, bufs, nbufs))
+		return (IO_THROWN);
+
+	memset(r->txmsg, 0, nbufs * sizeof(struct msghdr));
+	memset(r->txsin6, 0, nbufs * sizeof(struct sockaddr_in6));
+	i = -1;
+	while (++i < nbufs) {
+		if (r->txiov[i].iov_len > /* MAX_PACKET_LEN */ 65536U)
+			r->txiov[i].iov_len = 65536U;
+		r->txmsg[i].msg_iov = &r->txiov[i];
+		r->txmsg[i].msg_iovlen = 1;
+		if (md[i].flags & MDF_SENDER) {
+			r->txsin6[i].sin6_family = AF_INET6;
+			r->txsin6[i].sin6_port = htons((uint16_t)md[i].port);
+			memcpy(r->txsin6[i].sin6_addr.s6_addr, md[i].addr, 16);
+			r->txsin6[i].sin6_scope_id = md[i].scope > 0 ?
+			    (uint32_t)md[i].scope : 0U;
+			r->txmsg[i].msg_name = &r->txsin6[i];
+			r->txmsg[i].msg_namelen = sizeof(r->txsin6[i]);
+		}
+		if (ECNBITS_VALID(md[i].tc)) {
+			r->txmsg[i].msg_control = r->txcmsg[i];
+			r->txmsg[i].msg_controllen = mkcmsg(r->txcmsg[i],
+			    md[i].tc & 0xFFU);
+		}
+		sqe = ur_sqe(r);
+		sqe->opcode = IORING_OP_SENDMSG;
+		sqe->fd = fd;
+		sqe->addr = (uintptr_t)&r->txmsg[i];
+		sqe->len = 1;
+		/* keep datagram order; a failure cancels the rest */
+		if (i < nbufs - 1)
+			sqe->flags = IOSQE_IO_LINK;
+		sqe->user_data = (uint64_t)i;
+		ur_sqpush(r);
+	}
+
+	/* the kernel references txmsg until all completions are in */
+	got = 0;
+	while (1) {
+		head = *r->cq_head;
+		while (head != __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE)) {
+			cqe = &r->cqes[head & *r->cq_mask];
+			if (cqe->user_data < (uint64_t)nbufs) {
+				r->txres[cqe->user_data] = cqe->res;
+				++got;
+			}
+			__atomic_store_n(r->cq_head, ++head, __ATOMIC_RELEASE);
+		}
+		if (got >= nbufs && !r->tosubmit)
+			break;
+		if (ur_enter(r, (unsigned)(nbufs - got)) == -1 &&
+		    errno != EINTR && errno != EAGAIN && errno != EBUSY)
+			return (ethrow(env, eX_S_auto, "io_uring_enter(%d)",
+			    fd));
+	}
+
+	n = 0;
+	while (n < nbufs && r->txres[n] >= 0) {
+		md[n].len = (int32_t)r->txres[n];
+		++n;
+	}
+	if (n > 0)
+		return (n);
+	if (r->txres[0] == -EAGAIN || r->txres[0] == -EWOULDBLOCK)
+		return (IO_EAVAIL);
+	if (r->txres[0] == -EINTR)
+		return (IO_EINTR);
+	return (throw(env, r->txres[0] == -ECONNREFUSED ? eX_PORTUNR :
+	    eX_S_auto, -r->txres[0], "uring sendmsg(%d, [%d])",
+	    fd, (int)nbufs));
+#else
+	(void)h;
+	(void)fd;
+	(void)bufs;
+	(void)nbufs;
+	(void)mdbuf;
+	return (IO_ENOTSUP);
+#endif
+}
+
+/* wakes up threads waiting on a ring for this socket, before close */
+static JNICALL void
+n_preclose(JNIEnv *env __unused, jclass cls __unused, jint fd)
+{
+	/* ENOTCONN for unconnected sockets, which are still shut down */
+	shutdown(fd, SHUT_RDWR);
+}
+
+/*-
+ * Attaches a classic BPF program to the reuseport group of the socket,
+ * selecting the socket with the returned index, for nshards sockets:
+ * mode 1 (flow) by sender address and port (the last 32 bits of the
+ * address for IPv6, assuming no IPv4 options or IPv6 extension headers;
+ * the data pointer is past the UDP header here, so this uses offsets
+ * from the network header), mode 2 (CPU) by the CPU handling the packet
+ */
+static JNICALL void
+n_reuseport(JNIEnv *env, jclass cls __unused, jint fd, jint mode, jint nshards)
+{
+	struct sock_filter flow[] = {
+		/* IP version */
+		BPF_STMT(BPF_LD | BPF_B | BPF_ABS, SKF_NET_OFF + 0),
+		BPF_STMT(BPF_ALU | BPF_RSH | BPF_K, 4),
+		BPF_JUMP(BPF_JMP | BPF_JEQ | BPF_K, 6, 0, 4),
+		/* IPv6: X = source address (low 32 bits), A = source port */
+		BPF_STMT(BPF_LD | BPF_W | BPF_ABS, SKF_NET_OFF + 20),
+		BPF_STMT(BPF_MISC | BPF_TAX, 0),
+		BPF_STMT(BPF_LD | BPF_H | BPF_ABS, SKF_NET_OFF + 40),
+		BPF_JUMP(BPF_JMP | BPF_JA, 3, 0, 0),
+		/* IPv4: X = source address, A = source port */
+		BPF_STMT(BPF_LD | BPF_W | BPF_ABS, SKF_NET_OFF + 12),
+		BPF_STMT(BPF_MISC | BPF_TAX, 0),
+		BPF_STMT(BPF_LD | BPF_H | BPF_ABS, SKF_NET_OFF + 20),
+		/* Fibonacci hashing, then reduce to the group size */
+		BPF_STMT(BPF_ALU | BPF_XOR | BPF_X, 0),
+		BPF_STMT(BPF_ALU | BPF_MUL | BPF_K, 0x9E3779B1U),
+		BPF_STMT(BPF_ALU | BPF_RSH | BPF_K, 16),
+		BPF_STMT(BPF_ALU | BPF_MOD | BPF_K, (unsigned int)nshards),
+		BPF_STMT(BPF_RET | BPF_A, 0)
+	};
+	struct sock_filter cpu[] = {
+		BPF_STMT(BPF_LD | BPF_W | BPF_ABS, SKF_AD_OFF + SKF_AD_CPU),
+		BPF_STMT(BPF_ALU | BPF_MOD | BPF_K, (unsigned int)nshards),
+		BPF_STMT(BPF_RET | BPF_A, 0)
+	};
+	struct sock_fprog prog;
+
+	switch (mode) {
+	case 1: // REUSEPORT_FLOW
+		prog.len = NELEM(flow);
+		prog.filter = flow;
+		break;
+	case 2: // REUSEPORT_CPU
+		prog.len = NELEM(cpu);
+		prog.filter = cpu;
+		break;
+	default:
+		/* NOTREACHED */
+		throw(env, eX_S, 0, "unknown reuseport mode %d", mode);
+		return;
+	}
+	if (setsockopt(fd, SOL_SOCKET, SO_ATTACH_REUSEPORT_CBPF,
+	    &prog, sizeof(prog)) == -1)
+		ethrow(env, eX_S, "setsockopt(%d, %s)",
+		    fd, "SO_ATTACH_REUSEPORT_CBPF");
+}
+
+/* pins the calling thread to the given CPU */
+static JNICALL void
+n_setaffinity(JNIEnv *env, jclass cls __unused, jint cpu)
+{
+	cpu_set_t set;
+
+	if (cpu < 0 || cpu >= CPU_SETSIZE) {
+		throw(env, eX, EINVAL, "sched_setaffinity(%d)", (int)cpu);
+		return;
+	}
+	CPU_ZERO(&set);
+	CPU_SET(cpu, &set);
+	/* pid 0 is the calling thread, not the whole process */
+	if (sched_setaffinity(0, sizeof(set), &set))
+		ethrow(env, eX, "sched_setaffinity(%d)", (int)cpu);
+}
+
+static JNICALL jint
+n_getcpu(JNIEnv *env __unused, jclass cls __unused)
+{
+	/* -1 if unavailable */
+	return (sched_getcpu());
+}
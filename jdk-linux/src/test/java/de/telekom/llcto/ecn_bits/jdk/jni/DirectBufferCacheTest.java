@@ -0,0 +1,107 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link DirectBufferCache}
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public class DirectBufferCacheTest {
+    /**
+     * Tests reuse of the per-thread direct buffers by size class
+     */
+    @Test
+    public void testReuse() {
+        val bb1 = DirectBufferCache.get(100);
+        assertTrue(bb1.isDirect(), "direct");
+        assertEquals(0, bb1.position(), "position");
+        assertEquals(100, bb1.limit(), "limit");
+        DirectBufferCache.release(bb1);
+        val bb2 = DirectBufferCache.get(300);
+        assertSame(bb1, bb2, "reused from the same size class");
+        assertEquals(300, bb2.limit(), "limit reset");
+        assertNotSame(bb2, DirectBufferCache.get(300), "handed out only once");
+        DirectBufferCache.release(bb2);
+        assertNotSame(bb2, DirectBufferCache.get(3000), "other size class");
+        val big = DirectBufferCache.get(70000);
+        assertEquals(70000, big.capacity(), "not cached");
+        DirectBufferCache.release(big);
+    }
+
+    /**
+     * Tests that a thread caches at most {@link DirectBufferCache#TOTAL_BYTES}
+     * across all size classes, and the maximum cached size setting
+     *
+     * @throws InterruptedException from {@link Thread#join()}
+     */
+    @Test
+    public void testLimits() throws InterruptedException {
+        final int n = 2 * DirectBufferCache.TOTAL_BYTES / 65536;
+        val reused = new AtomicInteger(-1);
+        // in a new thread, to start with an empty cache
+        val t = new Thread(() -> {
+            final Set<ByteBuffer> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            final ByteBuffer[] bbs = new ByteBuffer[n];
+            for (int i = 0; i < n; ++i) {
+                bbs[i] = DirectBufferCache.get(65536);
+                seen.add(bbs[i]);
+            }
+            for (int i = 0; i < n; ++i) {
+                DirectBufferCache.release(bbs[i]);
+            }
+            // would fit into the 512-byte size class but not in the total
+            final ByteBuffer small = ByteBuffer.allocateDirect(512);
+            DirectBufferCache.release(small);
+            if (DirectBufferCache.get(512) == small) {
+                return;
+            }
+            int k = 0;
+            for (int i = 0; i < n; ++i) {
+                if (seen.contains(DirectBufferCache.get(65536))) {
+                    ++k;
+                }
+            }
+            reused.set(k);
+        });
+        t.start();
+        t.join();
+        assertEquals(n / 2, reused.get(), "reused up to the total, nothing more");
+
+        assertEquals(16, DirectBufferCache.cacheShift(65536), "default");
+        assertEquals(16, DirectBufferCache.cacheShift(Integer.MAX_VALUE), "clamped");
+        assertEquals(12, DirectBufferCache.cacheShift(5000), "rounded down");
+        assertEquals(9, DirectBufferCache.cacheShift(512), "smallest");
+        assertEquals(8, DirectBufferCache.cacheShift(511), "none");
+    }
+}
@@ -26,15 +26,41 @@ import lombok.val;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectionKey;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 /**
  * Integration test for ECN-Bits JNI functions (end-to-end tests, with network)
@@ -156,4 +182,1388 @@ public class ECNBitsDatagramChannelImplTest {
             LOG.info("SGIO test: end");
         }
     }
+
+    /**
+     * Tests batch receiving (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testReceiveBatch() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            val raddr = rchan.getLocalAddress();
+            rchan.startMeasurement();
+            schan.setOption(StandardSocketOptions.IP_TOS, (int) Bits.ECT0.getBits());
+            schan.send(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)), raddr);
+            schan.setOption(StandardSocketOptions.IP_TOS, (int) Bits.CE.getBits());
+            schan.send(ByteBuffer.wrap("ba".getBytes(StandardCharsets.UTF_8)), raddr);
+            schan.setOption(StandardSocketOptions.IP_TOS, (int) Bits.ECT1.getBits());
+            schan.send(ByteBuffer.wrap("bazz".getBytes(StandardCharsets.UTF_8)), raddr);
+
+            val rbufs = new ByteBuffer[] {
+              ByteBuffer.allocate(8),
+              ByteBuffer.allocateDirect(8),
+              ((ByteBuffer) ByteBuffer.allocateDirect(16).position(4)).slice(),
+              ByteBuffer.allocateDirect(8)
+            };
+            val infos = new ECNBitsDatagramInfo[rbufs.length];
+            for (int i = 0; i < infos.length; ++i) {
+                infos[i] = new ECNBitsDatagramInfo();
+            }
+            int n = rchan.receiveBatch(rbufs, infos);
+            if (n < 3) {
+                // the last datagrams may still be in flight
+                n += rchan.receiveBatch(Arrays.copyOfRange(rbufs, n, rbufs.length),
+                  Arrays.copyOfRange(infos, n, infos.length));
+            }
+            assertEquals(3, n, "datagrams received");
+            val sent = new String[] { "foo", "ba", "bazz" };
+            val bits = new Bits[] { Bits.ECT0, Bits.CE, Bits.ECT1 };
+            for (int i = 0; i < n; ++i) {
+                assertEquals(sent[i].length(), infos[i].getLength(), "length " + i);
+                assertEquals(sent[i].length(), rbufs[i].position(), "position " + i);
+                assertEquals(schan.getLocalAddress(), infos[i].getSender(), "sender " + i);
+                assertFalse(infos[i].isTruncated(), "truncated " + i);
+                assertEquals(bits[i], infos[i].getBits(), "bits " + i);
+                rbufs[i].flip();
+                assertEquals(sent[i], StandardCharsets.UTF_8.decode(rbufs[i]).toString(), "content " + i);
+            }
+            assertEquals(0, rbufs[3].position(), "unused buffer");
+            assertEquals(Bits.ECT1.getBits(), rchan.retrieveLastTrafficClass(), "last tc");
+            val stats = rchan.getMeasurement(false);
+            assertEquals(3, stats.getReceivedPackets(), "measured packets");
+            assertEquals(1, stats.getCongestedPackets(), "measured congested packets");
+            assertEquals(1L, stats.getPackets(Bits.ECT0), "measured ECT(0) packets");
+            assertEquals(1L, stats.getPackets(Bits.ECT1), "measured ECT(1) packets");
+            assertEquals(0L, stats.getPackets(Bits.NO), "measured non-ECT packets");
+            assertEquals(0L, stats.getUnknownPackets(), "measured packets without tc");
+            assertEquals(9L, stats.getReceivedBytes(), "measured bytes");
+            assertEquals(2L, stats.getCongestedBytes(), "measured congested bytes");
+            assertEquals(4L, stats.getBytes(Bits.ECT1), "measured ECT(1) bytes");
+            assertEquals(2.0 / 9.0, stats.getByteCongestionFactor(), 1e-9, "byte congestion factor");
+            val sizes = stats.getSizeHistogram();
+            assertEquals(ECNMeasurer.NSIZES, sizes.length, "size buckets");
+            assertEquals(2L, sizes[2], "2‥3 byte datagrams");
+            assertEquals(1L, sizes[3], "4‥7 byte datagrams");
+            assertTrue(stats.getPacketRate() > 0, "packet rate");
+            assertEquals(3.0, stats.getByteRate() / stats.getPacketRate(), 1e-9, "average size");
+        }
+    }
+
+    /**
+     * Tests that measurement sessions keep independent periods (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testMeasurementSessions() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            val rbuf = ByteBuffer.allocate(16);
+            val fast = rchan.openMeasurementSession();
+            rchan.startMeasurement();
+            for (int i = 0; i < 2; ++i) {
+                schan.write(ByteBuffer.wrap(new byte[4]), Bits.CE.getBits());
+                rchan.receive(rbuf);
+                rbuf.clear();
+            }
+            try (val slow = rchan.socket().openMeasurementSession()) {
+                schan.write(ByteBuffer.wrap(new byte[4]), Bits.NO.getBits());
+                rchan.receive(rbuf);
+                rbuf.clear();
+                assertEquals(3, fast.getMeasurement(true).getReceivedPackets(), "fast period 1");
+                assertEquals(1, slow.getMeasurement(false).getReceivedPackets(), "slow peek");
+                schan.write(ByteBuffer.wrap(new byte[4]), Bits.CE.getBits());
+                rchan.receive(rbuf);
+                rbuf.clear();
+                val stats = fast.getMeasurement(true);
+                assertEquals(1, stats.getReceivedPackets(), "fast period 2");
+                assertEquals(1, stats.getCongestedPackets(), "fast period 2 CE");
+                fast.close();
+                assertFalse(fast.isOpen(), "fast closed");
+                assertNull(fast.getMeasurement(true), "closed session");
+                schan.write(ByteBuffer.wrap(new byte[4]), Bits.ECT0.getBits());
+                rchan.receive(rbuf);
+                rbuf.clear();
+                val slowStats = slow.getMeasurement(true);
+                assertEquals(3, slowStats.getReceivedPackets(), "slow period");
+                assertEquals(1L, slowStats.getPackets(Bits.NO), "slow not-ECT");
+                assertEquals(0, slow.getMeasurement(false).getReceivedPackets(), "slow reset");
+            }
+            // the legacy period was not disturbed by either session
+            val stats = rchan.getMeasurement(false);
+            assertEquals(5, stats.getReceivedPackets(), "legacy period");
+            assertEquals(3, stats.getCongestedPackets(), "legacy CE");
+            assertNull(rchan.getMeasurement(false), "legacy stopped");
+        }
+    }
+
+    /**
+     * Tests delivery of periodic statistics by the timing-wheel scheduler (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link CountDownLatch#await(long, TimeUnit)}
+     */
+    @Test
+    public void testMeasurementScheduler() throws IOException, InterruptedException {
+        val executor = Executors.newSingleThreadExecutor();
+        // closed explicitly below, to check that it cancels
+        val scheduler = new ECNMeasurementScheduler(100, TimeUnit.MICROSECONDS);
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            val fastStats = new ConcurrentLinkedQueue<ECNStatistics>();
+            val slowStats = new ConcurrentLinkedQueue<ECNStatistics>();
+            val slowDone = new CountDownLatch(1);
+            final long t0 = System.nanoTime();
+            val fast = scheduler.schedule(rchan, 10, TimeUnit.MILLISECONDS, (r, stats) -> {
+                assertSame(rchan, r, "fast receiver");
+                fastStats.add(stats);
+            });
+            // 4500 ticks: placed on the third wheel level, cascaded down twice
+            val slow = scheduler.schedule(rchan, 450, TimeUnit.MILLISECONDS, (r, stats) -> {
+                slowStats.add(stats);
+                slowDone.countDown();
+            }, executor);
+
+            val rbuf = ByteBuffer.allocate(16);
+            for (int i = 0; i < 3; ++i) {
+                schan.write(ByteBuffer.wrap(new byte[4]), Bits.CE.getBits());
+                rchan.receive(rbuf);
+                rbuf.clear();
+            }
+            assertTrue(slowDone.await(2, TimeUnit.SECONDS), "slow period delivered");
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+            LOG.info("scheduler: slow period after " + elapsed + " ms, " + fastStats.size() + " fast periods");
+            // ticks never run ahead of the clock, but may lag on a loaded host
+            assertTrue(elapsed >= 450, "slow period length " + elapsed);
+            val stats = slowStats.peek();
+            assertEquals(3, stats.getReceivedPackets(), "slow packets");
+            assertEquals(3, stats.getCongestedPackets(), "slow CE packets");
+            // ticks are processed in order, the fast one was scheduled first
+            assertTrue(fastStats.size() >= 44, "fast periods " + fastStats.size());
+            assertEquals(3L, fastStats.stream().mapToLong(ECNStatistics::getReceivedPacketCount).sum(),
+              "fast packets");
+
+            fast.cancel();
+            assertFalse(fast.isActive(), "fast cancelled");
+            final int n = fastStats.size();
+            // joins the scheduler thread, which delivers the fast periods
+            scheduler.close();
+            assertTrue(fastStats.size() <= n + 1, "no deliveries after cancel");
+            assertFalse(slow.isActive(), "cancelled by close");
+        } finally {
+            scheduler.close();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests CE onset/offset notifications (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link LinkedBlockingQueue#poll(long, TimeUnit)}
+     */
+    @Test
+    public void testCongestionListener() throws IOException, InterruptedException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            assertThrows(IllegalArgumentException.class, () ->
+              rchan.setCongestionListener((c, b) -> { }, 8, 2, 2, null));
+            val events = new LinkedBlockingQueue<Boolean>();
+            val receiver = Thread.currentThread();
+            rchan.setCongestionListener((c, congested) -> {
+                assertSame(rchan, c, "channel");
+                if (Thread.currentThread() != receiver) {
+                    events.add(congested);
+                }
+            }, 8, 3, 0, null);
+
+            val rbuf = ByteBuffer.allocate(16);
+            for (int i = 0; i < 2; ++i) {
+                schan.write(ByteBuffer.wrap(new byte[4]), Bits.CE.getBits());
+                rchan.receive(rbuf);
+                rbuf.clear();
+            }
+            assertNull(events.poll(50, TimeUnit.MILLISECONDS), "below onset");
+            schan.write(ByteBuffer.wrap(new byte[4]), Bits.CE.getBits());
+            rchan.receive(rbuf);
+            rbuf.clear();
+            assertEquals(Boolean.TRUE, events.poll(1, TimeUnit.SECONDS), "onset");
+
+            // the CE marks only leave the window after eight more packets
+            val rbufs = new ByteBuffer[8];
+            val infos = new ECNBitsDatagramInfo[8];
+            for (int i = 0; i < 8; ++i) {
+                rbufs[i] = ByteBuffer.allocate(16);
+                infos[i] = new ECNBitsDatagramInfo();
+            }
+            for (int i = 0; i < 7; ++i) {
+                schan.write(ByteBuffer.wrap(new byte[4]), Bits.ECT1.getBits());
+            }
+            int n = 0;
+            while (n < 7) {
+                n += rchan.receiveBatch(Arrays.copyOfRange(rbufs, n, 7), Arrays.copyOfRange(infos, n, 7));
+            }
+            assertNull(events.poll(50, TimeUnit.MILLISECONDS), "above offset");
+            schan.write(ByteBuffer.wrap(new byte[4]), Bits.NO.getBits());
+            rchan.receive(rbuf);
+            assertEquals(Boolean.FALSE, events.poll(1, TimeUnit.SECONDS), "offset");
+            rchan.setCongestionListener(null, 0, 0, 0, null);
+        }
+    }
+
+    /**
+     * Tests per-peer accounting on an unconnected channel (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testPeerStatistics() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan1 = ECNBitsDatagramChannel.open();
+             val schan2 = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan1.connect(rchan.getLocalAddress());
+            schan2.connect(rchan.getLocalAddress());
+            assertTrue(rchan.getPeerMeasurements(false).isEmpty(), "not enabled");
+            rchan.setPeerStatistics(16, 1, TimeUnit.MINUTES);
+            val peer1 = (InetSocketAddress) schan1.getLocalAddress();
+            val peer2 = (InetSocketAddress) schan2.getLocalAddress();
+
+            val rbuf = ByteBuffer.allocate(16);
+            schan1.write(ByteBuffer.wrap(new byte[10]), Bits.CE.getBits());
+            assertEquals(peer1, rchan.receive(rbuf), "sender 1");
+            schan2.write(ByteBuffer.wrap(new byte[20]), Bits.NO.getBits());
+            schan1.write(ByteBuffer.wrap(new byte[10]), Bits.CE.getBits());
+            schan2.write(ByteBuffer.wrap(new byte[30]), Bits.ECT0.getBits());
+            val rbufs = new ByteBuffer[] { ByteBuffer.allocate(64), ByteBuffer.allocate(64), ByteBuffer.allocate(64) };
+            val infos = new ECNBitsDatagramInfo[] {
+              new ECNBitsDatagramInfo(), new ECNBitsDatagramInfo(), new ECNBitsDatagramInfo()
+            };
+            int n = 0;
+            while (n < 3) {
+                n += rchan.receiveBatch(Arrays.copyOfRange(rbufs, n, 3), Arrays.copyOfRange(infos, n, 3));
+            }
+
+            val stats1 = rchan.getPeerMeasurement(peer1, true);
+            assertEquals(2, stats1.getReceivedPackets(), "peer 1 packets");
+            assertEquals(1.0, stats1.getCongestionFactor(), "peer 1 congestion");
+            assertEquals(20L, stats1.getReceivedBytes(), "peer 1 bytes");
+            val all = rchan.getPeerMeasurements(false);
+            assertEquals(2, all.size(), "peers");
+            assertEquals(0, all.get(peer1).getReceivedPackets(), "peer 1 reset");
+            val stats2 = all.get(peer2);
+            assertEquals(2, stats2.getReceivedPackets(), "peer 2 packets");
+            assertEquals(0.0, stats2.getCongestionFactor(), "peer 2 congestion");
+            assertEquals(1L, stats2.getPackets(Bits.ECT0), "peer 2 ECT(0)");
+            assertEquals(50L, stats2.getReceivedBytes(), "peer 2 bytes");
+            assertNull(rchan.getPeerMeasurement(new InetSocketAddress(peer2.getAddress(), 9), false),
+              "unknown peer");
+            rchan.setPeerStatistics(0, 0, TimeUnit.SECONDS);
+            assertNull(rchan.getPeerMeasurement(peer1, false), "disabled");
+        }
+    }
+
+    /**
+     * Tests the sender sketch of a channel (end to end); see
+     * {@link SenderSketchTest} for the estimation itself
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testSenderSketch() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            assertNull(rchan.getSenderReport(false), "not enabled");
+            rchan.setSenderSketch(4, 64);
+            val rbuf = ByteBuffer.allocate(16);
+            for (int i = 0; i < 2; ++i) {
+                schan.write(ByteBuffer.wrap(new byte[8]), Bits.CE.getBits());
+                rchan.receive(rbuf);
+                rbuf.clear();
+            }
+            val r = rchan.getSenderReport(false);
+            assertEquals(1, r.getDistinctSenders(), "one sender");
+            val top = r.getTopByCongestion().get(0);
+            assertEquals(schan.getLocalAddress(), top.getAddress(), "sender");
+            assertEquals(2L, top.getCongestedPackets(), "CE packets");
+            assertEquals(16L, top.getBytes(), "bytes");
+        }
+    }
+
+    /**
+     * Tests the per-datagram trace ring with concurrent readers,
+     * then end to end
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException if interrupted while joining
+     */
+    @Test
+    public void testTrace() throws IOException, InterruptedException {
+        val ring = new TraceRing(64);
+        val total = 200000;
+        val errors = new ConcurrentLinkedQueue<String>();
+        val drained = new AtomicLong(0);
+        val running = new AtomicBoolean(true);
+        // records are self-checking: length and tc follow from the sequence number
+        final Runnable reader = () -> {
+            val into = new ECNTraceEntry[16];
+            for (int i = 0; i < into.length; ++i) {
+                into[i] = new ECNTraceEntry();
+            }
+            long last = -1;
+            boolean more = true;
+            while (more) {
+                more = running.get();
+                final int n = ring.drain(into);
+                for (int i = 0; i < n; ++i) {
+                    final ECNTraceEntry e = into[i];
+                    if (e.getLength() != (int) e.getSequence() ||
+                      e.getTrafficClass() != (byte) e.getSequence() || e.getSequence() <= last) {
+                        errors.add("torn or duplicate record " + e.getSequence());
+                    }
+                    last = e.getSequence();
+                }
+                drained.addAndGet(n);
+                final int k = ring.snapshot(into);
+                for (int i = 0; i < k; ++i) {
+                    if (into[i].getLength() != (int) into[i].getSequence()) {
+                        errors.add("torn snapshot record " + into[i].getSequence());
+                    }
+                }
+            }
+        };
+        val readers = new Thread[] { new Thread(reader), new Thread(reader) };
+        for (final Thread t : readers) {
+            t.start();
+        }
+        for (int i = 0; i < total; ++i) {
+            ring.received(true, (byte) i, i, 0, 0);
+        }
+        running.set(false);
+        for (final Thread t : readers) {
+            t.join();
+        }
+        assertTrue(errors.isEmpty(), () -> "consistent: " + errors.peek());
+        assertTrue(drained.get() > 0 && drained.get() <= total, "drained " + drained.get());
+        val all = new ECNTraceEntry[100];
+        for (int i = 0; i < all.length; ++i) {
+            all[i] = new ECNTraceEntry();
+        }
+        assertEquals(62, ring.snapshot(all), "snapshot limited to capacity − 2");
+        assertEquals(total - 1, all[61].getSequence(), "most recent last");
+
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            assertEquals(0, rchan.drainTrace(all), "not enabled");
+            rchan.setTrace(16);
+            val rbuf = ByteBuffer.allocate(16);
+            val before = System.nanoTime();
+            for (int i = 0; i < 3; ++i) {
+                schan.write(ByteBuffer.wrap(new byte[4 + i]), i == 1 ? Bits.CE.getBits() : Bits.ECT1.getBits());
+                rchan.receive(rbuf);
+                rbuf.clear();
+            }
+            assertEquals(3, rchan.snapshotTrace(all), "snapshot");
+            assertEquals(3, rchan.drainTrace(all), "drained");
+            assertEquals(0, rchan.drainTrace(all), "drained once");
+            val id = ECNTraceEntry.senderId((InetSocketAddress) schan.getLocalAddress());
+            for (int i = 0; i < 3; ++i) {
+                assertEquals(i, all[i].getSequence(), "sequence");
+                assertEquals(4 + i, all[i].getLength(), "length");
+                assertEquals(i == 1 ? Bits.CE : Bits.ECT1, all[i].getBits(), "bits");
+                assertEquals(id, all[i].getSenderId(), "sender");
+                assertTrue(all[i].getNanoTime() >= before, "timestamp");
+            }
+        }
+    }
+
+    /**
+     * Tests the incremental congestion estimator (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testCongestionEstimate() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            assertTrue(Double.isNaN(rchan.getCongestionEstimate()), "not estimating");
+            assertThrows(IllegalArgumentException.class, () -> rchan.startCongestionEstimate(0));
+            rchan.startCongestionEstimate(0.5);
+            assertEquals(0.0, rchan.getCongestionEstimate(), "initial α");
+
+            val rbuf = ByteBuffer.allocate(16);
+            schan.write(ByteBuffer.wrap(new byte[4]), Bits.CE.getBits());
+            rchan.receive(rbuf);
+            assertEquals(0.5, rchan.getCongestionEstimate(), 1e-9, "α after CE");
+            rbuf.clear();
+            schan.write(ByteBuffer.wrap(new byte[4]), Bits.ECT1.getBits());
+            rchan.socket().receive(new DatagramPacket(new byte[16], 16));
+            assertEquals(0.25, rchan.getCongestionEstimate(), 1e-9, "α after ECT(1)");
+
+            schan.write(ByteBuffer.wrap(new byte[4]), Bits.CE.getBits());
+            schan.write(ByteBuffer.wrap(new byte[4]), Bits.CE.getBits());
+            val rbufs = new ByteBuffer[] { ByteBuffer.allocate(16), ByteBuffer.allocate(16) };
+            val infos = new ECNBitsDatagramInfo[] { new ECNBitsDatagramInfo(), new ECNBitsDatagramInfo() };
+            int n = rchan.receiveBatch(rbufs, infos);
+            if (n < 2) {
+                n += rchan.receiveBatch(new ByteBuffer[] { rbufs[1] }, new ECNBitsDatagramInfo[] { infos[1] });
+            }
+            assertEquals(2, n, "datagrams received");
+            assertEquals(0.8125, rchan.getCongestionEstimate(), 1e-9, "α after two CE");
+            // not affected by measurement periods
+            rchan.startMeasurement();
+            assertEquals(0, rchan.getMeasurement(false).getReceivedPackets(), "empty period");
+            assertEquals(0.8125, rchan.getCongestionEstimate(), 1e-9, "α kept");
+            rchan.stopCongestionEstimate();
+            assertTrue(Double.isNaN(rchan.getCongestionEstimate()), "stopped");
+        }
+    }
+
+    /**
+     * Tests batch sending with per-datagram destination and traffic class (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testSendBatch() throws IOException {
+        try (val rchan1 = ECNBitsDatagramChannel.open(); val rchan2 = ECNBitsDatagramChannel.open();
+             val schan = ECNBitsDatagramChannel.open()) {
+            rchan1.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            rchan2.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            val sbufs = new ByteBuffer[] {
+              ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)),
+              ByteBuffer.allocateDirect(3),
+              ByteBuffer.wrap("bazz".getBytes(StandardCharsets.UTF_8))
+            };
+            sbufs[1].put((byte) 'b').put((byte) 'a').put((byte) 'r').flip();
+            val targets = new SocketAddress[] {
+              rchan1.getLocalAddress(),
+              rchan2.getLocalAddress(),
+              rchan1.getLocalAddress()
+            };
+            val tcs = new byte[] { Bits.CE.getBits(), Bits.ECT1.getBits(), Bits.ECT0.getBits() };
+            assertEquals(3, schan.sendBatch(sbufs, targets, tcs), "datagrams sent");
+            for (val sbuf : sbufs) {
+                assertFalse(sbuf.hasRemaining(), "buffer sent");
+            }
+
+            val rbuf = ByteBuffer.allocate(16);
+            assertEquals(schan.getLocalAddress(), rchan1.receive(rbuf), "sender 1");
+            assertEquals(Bits.CE.getBits(), rchan1.retrieveLastTrafficClass(), "tc 1");
+            assertEquals(3, rbuf.position(), "length 1");
+            rbuf.clear();
+            assertEquals(schan.getLocalAddress(), rchan2.receive(rbuf), "sender 2");
+            assertEquals(Bits.ECT1.getBits(), rchan2.retrieveLastTrafficClass(), "tc 2");
+            assertEquals(3, rbuf.position(), "length 2");
+            rbuf.clear();
+            assertEquals(schan.getLocalAddress(), rchan1.receive(rbuf), "sender 3");
+            assertEquals(Bits.ECT0.getBits(), rchan1.retrieveLastTrafficClass(), "tc 3");
+            assertEquals(4, rbuf.position(), "length 3");
+        }
+    }
+
+    /**
+     * Tests sending with a per-packet traffic class, leaving the
+     * socket option alone, on both channel and socket (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testSendTrafficClass() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open();
+             val ssock = new ECNBitsDatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.setOption(StandardSocketOptions.IP_TOS, (int) Bits.ECT0.getBits());
+            val raddr = rchan.getLocalAddress();
+            val rbuf = ByteBuffer.allocate(16);
+
+            // per-packet tc, socket option left alone
+            assertEquals(3, schan.send(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)),
+              raddr, Bits.CE.getBits()), "send with tc");
+            assertEquals(schan.getLocalAddress(), rchan.receive(rbuf), "sender 1");
+            assertEquals(Bits.CE.getBits(), rchan.retrieveLastTrafficClass(), "tc 1");
+            rbuf.clear();
+            assertEquals(3, schan.send(ByteBuffer.wrap("bar".getBytes(StandardCharsets.UTF_8)),
+              raddr), "send without tc");
+            assertEquals(schan.getLocalAddress(), rchan.receive(rbuf), "sender 2");
+            assertEquals(Bits.ECT0.getBits(), rchan.retrieveLastTrafficClass(), "tc 2");
+            rbuf.clear();
+
+            schan.connect(raddr);
+            assertEquals(3, schan.write(ByteBuffer.wrap("baz".getBytes(StandardCharsets.UTF_8)),
+              Bits.ECT1.getBits()), "write with tc");
+            assertEquals(schan.getLocalAddress(), rchan.receive(rbuf), "sender 3");
+            assertEquals(Bits.ECT1.getBits(), rchan.retrieveLastTrafficClass(), "tc 3");
+            rbuf.clear();
+
+            // same via the socket adapter and the standalone socket
+            val data = "sock".getBytes(StandardCharsets.UTF_8);
+            schan.socket().send(new DatagramPacket(data, data.length), Bits.CE.getBits());
+            assertEquals(schan.getLocalAddress(), rchan.receive(rbuf), "sender 4");
+            assertEquals(Bits.CE.getBits(), rchan.retrieveLastTrafficClass(), "tc 4");
+            rbuf.clear();
+            ssock.send(new DatagramPacket(data, data.length, raddr), Bits.ECT1.getBits());
+            assertEquals(ssock.getLocalSocketAddress(), rchan.receive(rbuf), "sender 5");
+            assertEquals(Bits.ECT1.getBits(), rchan.retrieveLastTrafficClass(), "tc 5");
+            assertEquals(4, rbuf.position(), "length 5");
+        }
+    }
+
+    /**
+     * Tests receiving into a caller-owned metadata holder, on both
+     * channel and socket, connected and not (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testReceiveInfo() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open();
+             val rsock = new ECNBitsDatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            val raddr = rchan.getLocalAddress();
+            val saddr = schan.getLocalAddress();
+            val rbuf = ByteBuffer.allocateDirect(16);
+            val info = new ECNBitsDatagramInfo();
+
+            schan.send(ByteBuffer.wrap("foo".getBytes(StandardCharsets.UTF_8)), raddr, Bits.CE.getBits());
+            assertEquals(saddr, rchan.receive(rbuf, info), "sender");
+            assertEquals(saddr, info.getSender(), "info sender");
+            assertEquals(3, info.getLength(), "info length");
+            assertTrue(info.isTrafficClassValid(), "info tc valid");
+            assertEquals(Bits.CE.getBits(), info.getTrafficClass(), "info tc");
+            assertEquals(Bits.CE, info.getBits(), "info bits");
+
+            // nothing received: holder left alone
+            rchan.configureBlocking(false);
+            rbuf.clear();
+            assertNull(rchan.receive(rbuf, info), "nothing waiting");
+            assertEquals(3, info.getLength(), "info unchanged");
+            rchan.configureBlocking(true);
+
+            // connected: the kernel does not report the sender
+            rchan.connect(saddr);
+            schan.send(ByteBuffer.wrap("ba".getBytes(StandardCharsets.UTF_8)), raddr, Bits.ECT1.getBits());
+            rbuf.clear();
+            assertEquals(2, rchan.read(rbuf, info), "read");
+            assertEquals(saddr, info.getSender(), "read sender");
+            assertEquals(2, info.getLength(), "read length");
+            assertEquals(Bits.ECT1.getBits(), info.getTrafficClass(), "read tc");
+
+            // the socket adapter and the standalone socket
+            schan.send(ByteBuffer.wrap("sock".getBytes(StandardCharsets.UTF_8)), raddr, Bits.ECT0.getBits());
+            val p = new DatagramPacket(new byte[16], 16);
+            rchan.socket().receive(p, info);
+            assertEquals(4, p.getLength(), "adapter length");
+            assertEquals(saddr, info.getSender(), "adapter sender");
+            assertEquals(Bits.ECT0.getBits(), info.getTrafficClass(), "adapter tc");
+            schan.send(ByteBuffer.wrap("socket".getBytes(StandardCharsets.UTF_8)), rsock.getLocalSocketAddress(),
+              Bits.CE.getBits());
+            p.setData(p.getData());
+            rsock.receive(p, info);
+            assertEquals(6, p.getLength(), "socket length");
+            assertEquals(6, info.getLength(), "socket info length");
+            assertEquals(saddr, info.getSender(), "socket sender");
+            assertEquals(Bits.CE.getBits(), info.getTrafficClass(), "socket tc");
+            rsock.connect(saddr);
+            schan.send(ByteBuffer.wrap("s".getBytes(StandardCharsets.UTF_8)), rsock.getLocalSocketAddress(),
+              Bits.NO.getBits());
+            p.setData(p.getData());
+            rsock.receive(p, info);
+            assertEquals(saddr, info.getSender(), "connected socket sender");
+            assertEquals(Bits.NO, info.getBits(), "connected socket bits");
+            assertThrows(NullPointerException.class, () -> rsock.receive(p, null));
+        }
+    }
+
+    /**
+     * Tests that the sender address is taken from the receive
+     * metadata and reused while it does not change (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testReceiveSender() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open();
+             val rsock = new ECNBitsDatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.setOption(StandardSocketOptions.IP_TOS, (int) Bits.ECT1.getBits());
+            val raddr = rchan.getLocalAddress();
+            val rbuf = ByteBuffer.allocateDirect(16);
+
+            // the sender is only constructed again when it changes
+            schan.send(ByteBuffer.wrap(new byte[] { 1 }), raddr);
+            schan.send(ByteBuffer.wrap(new byte[] { 2 }), raddr);
+            val sender1 = rchan.receive(rbuf);
+            assertEquals(schan.getLocalAddress(), sender1, "sender 1");
+            rbuf.clear();
+            assertSame(sender1, rchan.receive(rbuf), "sender 2 reused");
+            assertEquals(Bits.ECT1.getBits(), rchan.retrieveLastTrafficClass(), "tc 2");
+
+            // connected: the peer is not asked from the kernel
+            rchan.connect(schan.getLocalAddress());
+            schan.send(ByteBuffer.wrap(new byte[] { 3, 3 }), raddr);
+            rbuf.clear();
+            assertEquals(schan.getLocalAddress(), rchan.receive(rbuf), "sender 3");
+            assertEquals(2, rbuf.position(), "length 3");
+            assertEquals(Bits.ECT1.getBits(), rchan.retrieveLastTrafficClass(), "tc 3");
+
+            // same for the classic socket
+            rsock.connect(schan.getLocalAddress());
+            schan.send(ByteBuffer.wrap(new byte[] { 4, 4, 4 }), rsock.getLocalSocketAddress());
+            val p = new DatagramPacket(new byte[16], 16);
+            rsock.receive(p);
+            assertEquals(schan.getLocalAddress(), p.getSocketAddress(), "sender 4");
+            assertEquals(3, p.getLength(), "length 4");
+            assertEquals(Bits.ECT1.getBits(), rsock.retrieveLastTrafficClass(), "tc 4");
+        }
+    }
+
+    /**
+     * Tests bouncing heap buffers through the per-thread direct buffers
+     * (end to end); see {@link DirectBufferCacheTest} for their reuse
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testDirectBufferCache() throws IOException {
+        // heap buffers, bounced through the cache, via the socket adapter
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            val rsock = rchan.socket();
+            val ssock = schan.socket();
+            for (int i = 0; i < 4; ++i) {
+                val data = new byte[] { (byte) i, 2, 3, 4, 5 };
+                ssock.send(new DatagramPacket(data, i + 1));
+                val p = new DatagramPacket(new byte[16], 16);
+                rsock.receive(p);
+                assertEquals(i + 1, p.getLength(), "length " + i);
+                assertEquals((byte) i, p.getData()[0], "content " + i);
+                assertEquals(schan.getLocalAddress(), p.getSocketAddress(), "sender " + i);
+            }
+        }
+    }
+
+    /**
+     * Tests sending one buffer as UDP GSO segments, split by the
+     * kernel or, without GSO, as a sendmmsg batch (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testSendSegmented() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.setOption(StandardSocketOptions.IP_TOS, (int) Bits.ECT1.getBits());
+            schan.connect(rchan.getLocalAddress());
+            val sbuf = ByteBuffer.allocateDirect(1050);
+            for (int i = 0; i < 1050; ++i) {
+                sbuf.put((byte) (i / 100));
+            }
+            sbuf.flip();
+            assertThrows(IllegalArgumentException.class, () -> schan.sendSegmented(sbuf, null, 0));
+            assertEquals(1050, schan.sendSegmented(sbuf, null, 100), "bytes sent");
+            assertFalse(sbuf.hasRemaining(), "buffer sent");
+
+            val rbufs = new ByteBuffer[16];
+            val infos = new ECNBitsDatagramInfo[16];
+            for (int i = 0; i < rbufs.length; ++i) {
+                rbufs[i] = ByteBuffer.allocate(200);
+                infos[i] = new ECNBitsDatagramInfo();
+            }
+            int n = 0;
+            while (n < 11) {
+                n += rchan.receiveBatch(Arrays.copyOfRange(rbufs, n, rbufs.length),
+                  Arrays.copyOfRange(infos, n, infos.length));
+            }
+            assertEquals(11, n, "datagrams received");
+            for (int i = 0; i < n; ++i) {
+                assertEquals(i < 10 ? 100 : 50, infos[i].getLength(), "length " + i);
+                assertEquals(Bits.ECT1, infos[i].getBits(), "bits " + i);
+                assertEquals((byte) i, rbufs[i].get(0), "content " + i);
+            }
+        }
+    }
+
+    /**
+     * Tests receiving UDP GRO super-datagrams, accounted per segment
+     * (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testReceiveGRO() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            assertFalse(rchan.getOption(ECNBitsSocketOptions.UDP_GRO), "GRO off by default");
+            rchan.setOption(ECNBitsSocketOptions.UDP_GRO, true);
+            assertTrue(rchan.getOption(ECNBitsSocketOptions.UDP_GRO), "GRO on");
+            schan.setOption(StandardSocketOptions.IP_TOS, (int) Bits.CE.getBits());
+            schan.connect(rchan.getLocalAddress());
+            rchan.startMeasurement();
+            // loopback passes GSO super-datagrams to GRO sockets unsplit
+            assertEquals(1050, schan.sendSegmented(ByteBuffer.allocate(1050), null, 100), "bytes sent");
+
+            val rbufs = new ByteBuffer[] { ByteBuffer.allocateDirect(65536) };
+            val infos = new ECNBitsDatagramInfo[] { new ECNBitsDatagramInfo() };
+            int n = 0;
+            int segs = 0;
+            while (n < 1050) {
+                assertEquals(1, rchan.receiveBatch(rbufs, infos), "datagrams received");
+                assertEquals(Bits.CE, infos[0].getBits(), "bits");
+                n += infos[0].getLength();
+                segs += infos[0].getSegmentCount();
+                rbufs[0].clear();
+            }
+            assertEquals(1050, n, "bytes received");
+            assertEquals(11, segs, "segments received");
+            val stats = rchan.getMeasurement(false);
+            assertEquals(11, stats.getReceivedPackets(), "segments counted");
+            assertEquals(11, stats.getCongestedPackets(), "CE segments counted");
+            assertEquals(1050L, stats.getCongestedBytes(), "CE bytes counted");
+            val sizes = stats.getSizeHistogram();
+            assertEquals(10L, sizes[ECNMeasurer.sizeBucket(100)], "full segments");
+            assertEquals(1L, sizes[ECNMeasurer.sizeBucket(50)], "last segment");
+        }
+    }
+
+    /**
+     * Tests delivery of kernel receive timestamps with each datagram,
+     * on both channel and socket (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testReceiveTimestamps() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open();
+             val rsock = new ECNBitsDatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            val rbuf = ByteBuffer.allocateDirect(16);
+            schan.write(ByteBuffer.wrap(new byte[] { 1 }));
+            rchan.receive(rbuf);
+            assertEquals(0L, rchan.retrieveLastReceiveTimestamp(), "off by default");
+
+            assertFalse(rchan.getOption(ECNBitsSocketOptions.SO_TIMESTAMPNS), "option off by default");
+            rchan.setOption(ECNBitsSocketOptions.SO_TIMESTAMPNS, true);
+            assertTrue(rchan.getOption(ECNBitsSocketOptions.SO_TIMESTAMPNS), "option on");
+            rchan.setTrace(16);
+            schan.write(ByteBuffer.wrap(new byte[] { 2 }));
+            schan.write(ByteBuffer.wrap(new byte[] { 3 }));
+            rbuf.clear();
+            rchan.receive(rbuf);
+            val t1 = rchan.retrieveLastReceiveTimestamp();
+            val rbufs = new ByteBuffer[] { ByteBuffer.allocateDirect(16) };
+            val infos = new ECNBitsDatagramInfo[] { new ECNBitsDatagramInfo() };
+            assertEquals(1, rchan.receiveBatch(rbufs, infos), "datagrams received");
+            val t2 = infos[0].getReceiveTimestamp();
+            // CLOCK_REALTIME may be stepped at any time, so neither their
+            // order nor a window around currentTimeMillis can be relied on
+            assertNotEquals(0L, t1, "kernel timestamp 1");
+            assertNotEquals(0L, t2, "kernel timestamp 2");
+            assertEquals(t2, rchan.retrieveLastReceiveTimestamp(), "last timestamp");
+            val trace = new ECNTraceEntry[] { new ECNTraceEntry(), new ECNTraceEntry() };
+            assertEquals(2, rchan.drainTrace(trace), "traced");
+            assertEquals(t1, trace[0].getTimestamp(), "traced at kernel time 1");
+            assertEquals(t2, trace[1].getTimestamp(), "traced at kernel time 2");
+
+            // same for the classic socket
+            rsock.setReceiveTimestamps(true);
+            schan.disconnect();
+            schan.send(ByteBuffer.wrap(new byte[] { 4 }), rsock.getLocalSocketAddress());
+            val p = new DatagramPacket(new byte[16], 16);
+            rsock.receive(p);
+            assertNotEquals(0L, rsock.retrieveLastReceiveTimestamp(), "socket timestamp");
+        }
+    }
+
+    /**
+     * Tests counting the datagrams the kernel dropped because the
+     * socket receive buffer was full (end to end)
+     *
+     * @throws IOException from the datagram channel
+     */
+    @Test
+    public void testReceiveDrops() throws IOException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.setOption(StandardSocketOptions.SO_RCVBUF, 1024);
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            rchan.configureBlocking(false);
+            schan.connect(rchan.getLocalAddress());
+            rchan.startMeasurement();
+            // overflow the small socket buffer
+            for (int i = 0; i < 200; ++i) {
+                schan.write(ByteBuffer.allocate(100));
+            }
+            val rbuf = ByteBuffer.allocateDirect(128);
+            assertNotNull(rchan.receive(rbuf), "first datagram");
+            val rbufs = new ByteBuffer[] { ByteBuffer.allocateDirect(128), ByteBuffer.allocateDirect(128) };
+            val infos = new ECNBitsDatagramInfo[] { new ECNBitsDatagramInfo(), new ECNBitsDatagramInfo() };
+            while (rchan.receiveBatch(rbufs, infos) > 0) {
+                rbufs[0].clear();
+                rbufs[1].clear();
+            }
+            // the counter comes with the next datagram only
+            schan.write(ByteBuffer.allocate(100));
+            rbuf.clear();
+            assertNotNull(rchan.receive(rbuf), "last datagram");
+            val stats = rchan.getMeasurement(true);
+            LOG.info("received " + stats.getReceivedPacketCount() + ", dropped " + stats.getDroppedPackets());
+            assertTrue(stats.getDroppedPackets() > 0, "drops seen");
+            assertEquals(201L, stats.getReceivedPacketCount() + stats.getDroppedPackets(), "all accounted for");
+            assertEquals((double) stats.getDroppedPackets() / 201.0, stats.getLossFactor(), 1e-9, "loss factor");
+
+            schan.write(ByteBuffer.allocate(100));
+            rbuf.clear();
+            assertNotNull(rchan.receive(rbuf), "next datagram");
+            assertEquals(0L, rchan.getMeasurement(true).getDroppedPackets(), "drops counted once");
+        }
+    }
+
+    /**
+     * Tests the spin-then-block receive mode and its hit/miss
+     * counters (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link Thread#sleep(long)}
+     */
+    @Test
+    public void testReceiveSpin() throws IOException, InterruptedException {
+        try (val rchan = ECNBitsDatagramChannel.open(); val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.connect(rchan.getLocalAddress());
+            assertEquals(0, (int) rchan.getOption(ECNBitsSocketOptions.SO_BUSY_POLL), "busy poll off by default");
+            try {
+                rchan.setOption(ECNBitsSocketOptions.SO_BUSY_POLL, 50);
+                assertEquals(50, (int) rchan.getOption(ECNBitsSocketOptions.SO_BUSY_POLL), "busy poll set");
+                rchan.setOption(ECNBitsSocketOptions.SO_PREFER_BUSY_POLL, true);
+                assertTrue(rchan.getOption(ECNBitsSocketOptions.SO_PREFER_BUSY_POLL), "prefer busy poll set");
+            } catch (SocketException e) {
+                // EPERM without CAP_NET_ADMIN, ENOPROTOOPT before Linux 5.11
+                LOG.log(Level.INFO, "busy poll not available", e);
+            }
+            val rbuf = ByteBuffer.allocate(16);
+            final IntConsumer sendAfter = (ms) -> new Thread(() -> {
+                try {
+                    Thread.sleep(ms);
+                    schan.write(ByteBuffer.wrap(new byte[] { 1 }));
+                } catch (InterruptedException | IOException e) {
+                    LOG.log(Level.WARNING, "send", e);
+                }
+            }).start();
+
+            // the datagram arrives within the budget
+            rchan.setReceiveSpin(2, TimeUnit.SECONDS);
+            sendAfter.accept(20);
+            rchan.receive(rbuf);
+            assertEquals(1L, rchan.getSpinHitCount(), "spin hit");
+            assertEquals(0L, rchan.getSpinMissCount(), "no spin miss");
+
+            // already waiting: no spinning needed
+            schan.write(ByteBuffer.wrap(new byte[] { 2 }));
+            Thread.sleep(10);
+            rbuf.clear();
+            rchan.receive(rbuf);
+            assertEquals(1L, rchan.getSpinHitCount(), "no spin");
+
+            // the budget runs out, then the receive blocks
+            rchan.setReceiveSpin(1, TimeUnit.MILLISECONDS);
+            sendAfter.accept(100);
+            rbuf.clear();
+            rchan.receive(rbuf);
+            assertEquals(1, rbuf.position(), "received after blocking");
+            assertEquals(1L, rchan.getSpinMissCount(), "spin miss");
+
+            assertThrows(IllegalArgumentException.class, () -> rchan.setReceiveSpin(-1, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * Tests flow steering over SO_REUSEPORT shards and merging their
+     * statistics (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link Thread#sleep(long)}
+     */
+    @Test
+    public void testShardedListener() throws IOException, InterruptedException {
+        final int nshards = 4;
+        final int nsenders = 16;
+        final int npkts = 10;
+        try (val listener = new ECNShardedListener(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+          nshards, ECNShardedListener.Steering.FLOW)) {
+            assertEquals(nshards, listener.getShardCount(), "shard count");
+            for (int i = 0; i < nshards; ++i) {
+                assertTrue(listener.getChannel(i).getOption(ECNBitsSocketOptions.SO_REUSEPORT), "reuseport set");
+                assertEquals(listener.getLocalAddress(), listener.getChannel(i).getLocalAddress(), "same port");
+            }
+            listener.startMeasurement();
+            val shardOf = new ConcurrentHashMap<Integer, Integer>();
+            val misrouted = new AtomicInteger();
+            val received = new AtomicInteger();
+            val perShard = new AtomicInteger[nshards];
+            for (int i = 0; i < nshards; ++i) {
+                perShard[i] = new AtomicInteger();
+            }
+            listener.start((shard, channel, data, sender) -> {
+                final Integer prev = shardOf.putIfAbsent(sender.getPort(), shard);
+                if (prev != null && prev != shard) {
+                    misrouted.incrementAndGet();
+                }
+                perShard[shard].incrementAndGet();
+                received.incrementAndGet();
+            });
+            assertThrows(IllegalStateException.class, () -> listener.start((shard, channel, data, sender) -> {
+            }));
+
+            val schans = new ECNBitsDatagramChannel[nsenders];
+            try {
+                for (int i = 0; i < nsenders; ++i) {
+                    schans[i] = ECNBitsDatagramChannel.open();
+                    schans[i].connect(listener.getLocalAddress());
+                }
+                for (int j = 0; j < npkts; ++j) {
+                    for (val schan : schans) {
+                        schan.write(ByteBuffer.wrap(new byte[] { (byte) j }));
+                    }
+                }
+            } finally {
+                for (val schan : schans) {
+                    if (schan != null) {
+                        schan.close();
+                    }
+                }
+            }
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.get() < nsenders * npkts && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(nsenders * npkts, received.get(), "all received");
+            assertEquals(0, misrouted.get(), "each sender on one shard");
+            assertTrue(new HashSet<>(shardOf.values()).size() > 1, "several shards used");
+            LOG.info("per shard: " + Arrays.toString(perShard));
+
+            val parts = listener.getShardMeasurements(false);
+            assertEquals(nshards, parts.length, "one measurement per shard");
+            long sum = 0;
+            for (int i = 0; i < nshards; ++i) {
+                assertEquals(perShard[i].get(), parts[i].getReceivedPacketCount(), "shard " + i);
+                sum += parts[i].getReceivedPacketCount();
+            }
+            val merged = listener.getMeasurement(true);
+            assertEquals(sum, merged.getReceivedPacketCount(), "merged is the sum");
+            assertEquals((long) nsenders * npkts, merged.getReceivedPacketCount(), "merged total");
+            assertEquals((long) nsenders * npkts, merged.getReceivedBytes(), "merged bytes");
+            assertEquals(0L, listener.getMeasurement(false).getReceivedPacketCount(), "reset");
+        }
+    }
+
+    /**
+     * Tests CPU steering with pinned shard readers and the
+     * SO_INCOMING_CPU option (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link Thread#join()}
+     */
+    @Test
+    public void testIncomingCpu() throws IOException, InterruptedException {
+        // the CPU numbers need not start at 0, e.g. in a container
+        final int[] cpus = allowedCpus();
+        assumeTrue(cpus.length > 0, "affinity mask unknown");
+        final int ncpu = cpus.length;
+        try (val listener = new ECNShardedListener(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+          ncpu, ECNShardedListener.Steering.CPU);
+             val schan = ECNBitsDatagramChannel.open()) {
+            schan.connect(listener.getLocalAddress());
+            assertEquals(-1, (int) listener.getChannel(0).getOption(ECNBitsSocketOptions.SO_INCOMING_CPU),
+              "nothing received yet");
+            // shard, CPU sent from
+            val seen = new LinkedBlockingQueue<int[]>();
+            listener.start((shard, channel, data, sender) -> seen.add(new int[] { shard, data.get(0) & 0xFF }), true);
+
+            // loopback traffic is processed on the sending CPU
+            val sent = new AtomicInteger();
+            // assertions in the sender would only end that thread
+            val failure = new AtomicReference<String>();
+            val sender = new Thread(() -> {
+                for (final int cpu : cpus) {
+                    try {
+                        ECNShardedListener.pinCurrentThread(cpu);
+                        final int running = ECNShardedListener.getCurrentCpu();
+                        if (running != cpu) {
+                            failure.compareAndSet(null, "pinned to " + cpu + " but on " + running);
+                            return;
+                        }
+                        schan.write(ByteBuffer.wrap(new byte[] { (byte) cpu }));
+                        sent.incrementAndGet();
+                    } catch (IOException e) {
+                        // e.g. gone offline
+                        LOG.log(Level.INFO, "cannot send from CPU " + cpu, e);
+                    }
+                }
+            });
+            sender.start();
+            sender.join();
+            assertNull(failure.get(), "sender");
+            assertTrue(sent.get() > 0, "sent from at least one CPU");
+            for (int i = 0; i < sent.get(); ++i) {
+                val rec = seen.poll(5, TimeUnit.SECONDS);
+                assertNotNull(rec, "received");
+                assertEquals(rec[1] % ncpu, rec[0], "steered to the sending CPU’s shard");
+                // some kernels (e.g. in VMs) do not track it for loopback
+                val incoming = (int) listener.getChannel(rec[0]).getOption(ECNBitsSocketOptions.SO_INCOMING_CPU);
+                assertTrue(incoming == rec[1] || incoming == -1, "incoming CPU " + incoming);
+            }
+        }
+        assertThrows(IOException.class, () -> ECNShardedListener.pinCurrentThread(-1));
+    }
+
+    // the calling thread’s affinity mask, empty if unknown
+    private static int[] allowedCpus() {
+        final List<String> status;
+        try {
+            status = Files.readAllLines(Paths.get("/proc/thread-self/status"), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return new int[0];
+        }
+        for (val line : status) {
+            if (!line.startsWith("Cpus_allowed_list:")) {
+                continue;
+            }
+            // e.g. “0-3,8,10-11”; CPU numbers fit the test datagrams’ byte
+            return Arrays.stream(line.substring(18).trim().split(","))
+              .flatMapToInt(range -> {
+                  final int dash = range.indexOf('-');
+                  return dash < 0 ? IntStream.of(Integer.parseInt(range)) :
+                    IntStream.rangeClosed(Integer.parseInt(range.substring(0, dash)),
+                      Integer.parseInt(range.substring(dash + 1)));
+              })
+              .filter(cpu -> cpu < 256)
+              .toArray();
+        }
+        return new int[0];
+    }
+
+    /**
+     * Tests several threads receiving from one channel at once,
+     * each seeing its own traffic class, and waking them on close (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link Thread#sleep(long)}
+     */
+    @Test
+    public void testConcurrentReaders() throws IOException, InterruptedException {
+        final int nthreads = 4;
+        final int npkts = 200;
+        // closed explicitly below, to wake up the readers
+        val rchan = ECNBitsDatagramChannel.open();
+        try (val schan = ECNBitsDatagramChannel.open()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            assertFalse(rchan.isConcurrentReaders(), "serialised by default");
+            rchan.setConcurrentReaders(true);
+            assertTrue(rchan.isConcurrentReaders(), "concurrent readers");
+            val received = new AtomicInteger();
+            val mismatches = new AtomicInteger();
+            val closed = new AtomicInteger();
+            // assertions in the readers would only end that thread
+            val failure = new AtomicReference<Throwable>();
+            val threads = new Thread[nthreads];
+            for (int i = 0; i < nthreads; ++i) {
+                threads[i] = new Thread(() -> {
+                    val rbuf = ByteBuffer.allocateDirect(16);
+                    try {
+                        while (true) {
+                            rbuf.clear();
+                            if (rchan.receive(rbuf) == null) {
+                                throw new IllegalStateException("no sender");
+                            }
+                            // the traffic class of this thread’s datagram
+                            if (!Byte.valueOf(rbuf.get(0)).equals(rchan.retrieveLastTrafficClass())) {
+                                mismatches.incrementAndGet();
+                            }
+                            received.incrementAndGet();
+                        }
+                    } catch (AsynchronousCloseException e) {
+                        closed.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }, "reader-" + i);
+                threads[i].start();
+            }
+            // none waits for another to leave receive
+            Thread.sleep(100);
+            for (val t : threads) {
+                assertNotEquals(Thread.State.BLOCKED, t.getState(), t.getName());
+            }
+
+            val dst = rchan.getLocalAddress();
+            for (int i = 0; i < npkts; ++i) {
+                final byte tc = (byte) (i & 3);
+                schan.send(ByteBuffer.wrap(new byte[] { tc }), dst, tc);
+                if (i % 16 == 15) {
+                    // do not overrun the socket buffer
+                    Thread.sleep(1);
+                }
+            }
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.get() < npkts && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNull(failure.get(), "reader failure");
+            assertEquals(npkts, received.get(), "all received");
+            assertEquals(0, mismatches.get(), "per-thread traffic class");
+
+            // all blocked readers are woken up
+            rchan.close();
+            for (val t : threads) {
+                t.join(5000);
+                assertFalse(t.isAlive(), t.getName() + " ended");
+            }
+            assertNull(failure.get(), "reader failure");
+            assertEquals(nthreads, closed.get(), "closed while receiving");
+        } finally {
+            rchan.close();
+        }
+    }
+
+    /**
+     * Tests the io_uring engine, or its fallback to system calls,
+     * including waking a blocked receiver on close (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link Thread#join()}
+     */
+    @Test
+    public void testUring() throws IOException, InterruptedException {
+        // closed by another thread below
+        val rchan = ECNBitsDatagramChannel.openUring();
+        try (val schan = ECNBitsDatagramChannel.openUring();
+             val sel = ECNBitsSelectorProvider.provider().openSelector()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            val raddr = rchan.getLocalAddress();
+            // works the same with or without kernel support
+            LOG.info("io_uring in use: " + rchan.usesIoUring());
+
+            val sbufs = new ByteBuffer[3];
+            val targets = new SocketAddress[3];
+            for (int i = 0; i < 3; ++i) {
+                sbufs[i] = ByteBuffer.wrap(new byte[] { (byte) i, (byte) i });
+                targets[i] = raddr;
+            }
+            val tcs = new byte[] { Bits.CE.getBits(), Bits.ECT1.getBits(), Bits.ECT0.getBits() };
+            assertEquals(3, schan.sendBatch(sbufs, targets, tcs), "datagrams sent");
+
+            val rbuf = ByteBuffer.allocate(16);
+            assertEquals(schan.getLocalAddress(), rchan.receive(rbuf), "sender 1");
+            assertEquals(Bits.CE.getBits(), rchan.retrieveLastTrafficClass(), "tc 1");
+            assertEquals(2, rbuf.position(), "length 1");
+            val rbufs = new ByteBuffer[] { ByteBuffer.allocateDirect(16), ByteBuffer.allocateDirect(16) };
+            val infos = new ECNBitsDatagramInfo[] { new ECNBitsDatagramInfo(), new ECNBitsDatagramInfo() };
+            int n = 0;
+            while (n < 2) {
+                n += rchan.receiveBatch(new ByteBuffer[] { rbufs[n] }, new ECNBitsDatagramInfo[] { infos[n] });
+            }
+            for (int i = 0; i < 2; ++i) {
+                assertEquals(schan.getLocalAddress(), infos[i].getSender(), "sender " + (i + 2));
+                assertEquals(tcs[i + 1], infos[i].getTrafficClass(), "tc " + (i + 2));
+                assertEquals((byte) (i + 1), rbufs[i].get(0), "content " + (i + 2));
+            }
+
+            rchan.configureBlocking(false);
+            rbuf.clear();
+            assertNull(rchan.receive(rbuf), "nothing queued");
+            if (rchan.usesIoUring()) {
+                assertThrows(IllegalSelectorException.class, () -> rchan.register(sel, SelectionKey.OP_READ));
+            }
+            rchan.configureBlocking(true);
+
+            // close wakes up a blocked receiver
+            val t = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    rchan.close();
+                } catch (InterruptedException | IOException e) {
+                    LOG.log(Level.WARNING, "closing", e);
+                }
+            });
+            t.start();
+            assertThrows(AsynchronousCloseException.class, () -> rchan.receive(rbuf));
+            t.join();
+            assertFalse(rchan.usesIoUring(), "rings released");
+        } finally {
+            rchan.close();
+        }
+    }
+
+    /**
+     * Tests that the socket adapter of an io_uring channel honours
+     * SO_TIMEOUT both ways, and that maximum-sized datagrams fit into
+     * the receive ring (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link Thread#join()}
+     */
+    @Test
+    public void testUringSoTimeout() throws IOException, InterruptedException {
+        try (val rchan = ECNBitsDatagramChannel.openUring();
+             val schan = ECNBitsDatagramChannel.openUring()) {
+            rchan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            schan.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            val raddr = rchan.getLocalAddress();
+            val sock = rchan.socket();
+            val p = new DatagramPacket(new byte[65536], 65536);
+
+            // a blocking receive in another thread, which stays around,
+            // leaves the multishot recvmsg armed and processed there
+            val armed = new CountDownLatch(1);
+            val done = new CountDownLatch(1);
+            val a = new Thread(() -> {
+                try {
+                    rchan.receive(ByteBuffer.allocate(16));
+                    armed.countDown();
+                    done.await();
+                } catch (InterruptedException | IOException e) {
+                    LOG.log(Level.WARNING, "arming", e);
+                }
+            });
+            a.start();
+            schan.send(ByteBuffer.wrap(new byte[] { 23 }), raddr);
+            assertTrue(armed.await(2, TimeUnit.SECONDS), "armed");
+
+            // nothing sent: times out
+            sock.setSoTimeout(200);
+            assertThrows(SocketTimeoutException.class, () -> sock.receive(p));
+
+            // arrives while waiting and is taken off the socket by the
+            // ring, so waiting on the socket itself would time out
+            val payload = new byte[65507];
+            new Random(1).nextBytes(payload);
+            val t = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    schan.send(ByteBuffer.wrap(payload), raddr);
+                    schan.send(ByteBuffer.wrap(new byte[] { 42 }), raddr);
+                } catch (InterruptedException | IOException e) {
+                    LOG.log(Level.WARNING, "sending", e);
+                }
+            });
+            sock.setSoTimeout(2000);
+            t.start();
+            sock.receive(p);
+            t.join();
+            assertEquals(payload.length, p.getLength(), "length 1");
+            assertArrayEquals(payload, Arrays.copyOf(p.getData(), p.getLength()), "content 1");
+            p.setLength(65536);
+            sock.receive(p);
+            assertEquals(1, p.getLength(), "length 2");
+            assertEquals(42, p.getData()[0], "content 2");
+            p.setLength(65536);
+            sock.setSoTimeout(200);
+            assertThrows(SocketTimeoutException.class, () -> sock.receive(p));
+            done.countDown();
+            a.join();
+        }
+    }
+
+    /**
+     * Tests readiness selection of many channels with the epoll
+     * selector, and waking it up (end to end)
+     *
+     * @throws IOException          from the datagram channel
+     * @throws InterruptedException from {@link Thread#join()}
+     */
+    @Test
+    public void testSelector() throws IOException, InterruptedException {
+        final int nchans = 64;
+        val chans = new ECNBitsDatagramChannel[nchans];
+        try (val sel = ECNBitsSelectorProvider.provider().openSelector();
+             val schan = ECNBitsDatagramChannel.open()) {
+            for (int i = 0; i < nchans; ++i) {
+                chans[i] = ECNBitsDatagramChannel.open();
+                assertSame(ECNBitsSelectorProvider.provider(), chans[i].provider(), "provider");
+                chans[i].bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                chans[i].configureBlocking(false);
+                chans[i].register(sel, SelectionKey.OP_READ, i);
+            }
+            assertEquals(nchans, sel.keys().size(), "registered");
+            assertEquals(0, sel.selectNow(), "nothing ready");
+
+            schan.setOption(StandardSocketOptions.IP_TOS, (int) Bits.CE.getBits());
+            for (int i = 0; i < nchans; i += 8) {
+                schan.send(ByteBuffer.wrap(new byte[] { (byte) i }), chans[i].getLocalAddress());
+            }
+            int seen = 0;
+            val rbuf = ByteBuffer.allocate(16);
+            while (seen < nchans / 8) {
+                assertTrue(sel.select(1000) > 0, "selected");
+                val it = sel.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    val key = it.next();
+                    it.remove();
+                    assertTrue(key.isReadable(), "readable");
+                    val chan = (ECNBitsDatagramChannel) key.channel();
+                    rbuf.clear();
+                    assertNotNull(chan.receive(rbuf), "received");
+                    assertEquals(((Integer) key.attachment()).byteValue(), rbuf.get(0), "content");
+                    assertEquals(Bits.CE.getBits(), chan.retrieveLastTrafficClass(), "tc");
+                    assertNull(chan.receive(rbuf), "nothing more");
+                    ++seen;
+                }
+            }
+            assertEquals(nchans / 8, seen, "channels served");
+
+            // OP_WRITE, then back to nothing
+            val wkey = chans[1].keyFor(sel);
+            wkey.interestOps(SelectionKey.OP_WRITE);
+            assertEquals(1, sel.selectNow(), "writable");
+            assertTrue(sel.selectedKeys().contains(wkey), "writable key");
+            sel.selectedKeys().clear();
+            wkey.interestOps(0);
+            assertEquals(0, sel.selectNow(), "not interested");
+
+            // wakeup from another thread
+            val t = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                sel.wakeup();
+            });
+            t.start();
+            assertEquals(0, sel.select(), "woken up");
+            t.join();
+
+            // closing a registered channel deregisters it on the next select
+            chans[0].close();
+            sel.selectNow();
+            assertEquals(nchans - 1, sel.keys().size(), "deregistered");
+            assertFalse(chans[0].isRegistered(), "channel deregistered");
+
+            try (val plain = DatagramChannel.open()) {
+                plain.configureBlocking(false);
+                assertThrows(IllegalSelectorException.class, () -> plain.register(sel, SelectionKey.OP_READ));
+            }
+        } finally {
+            for (val chan : chans) {
+                if (chan != null) {
+                    chan.close();
+                }
+            }
+        }
+    }
 }
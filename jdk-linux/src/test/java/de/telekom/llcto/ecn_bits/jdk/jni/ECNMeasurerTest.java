@@ -0,0 +1,101 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.extern.java.Log;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ECNMeasurer}
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+@Log
+public class ECNMeasurerTest {
+    /**
+     * Tests that measurement snapshots taken while receivers are counting
+     * neither lose nor duplicate any datagram
+     *
+     * @throws InterruptedException from {@link Thread#join()}
+     */
+    @Test
+    public void testSnapshot() throws InterruptedException {
+        final int nthreads = 4;
+        final int npackets = 200000;
+        val tcm = new ECNMeasurer();
+        tcm.doMeasuring(true);
+        val threads = new Thread[nthreads];
+        for (int t = 0; t < nthreads; ++t) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < npackets; ++i) {
+                    if (id == 0 && (i & 1) == 0) {
+                        tcm.received(false, (byte) 0, 40, 0, 0, 0);
+                    } else {
+                        tcm.received(true, (byte) (0xA0 | (i & 3)), 1200, 0, 0, 0);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        final long[] total = new long[ECNMeasurer.NCOUNTERS];
+        long bytes = 0;
+        int snapshots = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (val thread : threads) {
+                running |= thread.isAlive();
+            }
+            val stats = tcm.doMeasuring(running);
+            long sum = stats.getUnknownPackets();
+            for (val bits : Bits.values()) {
+                total[bits.getBits()] += stats.getPackets(bits);
+                sum += stats.getPackets(bits);
+            }
+            total[ECNMeasurer.UNKNOWN] += stats.getUnknownPackets();
+            bytes += stats.getUnknownBytes();
+            assertEquals(sum, stats.getReceivedPacketCount(), "snapshot sum");
+            ++snapshots;
+        }
+        for (val thread : threads) {
+            thread.join();
+        }
+        LOG.info("measurer: " + snapshots + " snapshots");
+        assertNull(tcm.doMeasuring(false), "stopped measuring");
+        assertEquals((long) nthreads * npackets, Arrays.stream(total).sum(), "packets counted");
+        // thread 0 sends every other datagram without tc, so only ECT(1) and CE
+        final long each = (nthreads - 1) * (npackets / 4);
+        assertEquals(npackets / 2, total[ECNMeasurer.UNKNOWN], "packets without tc");
+        assertEquals(each, total[Bits.NO.getBits()], "not-ECT packets");
+        assertEquals(each, total[Bits.ECT0.getBits()], "ECT(0) packets");
+        assertEquals(each + npackets / 4, total[Bits.ECT1.getBits()], "ECT(1) packets");
+        assertEquals(each + npackets / 4, total[Bits.CE.getBits()], "CE packets");
+        assertEquals(40L * (npackets / 2), bytes, "bytes without tc");
+        assertEquals(Byte.valueOf((byte) 0xA3), tcm.last(), "last tc");
+    }
+}
@@ -0,0 +1,48 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ECNStatistics}
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public class ECNStatisticsTest {
+    /**
+     * Tests that the deprecated packet-count constructor still yields
+     * the same congestion statistics as before
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testLegacyConstructor() {
+        val stats = new ECNStatistics(System.nanoTime(), new int[] { 3, 1 });
+        assertEquals(1, stats.getCongestedPackets(), "congested");
+        assertEquals(4, stats.getReceivedPackets(), "received");
+        assertEquals(0.25, stats.getCongestionFactor(), 1e-9, "factor");
+        assertEquals(0L, stats.getReceivedBytes(), "bytes");
+    }
+}
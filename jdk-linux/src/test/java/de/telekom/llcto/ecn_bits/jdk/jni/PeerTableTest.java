@@ -0,0 +1,81 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PeerTable}
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+public class PeerTableTest {
+    /**
+     * Tests the per-peer table’s cap, idle eviction and deletion
+     *
+     * @throws InterruptedException from {@link Thread#sleep(long)}
+     */
+    @Test
+    public void testEviction() throws InterruptedException {
+        val table = new PeerTable(64, TimeUnit.MILLISECONDS.toNanos(20));
+        val md = ByteBuffer.allocateDirect(JNI.MD_SIZE).order(ByteOrder.nativeOrder());
+        val peers = new InetSocketAddress[65];
+        for (int i = 0; i < peers.length; ++i) {
+            peers[i] = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1000 + i);
+        }
+        final IntConsumer recv = i -> {
+            JNI.AddrPort.put(md, 0, peers[i]);
+            md.putShort(JNI.MD_FLAGS, (short) JNI.MDF_SENDER);
+            md.putShort(JNI.MD_TC, (short) (JNI.MD_TC_VALID | Bits.CE.getBits()));
+            md.putInt(JNI.MD_LEN, 10);
+            md.putInt(JNI.MD_SEGSZ, 0);
+            table.received(md, 1);
+        };
+        for (int i = 0; i < 65; ++i) {
+            recv.accept(i);
+        }
+        assertEquals(64, table.getAll(false).size(), "capped");
+        assertNull(table.get(peers[64], false), "over cap");
+        Thread.sleep(30);
+        for (int i = 0; i < 10; ++i) {
+            recv.accept(i);
+        }
+        recv.accept(64);
+        assertNotNull(table.get(peers[64], false), "tracked after eviction");
+        for (int i = 0; i < 10; ++i) {
+            val stats = table.get(peers[i], false);
+            assertNotNull(stats, "kept " + i);
+            assertEquals(2L, stats.getCongestedPacketCount(), "packets " + i);
+        }
+        assertEquals(11, table.getAll(false).size(), "after eviction");
+    }
+}
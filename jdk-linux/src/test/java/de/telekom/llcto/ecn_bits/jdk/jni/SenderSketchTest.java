@@ -0,0 +1,95 @@
+package de.telekom.llcto.ecn_bits.jdk.jni;
+
+/*-
+ * Copyright © 2026
+ *      mirabilos <t.glaser@tarent.de>
+ * Licensor: Deutsche Telekom
+ *
+ * Provided that these terms and disclaimer and all copyright notices
+ * are retained or reproduced in an accompanying document, permission
+ * is granted to deal in this work without restriction, including un‐
+ * limited rights to use, publicly perform, distribute, sell, modify,
+ * merge, give away, or sublicence.
+ *
+ * This work is provided “AS IS” and WITHOUT WARRANTY of any kind, to
+ * the utmost extent permitted by applicable law, neither express nor
+ * implied; without malicious intent or gross negligence. In no event
+ * may a licensor, author or contributor be held liable for indirect,
+ * direct, other damage, loss, or other issues arising in any way out
+ * of dealing in the work, even if advised of the possibility of such
+ * damage or existence of a defect, except proven that it results out
+ * of said person’s immediate fault when using the work as intended.
+ */
+
+import lombok.extern.java.Log;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SenderSketch}
+ *
+ * @author mirabilos (t.glaser@tarent.de)
+ */
+@Log
+public class SenderSketchTest {
+    /**
+     * Tests heavy-hitter and distinct-sender estimation
+     *
+     * @throws UnknownHostException from {@link InetAddress#getByAddress(byte[])}
+     */
+    @Test
+    public void testEstimates() throws UnknownHostException {
+        val sketch = new SenderSketch(5, 1024);
+        val md = ByteBuffer.allocateDirect(JNI.BATCH_MAX * JNI.MD_SIZE).order(ByteOrder.nativeOrder());
+        val rnd = new Random(4711);
+        // over 3000 light senders, 3 heavy ones: [0] by packets, [1] by bytes, [2] by CE
+        val heavy = new InetSocketAddress[] {
+          new InetSocketAddress("192.0.2.1", 1), new InetSocketAddress("2001:db8::2", 2),
+          new InetSocketAddress("198.51.100.3", 3)
+        };
+        val senders = new HashSet<InetSocketAddress>();
+        int n = 0;
+        for (int i = 0; i < 6000; ++i) {
+            final int kind = i % 2 == 0 ? 3 : i % 4 == 1 ? 0 : 1 + rnd.nextInt(3);
+            final InetSocketAddress isa = kind < 3 ? heavy[kind] :
+              new InetSocketAddress(InetAddress.getByAddress(new byte[] {
+                10, (byte) (i >> 16), (byte) (i >> 8), (byte) i }), 1000 + i % 7);
+            senders.add(isa);
+            final int off = n * JNI.MD_SIZE;
+            JNI.AddrPort.put(md, off, isa);
+            md.putShort(off + JNI.MD_FLAGS, (short) JNI.MDF_SENDER);
+            md.putShort(off + JNI.MD_TC, (short) (JNI.MD_TC_VALID |
+              (kind == 2 ? Bits.CE.getBits() : Bits.ECT0.getBits())));
+            md.putInt(off + JNI.MD_LEN, kind == 1 ? 1400 : 50);
+            md.putInt(off + JNI.MD_SEGSZ, 0);
+            if (++n == JNI.BATCH_MAX) {
+                sketch.received(md, n);
+                n = 0;
+            }
+        }
+        sketch.received(md, n);
+        val report = sketch.report(true);
+        LOG.info("sketch: " + report.getDistinctSenders() + " distinct, top " + report.getTopByPackets());
+        assertEquals(senders.size(), report.getDistinctSenders(), senders.size() * 0.05, "distinct senders");
+        assertEquals(5, report.getTopByPackets().size(), "top-K size");
+        val byPackets = report.getTopByPackets().get(0);
+        assertEquals(heavy[0], byPackets.getAddress(), "top by packets");
+        assertTrue(byPackets.getPackets() >= 1000, "no underestimate");
+        assertEquals(heavy[1], report.getTopByBytes().get(0).getAddress(), "top by bytes");
+        assertEquals(heavy[2], report.getTopByCongestion().get(0).getAddress(), "top by CE");
+        assertTrue(report.getTopByCongestion().size() <= 5, "CE top-K size");
+        val empty = sketch.report(false);
+        assertEquals(0, empty.getDistinctSenders(), "reset");
+        assertTrue(empty.getTopByPackets().isEmpty(), "reset top-K");
+    }
+}